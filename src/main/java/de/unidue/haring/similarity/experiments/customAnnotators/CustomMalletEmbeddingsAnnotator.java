@@ -40,17 +40,27 @@ import org.dkpro.core.api.embeddings.binary.BinaryVectorizer;
 import de.tudarmstadt.ukp.dkpro.core.api.parameter.ComponentParameters;
 import de.tudarmstadt.ukp.dkpro.core.mallet.MalletModelTrainer;
 import de.tudarmstadt.ukp.dkpro.core.mallet.type.WordEmbedding;
+import de.unidue.haring.similarity.experiments.customAnnotators.EmbeddingsModelRegistry.ModelKey;
+import de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding;
+import de.unidue.haring.similarity.experiments.utils.DatasetVocabulary;
 import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
 
 /**
  * Reads word embeddings from a file and adds {@link WordEmbedding} annotations to tokens/lemmas.
+ * If {@link #PARAM_MODEL_ID} is set, {@link ModelWordEmbedding} annotations carrying that id are
+ * added instead, so several instances of the annotator can annotate the same CAS with different
+ * models.
+ * <p>
+ * Models are obtained from the {@link EmbeddingsModelRegistry}, so annotator instances using the
+ * same model share it and the model outlives a single pipeline run.
  *
  * @since 1.9.0
  */
 @ResourceMetaData(name = "Mallet Embeddings Annotator")
 @TypeCapability(inputs = {
         "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token" }, outputs = {
-                "de.tudarmstadt.ukp.dkpro.core.mallet.type.WordEmbedding" })
+                "de.tudarmstadt.ukp.dkpro.core.mallet.type.WordEmbedding",
+                "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding" })
 public class CustomMalletEmbeddingsAnnotator
     extends JCasAnnotator_ImplBase
 {
@@ -67,7 +77,41 @@ public class CustomMalletEmbeddingsAnnotator
     public static final String PARAM_MODEL_IS_BINARY = "modelIsBinary";
     @ConfigurationParameter(name = PARAM_MODEL_IS_BINARY, mandatory = true, defaultValue = "false")
     private boolean modelIsBinary;
+
+    /**
+     * If set to true (default: false), the model file is expected to be in the memory-mapped
+     * format written by {@link MappedWordVectorUtils}.
+     */
+    public static final String PARAM_MODEL_IS_MAPPED = "modelIsMapped";
+    @ConfigurationParameter(name = PARAM_MODEL_IS_MAPPED, mandatory = true, defaultValue = "false")
+    private boolean modelIsMapped;
+
+    /**
+     * If set to true (default: false), the model file is expected to be in the quantized format
+     * written by {@link QuantizedWordVectorUtils}.
+     */
+    public static final String PARAM_MODEL_IS_QUANTIZED = "modelIsQuantized";
+    @ConfigurationParameter(name = PARAM_MODEL_IS_QUANTIZED, mandatory = true, defaultValue = "false")
+    private boolean modelIsQuantized;
+
+    /**
+     * Quantizes a text-format model after loading: {@code none} (default), {@code fp16} or
+     * {@code int8}. See {@link QuantizedVectorizer}.
+     */
+    public static final String PARAM_QUANTIZATION = "quantization";
+    @ConfigurationParameter(name = PARAM_QUANTIZATION, mandatory = true, defaultValue = "none")
+    private String quantization;
+
+    /**
+     * If set to true (default), a text-format model is cached in the memory-mapped format next to
+     * the model file on its first load and opened from there afterwards. Ignored if
+     * {@link #PARAM_QUANTIZATION} is set. See {@link EmbeddingsSidecarCache}.
+     */
+    public static final String PARAM_CACHE_MODEL = "cacheModel";
+    @ConfigurationParameter(name = PARAM_CACHE_MODEL, mandatory = true, defaultValue = "true")
+    private boolean cacheModel;
     private Vectorizer vectorizer;
+    private ModelKey modelKey;
     private boolean isInitialized = false;
 
     /**
@@ -102,6 +146,14 @@ public class CustomMalletEmbeddingsAnnotator
     @ConfigurationParameter(name = PARAM_TOKEN_FEATURE_PATH, mandatory = true, defaultValue = "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token")
     private String tokenFeaturePath;
 
+    /**
+     * If set, tokens are annotated with {@link ModelWordEmbedding} annotations with this id
+     * instead of {@link WordEmbedding} annotations.
+     */
+    public static final String PARAM_MODEL_ID = "modelId";
+    @ConfigurationParameter(name = PARAM_MODEL_ID, mandatory = false)
+    private String modelId;
+
     /**
      * If set to true (default: false), all tokens are lowercased.
      */
@@ -116,32 +168,119 @@ public class CustomMalletEmbeddingsAnnotator
     @ConfigurationParameter(name = PARAM_ONLY_LOAD_USED_TOKENS, mandatory = false, defaultValue = "false")
     private boolean usedTokens;
 
+    /**
+     * The dataset XML files whose joint vocabulary restricts the loaded tokens if
+     * {@link #PARAM_ONLY_LOAD_USED_TOKENS} is set. The vocabulary is collected with a streaming
+     * pass over each file, see {@link DatasetVocabulary}. Runs on different datasets share a
+     * loaded model if they give the same files. If not set, the used words are read from
+     * {@link GeneralPipelineUtils#USED_WORDS_FILE_NAME}.
+     */
+    public static final String PARAM_VOCABULARY_DATASET = "vocabularyDataset";
+    @ConfigurationParameter(name = PARAM_VOCABULARY_DATASET, mandatory = false)
+    private File[] vocabularyDataset;
+    private VocabularyFilter vocabularyFilter;
+
     @Override
     public void initialize(UimaContext context) throws ResourceInitializationException
     {
         super.initialize(context);
-        if (usedTokens) {
-            GeneralPipelineUtils.loadUsedWordsFromFile();
-        }
-        if (modelHasHeader && modelIsBinary) {
+        if (modelHasHeader && (modelIsBinary || modelIsMapped)) {
             throw new ResourceInitializationException(new IllegalArgumentException(
                     "The parameter PARAM_MODEL_HAS_HEADER is only valid for text-format model files."));
         }
+        if ((modelIsBinary ? 1 : 0) + (modelIsMapped ? 1 : 0) + (modelIsQuantized ? 1 : 0) > 1) {
+            throw new ResourceInitializationException(new IllegalArgumentException(
+                    "The parameters PARAM_MODEL_IS_BINARY, PARAM_MODEL_IS_MAPPED and "
+                            + "PARAM_MODEL_IS_QUANTIZED are exclusive."));
+        }
+        boolean textModel = !modelIsMapped && !modelIsBinary && !modelIsQuantized;
+        if (!"none".equals(quantization)) {
+            if (!textModel) {
+                throw new ResourceInitializationException(new IllegalArgumentException(
+                        "The parameter PARAM_QUANTIZATION is only valid for text-format model files."));
+            }
+            try {
+                QuantizedVectorizer.Encoding.valueOf(quantization.toUpperCase());
+            }
+            catch (IllegalArgumentException e) {
+                throw new ResourceInitializationException(e);
+            }
+        }
 
+        String format = modelIsMapped ? "mapped"
+                : modelIsBinary ? "binary"
+                        : modelIsQuantized ? "quantized"
+                                : "none".equals(quantization) ? "text" : "text/" + quantization;
+        vocabularyFilter = null;
+        if (usedTokens && textModel) {
+            try {
+                vocabularyFilter = getVocabularyFilter();
+            }
+            catch (IOException e) {
+                throw new ResourceInitializationException(e);
+            }
+        }
+        modelKey = new ModelKey(modelLocation, format, lowercase,
+                vocabularyFilter != null ? vocabularyFilter.getId() : "");
         try {
-            vectorizer = modelIsBinary ? BinaryVectorizer.load(modelLocation)
-                    : CustomTextFormatVectorizer.load(modelLocation, false, usedTokens);
+            vectorizer = EmbeddingsModelRegistry.getInstance().acquire(modelKey, this::loadModel);
         }
         catch (IOException e) {
+            modelKey = null;
             throw new ResourceInitializationException(e);
         }
 
         if (lowercase != vectorizer.isCaseless()) {
+            EmbeddingsModelRegistry.getInstance().release(modelKey);
+            modelKey = null;
             throw new ResourceInitializationException(new IllegalArgumentException(
                     "If PARAM_LOWERCASE is set, the model should be caseless and vice-versa."));
         }
     }
 
+    private VocabularyFilter getVocabularyFilter() throws IOException
+    {
+        if (vocabularyDataset != null && vocabularyDataset.length > 0) {
+            return DatasetVocabulary.getFilter(vocabularyDataset);
+        }
+        GeneralPipelineUtils.loadUsedWordsFromFile();
+        return CustomTextFormatVectorizerUtils.getUsedWordsFilter();
+    }
+
+    private Vectorizer loadModel() throws IOException
+    {
+        if (modelIsMapped) {
+            return MappedVectorizer.load(modelLocation);
+        }
+        if (modelIsQuantized) {
+            return QuantizedVectorizer.load(modelLocation);
+        }
+        if (modelIsBinary) {
+            return BinaryVectorizer.load(modelLocation);
+        }
+        if ("none".equals(quantization)) {
+            return cacheModel
+                    ? EmbeddingsSidecarCache.load(modelLocation, modelHasHeader, vocabularyFilter,
+                            lowercase)
+                    : CustomTextFormatVectorizer.load(modelLocation, modelHasHeader,
+                            vocabularyFilter);
+        }
+        Vectorizer model = CustomTextFormatVectorizer.load(modelLocation, modelHasHeader,
+                vocabularyFilter);
+        return QuantizedVectorizer.quantize((CustomTextFormatVectorizer) model,
+                QuantizedVectorizer.Encoding.valueOf(quantization.toUpperCase()));
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (modelKey != null) {
+            EmbeddingsModelRegistry.getInstance().release(modelKey);
+            modelKey = null;
+        }
+        super.destroy();
+    }
+
     @Override
     public void process(JCas aJCas) throws AnalysisEngineProcessException
     {
@@ -159,22 +298,64 @@ public class CustomMalletEmbeddingsAnnotator
 
     private void addAnnotation(JCas aJCas, String text, int begin, int end) throws IOException
     {
+        if (vectorizer instanceof IndexedVectorizer) {
+            addIndexedAnnotation(aJCas, (IndexedVectorizer) vectorizer, text, begin, end);
+            return;
+        }
         if (lowercase) {
             text = text.toLowerCase();
         }
         Optional<float[]> vector = getVector(text);
 
         if (vector.isPresent()) {
-            WordEmbedding embedding = new WordEmbedding(aJCas, begin, end);
             FloatArray array = new FloatArray(aJCas, vector.get().length);
             for (int i = 0; i < vector.get().length; i++) {
                 array.set(i, vector.get()[i]);
             }
+            addEmbedding(aJCas, begin, end, array);
+        }
+        else {
+            getLogger().debug(text + " not found in embeddings list.");
+        }
+    }
+
+    /**
+     * Copies the vector of a token from the matrix of an {@link IndexedVectorizer} straight into
+     * the annotation. Caseless models fold the token while hashing, so no lowercased copy of the
+     * text and no intermediate vector are created.
+     */
+    private void addIndexedAnnotation(JCas aJCas, IndexedVectorizer indexed, String text,
+            int begin, int end)
+    {
+        int row = indexed.rowId(text);
+        if (row < 0 && !annotateUnknownTokens) {
+            getLogger().debug(text + " not found in embeddings list.");
+            return;
+        }
+
+        int dimensions = indexed.dimensions();
+        FloatArray array = new FloatArray(aJCas, dimensions);
+        if (row >= 0) {
+            array.copyFromArray(indexed.matrix(), indexed.offset(row), 0, dimensions);
+        }
+        else {
+            array.copyFromArray(indexed.unknownVector(), 0, 0, dimensions);
+        }
+        addEmbedding(aJCas, begin, end, array);
+    }
+
+    private void addEmbedding(JCas aJCas, int begin, int end, FloatArray array)
+    {
+        if (modelId != null) {
+            ModelWordEmbedding embedding = new ModelWordEmbedding(aJCas, begin, end);
+            embedding.setModelId(modelId);
             embedding.setWordEmbedding(array);
             embedding.addToIndexes(aJCas);
         }
         else {
-            getLogger().debug(text + " not found in embeddings list.");
+            WordEmbedding embedding = new WordEmbedding(aJCas, begin, end);
+            embedding.setWordEmbedding(array);
+            embedding.addToIndexes(aJCas);
         }
     }
 
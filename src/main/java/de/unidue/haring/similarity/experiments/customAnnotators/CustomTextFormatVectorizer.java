@@ -23,29 +23,64 @@ import org.dkpro.core.api.embeddings.VectorizerUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
- * A {@link Vectorizer} backed by a {@code Map<String, float[]}.
+ * A {@link Vectorizer} backed by a {@link VocabularyIndex} and a single row-major
+ * {@code float[]} matrix.
  * <p>
  * Use {@link #load(File)} to initialize.
  */
 public class CustomTextFormatVectorizer
-    implements Vectorizer
+    implements IndexedVectorizer
 {
-    private Map<String, float[]> embeddings;
+    private VocabularyIndex vocabulary;
+    private float[] matrix;
     private float[] unknownVector;
     private int dimensions;
     private boolean caseless;
 
-    private CustomTextFormatVectorizer(Map<String, float[]> embeddings)
+    CustomTextFormatVectorizer(VocabularyIndex vocabulary, float[] matrix, int dimensions)
     {
-        assert !embeddings.isEmpty();
-        this.embeddings = embeddings;
-        dimensions = embeddings.values().iterator().next().length;
+        assert vocabulary.size() > 0;
+        assert matrix.length == vocabulary.size() * dimensions;
+        this.vocabulary = vocabulary;
+        this.matrix = matrix;
+        this.dimensions = dimensions;
         unknownVector = VectorizerUtils.randomVector(dimensions);
-        caseless = embeddings.keySet().stream()
-                .allMatch(token -> token.equals(token.toLowerCase()));
+        caseless = vocabulary.isCaseless();
+    }
+
+    private static CustomTextFormatVectorizer fromMap(Map<String, float[]> embeddings)
+        throws IOException
+    {
+        assert !embeddings.isEmpty();
+        int dimensions = embeddings.values().iterator().next().length;
+        VocabularyIndex vocabulary = new VocabularyIndex(embeddings.size());
+        float[] matrix = new float[checkedMatrixSize(embeddings.size(), dimensions)];
+        for (Map.Entry<String, float[]> entry : embeddings.entrySet()) {
+            int row = vocabulary.add(entry.getKey());
+            System.arraycopy(entry.getValue(), 0, matrix, row * dimensions, dimensions);
+        }
+        vocabulary.trim();
+        return new CustomTextFormatVectorizer(vocabulary, matrix, dimensions);
+    }
+
+    /**
+     * Computes the number of matrix values, making sure they fit into a single array.
+     *
+     * @throws IOException
+     *             if the model is too large for a {@code float[]} matrix
+     */
+    static int checkedMatrixSize(long rows, int dimensions) throws IOException
+    {
+        long values = rows * dimensions;
+        if (values > Integer.MAX_VALUE - 8) {
+            throw new IOException("Model with " + rows + " rows of " + dimensions
+                    + " dimensions is too large for a float[] matrix, use the mapped format.");
+        }
+        return (int) values;
     }
 
     /**
@@ -73,9 +108,35 @@ public class CustomTextFormatVectorizer
      */
     public static Vectorizer load(File f, boolean hasHeader, boolean usedTokens) throws IOException
     {
-        return new CustomTextFormatVectorizer(CustomTextFormatVectorizerUtils
-                .readEmbeddingFileTxt(f, false, usedTokens));
+        if (!CustomTextFormatVectorizerUtils.isCompressed(f)) {
+            return CustomTextFormatVectorizerUtils.readEmbeddingFileTxtIndexed(f, false,
+                    usedTokens);
+        }
+        return fromMap(CustomTextFormatVectorizerUtils.readEmbeddingFileTxt(f, false, usedTokens));
     }    
+
+    /**
+     * Load a text-format embeddings file, keeping only the tokens of a vocabulary.
+     *
+     * @param f
+     *            the {@link File} containing the embeddings in text format
+     * @param hasHeader
+     *            if true, the first line in the file is expected to be a header line
+     * @param filter
+     *            if not null, only the tokens contained in the filter are loaded
+     * @return a new {@link CustomTextFormatVectorizer}
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static Vectorizer load(File f, boolean hasHeader, VocabularyFilter filter)
+        throws IOException
+    {
+        if (!CustomTextFormatVectorizerUtils.isCompressed(f)) {
+            return CustomTextFormatVectorizerUtils.readEmbeddingFileTxtIndexed(f, hasHeader,
+                    filter);
+        }
+        return fromMap(CustomTextFormatVectorizerUtils.readEmbeddingFileTxt(f, hasHeader, filter));
+    }
     
     /**
      * Load a text-format embeddings file.
@@ -91,25 +152,51 @@ public class CustomTextFormatVectorizer
     @SuppressWarnings("WeakerAccess")
     public static Vectorizer load(File embeddingsFile, boolean hasHeaderLine) throws IOException
     {
-        return new CustomTextFormatVectorizer(CustomTextFormatVectorizerUtils
-                .readEmbeddingFileTxt(embeddingsFile, hasHeaderLine));
+        if (!CustomTextFormatVectorizerUtils.isCompressed(embeddingsFile)) {
+            return CustomTextFormatVectorizerUtils.readEmbeddingFileTxtIndexed(embeddingsFile,
+                    hasHeaderLine, false);
+        }
+        return fromMap(CustomTextFormatVectorizerUtils.readEmbeddingFileTxt(embeddingsFile,
+                hasHeaderLine));
     }
 
     @Override
     public float[] vectorize(String token)
     {
-        if (caseless) {
-            token = token.toLowerCase();
-        }
-        float[] vector = contains(token) ? embeddings.get(token) : unknownVector();
+        int row = rowId(token);
+        float[] vector = row >= 0 ? Arrays.copyOfRange(matrix, row * dimensions,
+                (row + 1) * dimensions) : unknownVector();
         assert vector.length == dimensions();
         return vector;
     }
 
+    @Override
+    public int rowId(CharSequence token)
+    {
+        return caseless ? vocabulary.getLowercase(token) : vocabulary.get(token);
+    }
+
+    @Override
+    public float[] matrix()
+    {
+        return matrix;
+    }
+
+    @Override
+    public int offset(int rowId)
+    {
+        return rowId * dimensions;
+    }
+
+    VocabularyIndex vocabulary()
+    {
+        return vocabulary;
+    }
+
     @Override
     public boolean contains(String token)
     {
-        return embeddings.containsKey(token);
+        return vocabulary.get(token) >= 0;
     }
 
     @Override
@@ -127,7 +214,7 @@ public class CustomTextFormatVectorizer
     @Override
     public int size()
     {
-        return embeddings.size();
+        return vocabulary.size();
     }
 
     @Override
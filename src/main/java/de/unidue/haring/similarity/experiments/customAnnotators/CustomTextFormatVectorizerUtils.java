@@ -19,6 +19,7 @@ package de.unidue.haring.similarity.experiments.customAnnotators;
  */
 
 import de.tudarmstadt.ukp.dkpro.core.api.resources.CompressionUtils;
+import de.unidue.haring.similarity.experiments.utils.DatasetVocabulary;
 import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -40,8 +41,6 @@ import java.util.stream.Collectors;
  */
 public class CustomTextFormatVectorizerUtils
 {
-    private static Set<String> usedWords;
-    private static boolean tokenKnown;
     private static final Logger LOG = LoggerFactory
             .getLogger(CustomTextFormatVectorizerUtils.class);
 
@@ -64,22 +63,120 @@ public class CustomTextFormatVectorizerUtils
     public static Map<String, float[]> readEmbeddingFileTxt(File file, boolean hasHeader)
         throws IOException
     {
-        LOG.info("Reading embeddings from file " + file);
-        InputStream is = CompressionUtils.getInputStream(file.getAbsolutePath(),
-                new FileInputStream(file));
-
-        return readEmbeddingFileTxt(is, hasHeader, false);
+        return readEmbeddingFileTxt(file, hasHeader, false);
     }
 
+    /**
+     * Read an embeddings file in text format. Uncompressed files are parsed in parallel by a
+     * {@link ParallelTextFormatReader}, compressed files are streamed line by line.
+     *
+     * @param file
+     *            the input file
+     * @param hasHeader
+     *            if true, read size and dimensionality from the first line
+     * @param usedTokens
+     *            if true, only the tokens in {@link GeneralPipelineUtils#getUsedWords()} are kept
+     * @return a {@code Map<String, float[]>} mapping each token to a vector.
+     * @throws IOException
+     *             if the input file cannot be read
+     */
     public static Map<String, float[]> readEmbeddingFileTxt(File file, boolean hasHeader,
             boolean usedTokens)
         throws IOException
+    {
+        return readEmbeddingFileTxt(file, hasHeader, usedTokens ? getUsedWordsFilter() : null);
+    }
+
+    /**
+     * Read an embeddings file in text format. Uncompressed files are parsed in parallel by a
+     * {@link ParallelTextFormatReader}, compressed files are streamed line by line.
+     *
+     * @param file
+     *            the input file
+     * @param hasHeader
+     *            if true, read size and dimensionality from the first line
+     * @param filter
+     *            if not null, only the tokens contained in the filter are kept
+     * @return a {@code Map<String, float[]>} mapping each token to a vector.
+     * @throws IOException
+     *             if the input file cannot be read
+     */
+    public static Map<String, float[]> readEmbeddingFileTxt(File file, boolean hasHeader,
+            VocabularyFilter filter)
+        throws IOException
     {
         LOG.info("Reading embeddings from file " + file);
+        if (!isCompressed(file)) {
+            return new ParallelTextFormatReader(file, hasHeader, filter).read();
+        }
         InputStream is = CompressionUtils.getInputStream(file.getAbsolutePath(),
                 new FileInputStream(file));
 
-        return readEmbeddingFileTxt(is, hasHeader, usedTokens);
+        return readEmbeddingFileTxt(is, hasHeader, filter);
+    }
+
+    /**
+     * Creates a filter from the words in {@link GeneralPipelineUtils#getUsedWords()}, which are
+     * read from the file {@link GeneralPipelineUtils#USED_WORDS_FILE_NAME}.
+     *
+     * @return the filter, identified by the file name and a fingerprint of the words, so a
+     *         regenerated file does not reuse the embeddings cached for the old one
+     */
+    public static VocabularyFilter getUsedWordsFilter()
+    {
+        Set<String> words = GeneralPipelineUtils.getUsedWords();
+        return new VocabularyFilter(GeneralPipelineUtils.USED_WORDS_FILE_NAME + "#"
+                + DatasetVocabulary.fingerprint(words), words);
+    }
+
+    /**
+     * Read an uncompressed embeddings file in text format into a vectorizer that keeps all vectors
+     * in one contiguous matrix.
+     *
+     * @param file
+     *            the uncompressed input file
+     * @param hasHeader
+     *            if true, read size and dimensionality from the first line
+     * @param usedTokens
+     *            if true, only the tokens in {@link GeneralPipelineUtils#getUsedWords()} are kept
+     * @return a new {@link CustomTextFormatVectorizer}
+     * @throws IOException
+     *             if the input file cannot be read
+     */
+    public static CustomTextFormatVectorizer readEmbeddingFileTxtIndexed(File file,
+            boolean hasHeader, boolean usedTokens)
+        throws IOException
+    {
+        return readEmbeddingFileTxtIndexed(file, hasHeader,
+                usedTokens ? getUsedWordsFilter() : null);
+    }
+
+    /**
+     * Read an uncompressed embeddings file in text format into a vectorizer that keeps all vectors
+     * in one contiguous matrix.
+     *
+     * @param file
+     *            the uncompressed input file
+     * @param hasHeader
+     *            if true, read size and dimensionality from the first line
+     * @param filter
+     *            if not null, only the tokens contained in the filter are kept
+     * @return a new {@link CustomTextFormatVectorizer}
+     * @throws IOException
+     *             if the input file cannot be read
+     */
+    public static CustomTextFormatVectorizer readEmbeddingFileTxtIndexed(File file,
+            boolean hasHeader, VocabularyFilter filter)
+        throws IOException
+    {
+        LOG.info("Reading embeddings from file " + file);
+        return new ParallelTextFormatReader(file, hasHeader, filter).readVectorizer();
+    }
+
+    static boolean isCompressed(File file)
+    {
+        String path = file.getAbsolutePath();
+        return !CompressionUtils.stripCompressionExtension(path).equals(path);
     }
 
     /**
@@ -98,7 +195,28 @@ public class CustomTextFormatVectorizerUtils
             boolean hasHeader, boolean usedTokens)
         throws IOException
     {
-        tokenKnown = usedTokens;
+        return readEmbeddingFileTxt(inputStream, hasHeader,
+                usedTokens ? getUsedWordsFilter() : null);
+    }
+
+    /**
+     * Read embeddings in text format from an InputStream. Each line is expected to have a
+     * whitespace-separated list {@code <token> <value1> <value2> ...}.
+     *
+     * @param inputStream
+     *            an {@link InputStream}
+     * @param hasHeader
+     *            if true, read size and dimensionality from the first line
+     * @param filter
+     *            if not null, only the tokens contained in the filter are kept
+     * @return a {@code Map<String, float[]>} mapping each token to a vector.
+     * @throws IOException
+     *             if the input file cannot be read
+     */
+    public static Map<String, float[]> readEmbeddingFileTxt(InputStream inputStream,
+            boolean hasHeader, VocabularyFilter filter)
+        throws IOException
+    {
         BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
 
         final int dimensions;
@@ -115,14 +233,13 @@ public class CustomTextFormatVectorizerUtils
             size = -1;
         }
         Map<String, float[]> embeddings;
-        if (usedTokens) {
-            usedWords = GeneralPipelineUtils.getUsedWords();
-            embeddings = reader.lines().map(CustomTextFormatVectorizerUtils::lineToEmbedding)
+        if (filter != null) {
+            embeddings = reader.lines().map(line -> lineToEmbedding(line, filter))
                     .filter(Objects::nonNull)
                     .collect(Collectors.toMap(Pair::getKey, Pair::getValue));
         }
         else {
-            embeddings = reader.lines().map(CustomTextFormatVectorizerUtils::lineToEmbedding)
+            embeddings = reader.lines().map(line -> lineToEmbedding(line, null))
                     .collect(Collectors.toMap(Pair::getKey, Pair::getValue));
         }
         reader.close();
@@ -149,14 +266,23 @@ public class CustomTextFormatVectorizerUtils
      *
      * @param line
      *            a line
-     * @return a {@link Pair}
+     * @param filter
+     *            if not null, lines with tokens not contained in the filter are skipped
+     * @return a {@link Pair}, or null if the token is filtered
      */
-    private static Pair<String, float[]> lineToEmbedding(String line)
+    private static Pair<String, float[]> lineToEmbedding(String line, VocabularyFilter filter)
     {
+        if (filter != null) {
+            // The Bloom filter rejects most lines before the line is split
+            int blank = line.indexOf(' ');
+            if (blank < 0 || !filter.mightContain(line, 0, blank)) {
+                return null;
+            }
+        }
         String[] array = line.split(" ");
         int size = array.length;
-        if (tokenKnown) {
-            if (!usedWords.contains(array[0]))
+        if (filter != null) {
+            if (!filter.contains(array[0]))
                 return null;
             double[] vector = Arrays.stream(array, 1, size).mapToDouble(Float::parseFloat)
                     .toArray();
@@ -226,4 +352,52 @@ public class CustomTextFormatVectorizerUtils
         BinaryWordVectorUtils.convertWordVectorsToBinary(embeddings, aCaseless, aLocale,
                 targetFile);
     }
+
+    /**
+     * Read a (compressed) Mallet embeddings file (in text format) and convert it into the
+     * memory-mappable format using {@link MappedWordVectorUtils}.
+     *
+     * @param malletEmbeddings
+     *            a {@link File} holding embeddings in text format
+     * @param hasHeader
+     *            if true, the first line in the file is expected to be a header line
+     * @param targetFile
+     *            the output {@link File}
+     * @throws IOException
+     *             if an I/O error occurs.
+     * @see MappedVectorizer
+     */
+    public static void convertMalletEmbeddingsToMapped(File malletEmbeddings, boolean hasHeader,
+            File targetFile)
+        throws IOException
+    {
+        Map<String, float[]> embeddings = readEmbeddingFileTxt(malletEmbeddings, hasHeader);
+        MappedWordVectorUtils.convertWordVectorsToMapped(embeddings, targetFile);
+    }
+
+    /**
+     * Read a (compressed) Mallet embeddings file (in text format), quantize it and write it into
+     * the format read by {@link QuantizedVectorizer}.
+     *
+     * @param malletEmbeddings
+     *            a {@link File} holding embeddings in text format
+     * @param hasHeader
+     *            if true, the first line in the file is expected to be a header line
+     * @param encoding
+     *            the quantization to apply
+     * @param targetFile
+     *            the output {@link File}
+     * @throws IOException
+     *             if an I/O error occurs.
+     * @see QuantizedWordVectorUtils
+     */
+    public static void convertMalletEmbeddingsToQuantized(File malletEmbeddings, boolean hasHeader,
+            QuantizedVectorizer.Encoding encoding, File targetFile)
+        throws IOException
+    {
+        CustomTextFormatVectorizer embeddings = (CustomTextFormatVectorizer)
+                CustomTextFormatVectorizer.load(malletEmbeddings, hasHeader);
+        QuantizedWordVectorUtils.writeQuantized(QuantizedVectorizer.quantize(embeddings, encoding),
+                targetFile);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.dkpro.core.api.embeddings.Vectorizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide registry of loaded embedding models.
+ * <p>
+ * Annotators {@link #acquire(ModelKey, ModelLoader) acquire} a model when they are initialized and
+ * {@link #release(ModelKey) release} it when they are destroyed. Models are reference-counted and
+ * stay loaded after their last release, so consecutive pipeline runs on different datasets share
+ * the same instance. Unreferenced models are evicted in least-recently-used order as soon as the
+ * estimated heap usage of all models exceeds the memory budget.
+ * <p>
+ * The budget defaults to half of the maximum heap and can be configured with the system property
+ * {@value #MEMORY_BUDGET_PROPERTY} (in MB) or {@link #setMemoryBudget(long)}.
+ */
+public class EmbeddingsModelRegistry
+{
+    public static final String MEMORY_BUDGET_PROPERTY = "embeddings.registry.budgetMb";
+
+    // Rough heap overhead of a token in a Map<String, float[]> besides the vector values
+    private static final long BYTES_PER_ENTRY = 64;
+    // Rough size of a token in a VocabularyIndex: pool chars, slots, start offset and hash
+    private static final long BYTES_PER_INDEXED_ENTRY = 32;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingsModelRegistry.class);
+
+    private static final EmbeddingsModelRegistry INSTANCE = new EmbeddingsModelRegistry();
+
+    // Access-ordered, the eldest entry is the least recently used one
+    private final Map<ModelKey, Entry> entries = new LinkedHashMap<ModelKey, Entry>(16, 0.75f,
+            true);
+    private long memoryBudget;
+    private long usedMemory;
+
+    private EmbeddingsModelRegistry()
+    {
+        String budget = System.getProperty(MEMORY_BUDGET_PROPERTY);
+        memoryBudget = budget != null ? Long.parseLong(budget) << 20
+                : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    public static EmbeddingsModelRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the model for the given key, loading it if necessary, and increments its reference
+     * count. Concurrent requests for the same model wait for a single load.
+     *
+     * @param key
+     *            identifies the model
+     * @param loader
+     *            loads the model if it is not yet registered
+     * @return the shared model
+     * @throws IOException
+     *             if loading the model fails
+     */
+    public Vectorizer acquire(ModelKey key, ModelLoader loader) throws IOException
+    {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+            entry.references++;
+        }
+
+        Vectorizer vectorizer;
+        try {
+            vectorizer = entry.get(loader);
+        }
+        catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                entry.references--;
+                if (entry.references == 0 && entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            if (!entry.accounted) {
+                entry.accounted = true;
+                usedMemory += entry.bytes;
+                LOG.info("Registered embeddings " + key + " (~" + (entry.bytes >> 20) + " MB)");
+            }
+            evict();
+        }
+        return vectorizer;
+    }
+
+    /**
+     * Decrements the reference count of a model. The model stays registered until it is evicted.
+     *
+     * @param key
+     *            identifies the model
+     */
+    public synchronized void release(ModelKey key)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.references > 0) {
+            entry.references--;
+        }
+        evict();
+    }
+
+    /**
+     * Sets the memory budget and evicts unreferenced models if it is exceeded.
+     *
+     * @param bytes
+     *            the budget in bytes
+     */
+    public synchronized void setMemoryBudget(long bytes)
+    {
+        memoryBudget = bytes;
+        evict();
+    }
+
+    public synchronized long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    /**
+     * Removes all unreferenced models.
+     */
+    public synchronized void clear()
+    {
+        long budget = memoryBudget;
+        memoryBudget = 0;
+        evict();
+        memoryBudget = budget;
+    }
+
+    private void evict()
+    {
+        Iterator<Map.Entry<ModelKey, Entry>> iterator = entries.entrySet().iterator();
+        while (usedMemory > memoryBudget && iterator.hasNext()) {
+            Map.Entry<ModelKey, Entry> next = iterator.next();
+            Entry entry = next.getValue();
+            if (entry.references == 0 && entry.accounted) {
+                iterator.remove();
+                usedMemory -= entry.bytes;
+                LOG.info("Evicted embeddings " + next.getKey());
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap memory held by a model. Memory-mapped models live in the page cache and
+     * are not counted.
+     */
+    static long estimateHeapBytes(Vectorizer vectorizer)
+    {
+        if (vectorizer instanceof MappedVectorizer) {
+            return 0;
+        }
+        if (vectorizer instanceof QuantizedVectorizer) {
+            // Quantized values plus a norm and, for int8, a scale factor per row
+            int bytesPerValue = ((QuantizedVectorizer) vectorizer).getEncoding()
+                    .getBytesPerValue();
+            return (long) vectorizer.size() * (vectorizer.dimensions() * bytesPerValue
+                    + 2 * Float.BYTES + BYTES_PER_INDEXED_ENTRY);
+        }
+        if (vectorizer instanceof IndexedVectorizer) {
+            return (long) vectorizer.size()
+                    * (vectorizer.dimensions() * Float.BYTES + BYTES_PER_INDEXED_ENTRY);
+        }
+        return (long) vectorizer.size() * (vectorizer.dimensions() * Float.BYTES + BYTES_PER_ENTRY);
+    }
+
+    private static class Entry
+    {
+        private Vectorizer vectorizer;
+        private long bytes;
+        private int references;
+        private boolean accounted;
+
+        private synchronized Vectorizer get(ModelLoader loader) throws IOException
+        {
+            if (vectorizer == null) {
+                vectorizer = loader.load();
+                bytes = estimateHeapBytes(vectorizer);
+            }
+            return vectorizer;
+        }
+    }
+
+    /**
+     * Loads a model on the first request.
+     */
+    public interface ModelLoader
+    {
+        Vectorizer load() throws IOException;
+    }
+
+    /**
+     * Identifies a loaded model by its location, file format, case handling and the vocabulary
+     * filter used while loading.
+     */
+    public static final class ModelKey
+    {
+        private final String location;
+        private final String format;
+        private final boolean lowercase;
+        private final String vocabularyFilter;
+
+        /**
+         * @param location
+         *            the model file
+         * @param format
+         *            the model file format, e.g. {@code text}, {@code binary} or {@code mapped}
+         * @param lowercase
+         *            whether tokens are lowercased
+         * @param vocabularyFilter
+         *            identifies the set of tokens the model was restricted to, or the empty string
+         *            if the full model is loaded
+         */
+        public ModelKey(File location, String format, boolean lowercase, String vocabularyFilter)
+        {
+            this.location = location.getAbsolutePath();
+            this.format = format;
+            this.lowercase = lowercase;
+            this.vocabularyFilter = vocabularyFilter;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof ModelKey)) {
+                return false;
+            }
+            ModelKey other = (ModelKey) obj;
+            return location.equals(other.location) && format.equals(other.format)
+                    && lowercase == other.lowercase
+                    && vocabularyFilter.equals(other.vocabularyFilter);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(location, format, lowercase, vocabularyFilter);
+        }
+
+        @Override
+        public String toString()
+        {
+            return location + " [" + format + (lowercase ? ", lowercase" : "")
+                    + (vocabularyFilter.isEmpty() ? "" : ", filter=" + vocabularyFilter) + "]";
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.dkpro.core.api.embeddings.Vectorizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches text-format embeddings models in the memory-mapped format of {@link MappedVectorizer}.
+ * <p>
+ * On the first load of a text model, a sidecar file is written next to it (or into the directory
+ * given by the system property {@value #CACHE_DIRECTORY_PROPERTY}). Later loads open the sidecar
+ * instead of parsing the text file. A sidecar is specific to the vocabulary filter, the header
+ * flag and the lowercase flag it was built with. It is only used while size, modification time
+ * and content hash of the text model match the values recorded when it was written.
+ * <p>
+ * The content hash covers the file size and 16 blocks of 64 KB spread evenly over the file,
+ * including its first and last block, so validating a multi-GB model reads about 1 MB.
+ */
+public class EmbeddingsSidecarCache
+{
+    public static final String CACHE_DIRECTORY_PROPERTY = "embeddings.cache.dir";
+
+    private static final String SIDECAR_EXTENSION = ".mvec";
+    private static final String METADATA_EXTENSION = ".properties";
+
+    private static final int HASH_BLOCKS = 16;
+    private static final int HASH_BLOCK_SIZE = 1 << 16;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingsSidecarCache.class);
+
+    /**
+     * Loads a text-format model through the cache.
+     *
+     * @param modelFile
+     *            the text-format model
+     * @param hasHeader
+     *            if true, the first line of the model is a header line
+     * @param filter
+     *            if not null, only the tokens contained in the filter are loaded
+     * @param lowercase
+     *            whether the model is used with lowercased tokens
+     * @return the mapped sidecar if it is valid, otherwise the model parsed from the text file
+     * @throws IOException
+     *             if the text model cannot be read
+     */
+    public static Vectorizer load(File modelFile, boolean hasHeader, VocabularyFilter filter,
+            boolean lowercase)
+        throws IOException
+    {
+        String key = "filter=" + (filter != null ? filter.getId() : "") + ";header=" + hasHeader
+                + ";lowercase=" + lowercase + ";version=" + MappedWordVectorUtils.VERSION;
+        File sidecar = getSidecarFile(modelFile, key);
+        File metadataFile = new File(sidecar.getPath() + METADATA_EXTENSION);
+
+        if (sidecar.exists() && metadataFile.exists()) {
+            try {
+                if (isValid(modelFile, sidecar, metadataFile, key)) {
+                    LOG.info("Loading cached embeddings " + sidecar + " for " + modelFile);
+                    return MappedVectorizer.load(sidecar);
+                }
+                LOG.info("Cached embeddings " + sidecar + " are outdated.");
+            }
+            catch (IOException e) {
+                LOG.warn("Cannot use cached embeddings " + sidecar + ": " + e.getMessage());
+            }
+        }
+
+        Vectorizer model = CustomTextFormatVectorizer.load(modelFile, hasHeader, filter);
+        if (model instanceof CustomTextFormatVectorizer && model.size() > 0) {
+            try {
+                write((CustomTextFormatVectorizer) model, modelFile, sidecar, metadataFile, key);
+            }
+            catch (IOException e) {
+                LOG.warn("Cannot cache embeddings in " + sidecar + ": " + e.getMessage());
+            }
+        }
+        return model;
+    }
+
+    private static File getSidecarFile(File modelFile, String key)
+    {
+        String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        File parent = directory != null ? new File(directory)
+                : modelFile.getAbsoluteFile().getParentFile();
+        String name = modelFile.getName() + "." + toHex(digest(key.getBytes(StandardCharsets.UTF_8)))
+                .substring(0, 16) + SIDECAR_EXTENSION;
+        return new File(parent, name);
+    }
+
+    private static boolean isValid(File modelFile, File sidecar, File metadataFile, String key)
+        throws IOException
+    {
+        Properties metadata = new Properties();
+        try (InputStream in = new FileInputStream(metadataFile)) {
+            metadata.load(in);
+        }
+        return key.equals(metadata.getProperty("key"))
+                && String.valueOf(modelFile.length()).equals(metadata.getProperty("sourceLength"))
+                && String.valueOf(modelFile.lastModified())
+                        .equals(metadata.getProperty("sourceLastModified"))
+                && String.valueOf(sidecar.length()).equals(metadata.getProperty("sidecarLength"))
+                && contentHash(modelFile).equals(metadata.getProperty("sourceHash"));
+    }
+
+    /**
+     * Writes sidecar and metadata to temporary files first and moves them into place afterwards,
+     * metadata last, so a concurrent or interrupted run never sees a partial sidecar as valid.
+     */
+    private static void write(CustomTextFormatVectorizer model, File modelFile, File sidecar,
+            File metadataFile, String key)
+        throws IOException
+    {
+        File parent = sidecar.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        long sourceLength = modelFile.length();
+        long sourceLastModified = modelFile.lastModified();
+        String sourceHash = contentHash(modelFile);
+
+        File tempSidecar = File.createTempFile(sidecar.getName(), ".tmp", parent);
+        File tempMetadata = File.createTempFile(metadataFile.getName(), ".tmp", parent);
+        try {
+            MappedWordVectorUtils.convertWordVectorsToMapped(model, tempSidecar);
+
+            Properties metadata = new Properties();
+            metadata.setProperty("key", key);
+            metadata.setProperty("source", modelFile.getAbsolutePath());
+            metadata.setProperty("sourceLength", String.valueOf(sourceLength));
+            metadata.setProperty("sourceLastModified", String.valueOf(sourceLastModified));
+            metadata.setProperty("sourceHash", sourceHash);
+            metadata.setProperty("sidecarLength", String.valueOf(tempSidecar.length()));
+            try (OutputStream out = new FileOutputStream(tempMetadata)) {
+                metadata.store(out, "Embeddings cache of " + modelFile.getName());
+            }
+
+            Files.move(tempSidecar.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempMetadata.toPath(), metadataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Cached embeddings of " + modelFile + " in " + sidecar);
+        }
+        finally {
+            Files.deleteIfExists(tempSidecar.toPath());
+            Files.deleteIfExists(tempMetadata.toPath());
+        }
+    }
+
+    /**
+     * Hashes the file size and {@value #HASH_BLOCKS} blocks spread evenly over the file.
+     */
+    static String contentHash(File file) throws IOException
+    {
+        MessageDigest digest = newDigest();
+        byte[] block = new byte[HASH_BLOCK_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            digest.update(String.valueOf(length).getBytes(StandardCharsets.US_ASCII));
+            long lastStart = Math.max(0, length - HASH_BLOCK_SIZE);
+            for (int i = 0; i < HASH_BLOCKS; i++) {
+                raf.seek(lastStart * i / (HASH_BLOCKS - 1));
+                int read = raf.read(block);
+                if (read > 0) {
+                    digest.update(block, 0, read);
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static byte[] digest(byte[] bytes)
+    {
+        return newDigest().digest(bytes);
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,411 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_ADJ;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_ADP;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_ADV;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_CONJ;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_DET;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_INTJ;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_NOUN;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_NUM;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_PART;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_PRON;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_PROPN;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_VERB;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_X;
+import de.tudarmstadt.ukp.dkpro.core.api.resources.ResourceUtils;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * A lightweight replacement for the segmenter, stop word remover, POS tagger and lemmatizer.
+ * <p>
+ * The texts of the reader are already stripped of punctuation except apostrophes, see
+ * {@code CustomXmlReader.preprocessInput}, so tokens are split at whitespace and at the remaining
+ * non-ASCII punctuation, and clitics like {@code n't} and {@code 's} are split off as by the Penn
+ * Treebank tokenizer. Each text becomes a single sentence. Stop words are not annotated at all.
+ * <p>
+ * Lemmas and POS tags are approximate: words of the lemma dictionary (one
+ * {@code form<TAB>lemma<TAB>tag} entry per line) get its lemma and Penn Treebank tag, all other
+ * words are lemmatized and tagged by their suffix, e.g. plural {@code -s}, {@code -ing} and
+ * {@code -ed} forms, while capitalized words within the text are proper nouns and the remaining
+ * words nouns. Stop words and dictionary forms share one {@link VocabularyIndex}, the stop words
+ * are marked in a bit set over its rows, so each token is looked up once without being copied.
+ */
+public class FastAnalyzer
+    extends JCasAnnotator_ImplBase
+{
+    /**
+     * The stop word list, one word per line. No stop words are removed if not set.
+     */
+    public static final String PARAM_STOPWORDS_LOCATION = "stopwordsLocation";
+    @ConfigurationParameter(name = PARAM_STOPWORDS_LOCATION, mandatory = false)
+    private String stopwordsLocation;
+
+    public static final String DEFAULT_LEMMA_DICTIONARY_LOCATION = "classpath:/lemmas_en.txt";
+
+    /**
+     * The lemma dictionary (default: {@value #DEFAULT_LEMMA_DICTIONARY_LOCATION}).
+     */
+    public static final String PARAM_LEMMA_DICTIONARY_LOCATION = "lemmaDictionaryLocation";
+    @ConfigurationParameter(name = PARAM_LEMMA_DICTIONARY_LOCATION, mandatory = true,
+            defaultValue = DEFAULT_LEMMA_DICTIONARY_LOCATION)
+    private String lemmaDictionaryLocation;
+
+    private static final String[] CLITICS = { "'s", "'re", "'ve", "'ll", "'d", "'m" };
+
+    private static final Set<String> SPLIT_CONTRACTIONS = new HashSet<String>(
+            Arrays.asList("gonna", "gotta", "wanna"));
+
+    private VocabularyIndex lexicon;
+    private BitSet stopwords;
+    // Lemma and tag of each row of the lexicon, null for stop words not in the dictionary
+    private List<String> lemmas;
+    private List<String> tags;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+        lexicon = new VocabularyIndex(1024);
+        stopwords = new BitSet();
+        lemmas = new ArrayList<String>();
+        tags = new ArrayList<String>();
+        try {
+            for (String line : readLines(lemmaDictionaryLocation, context)) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    throw new ResourceInitializationException(new IllegalArgumentException(
+                            "Invalid lemma dictionary entry: " + line));
+                }
+                int row = addToLexicon(fields[0].toLowerCase());
+                lemmas.set(row, fields[1]);
+                tags.set(row, fields[2]);
+            }
+            if (stopwordsLocation != null) {
+                for (String line : readLines(stopwordsLocation, context)) {
+                    stopwords.set(addToLexicon(line.toLowerCase()));
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+        lexicon.trim();
+    }
+
+    private List<String> readLines(String location, UimaContext context) throws IOException
+    {
+        URL url = ResourceUtils.resolveLocation(location, this, context);
+        List<String> lines = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private int addToLexicon(String word)
+    {
+        int row = lexicon.add(word);
+        if (row < 0) {
+            return -(row + 1);
+        }
+        lemmas.add(null);
+        tags.add(null);
+        return row;
+    }
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException
+    {
+        String text = aJCas.getDocumentText();
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        int begin = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || c == '\'') {
+                if (begin < 0) {
+                    begin = i;
+                }
+                continue;
+            }
+            if (begin >= 0) {
+                addWord(aJCas, text, begin, i);
+                begin = -1;
+            }
+            // Punctuation left by the reader, e.g. non-ASCII quotes, is a token of its own
+            if (!Character.isWhitespace(c)) {
+                addToken(aJCas, text, i, i + 1);
+            }
+        }
+        new Sentence(aJCas, 0, text.length()).addToIndexes();
+    }
+
+    /**
+     * Splits quotation marks and a clitic off a word and adds the tokens.
+     */
+    private void addWord(JCas aJCas, String text, int begin, int end)
+    {
+        // Two apostrophes are a quotation mark
+        while (end - begin >= 2 && text.startsWith("''", begin)) {
+            addToken(aJCas, text, begin, begin + 2);
+            begin += 2;
+        }
+        int quoteEnd = end;
+        while (end - begin >= 2 && text.startsWith("''", end - 2)) {
+            end -= 2;
+        }
+        if (begin < end) {
+            addWordWithoutQuotes(aJCas, text, begin, end);
+        }
+        for (int quote = end; quote < quoteEnd; quote += 2) {
+            addToken(aJCas, text, quote, quote + 2);
+        }
+    }
+
+    private void addWordWithoutQuotes(JCas aJCas, String text, int begin, int end)
+    {
+        // An apostrophe before a capitalized word is a quotation mark, unlike in 'cause
+        if (end - begin > 1 && text.charAt(begin) == '\''
+                && Character.isUpperCase(text.charAt(begin + 1))) {
+            addToken(aJCas, text, begin, begin + 1);
+            begin++;
+        }
+        int split = end;
+        if (end - begin > 3 && text.regionMatches(true, end - 3, "n't", 0, 3)) {
+            split = end - 3;
+        }
+        else if (end - begin > 1 && text.charAt(end - 1) == '\'') {
+            split = end - 1;
+        }
+        else if (end - begin == 5 && SPLIT_CONTRACTIONS.contains(
+                text.substring(begin, end).toLowerCase())) {
+            split = end - 2;
+        }
+        else {
+            for (String clitic : CLITICS) {
+                int start = end - clitic.length();
+                if (start > begin && text.regionMatches(true, start, clitic, 0, clitic.length())) {
+                    split = start;
+                    break;
+                }
+            }
+        }
+        addToken(aJCas, text, begin, split);
+        if (split < end) {
+            addToken(aJCas, text, split, end);
+        }
+    }
+
+    private void addToken(JCas aJCas, String text, int begin, int end)
+    {
+        int row = lexicon.getLowercase(CharBuffer.wrap(text, begin, end));
+        if (row >= 0 && stopwords.get(row)) {
+            return;
+        }
+
+        String word = text.substring(begin, end);
+        String lemmaValue;
+        String tag;
+        if (row >= 0 && lemmas.get(row) != null) {
+            lemmaValue = lemmas.get(row);
+            tag = tags.get(row);
+        }
+        else if (Character.isUpperCase(word.charAt(0)) && begin > 0 && !word.equals("I")) {
+            lemmaValue = word;
+            tag = "NNP";
+        }
+        else {
+            String[] guess = guess(word.toLowerCase());
+            lemmaValue = guess[0];
+            tag = guess[1];
+        }
+
+        Token token = new Token(aJCas, begin, end);
+        Lemma lemma = new Lemma(aJCas, begin, end);
+        lemma.setValue(lemmaValue);
+        lemma.addToIndexes();
+        token.setLemma(lemma);
+        POS pos = createPos(aJCas, tag, begin, end);
+        pos.setPosValue(tag);
+        pos.addToIndexes();
+        token.setPos(pos);
+        token.addToIndexes();
+    }
+
+    /**
+     * Guesses the lemma and tag of a lowercase word by its suffix.
+     *
+     * @return the lemma and the tag
+     */
+    private static String[] guess(String word)
+    {
+        int length = word.length();
+        if (Character.isDigit(word.charAt(0))) {
+            return new String[] { word, "CD" };
+        }
+        if (length > 4 && word.endsWith("ies")) {
+            return new String[] { word.substring(0, length - 3) + "y", "NNS" };
+        }
+        if (length > 4 && word.endsWith("ied")) {
+            return new String[] { word.substring(0, length - 3) + "y", "VBD" };
+        }
+        if (length > 5 && word.endsWith("ing")) {
+            return new String[] { getStem(word.substring(0, length - 3)), "VBG" };
+        }
+        if (length > 5 && word.endsWith("eed")) {
+            return new String[] { word.substring(0, length - 1), "VBD" };
+        }
+        if (length > 4 && word.endsWith("ed") && !word.endsWith("eed")) {
+            return new String[] { getStem(word.substring(0, length - 2)), "VBD" };
+        }
+        if (length > 4 && word.endsWith("ly")) {
+            return new String[] { word, "RB" };
+        }
+        if (length > 4 && word.endsWith("es")) {
+            String stem = word.substring(0, length - 2);
+            if (stem.endsWith("x") || stem.endsWith("ch") || stem.endsWith("sh")
+                    || stem.endsWith("ss") || stem.endsWith("z")) {
+                return new String[] { stem, "NNS" };
+            }
+        }
+        if (length > 3 && word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us")
+                && !word.endsWith("is")) {
+            return new String[] { word.substring(0, length - 1), "NNS" };
+        }
+        return new String[] { word, "NN" };
+    }
+
+    /**
+     * Restores the stem of a word whose {@code -ing} or {@code -ed} suffix was removed: doubled
+     * final consonants are undone ({@code stopp}) and a final {@code e} is added to short
+     * consonant-vowel-consonant stems, stems ending in {@code c}, {@code u}, {@code v} or
+     * {@code z} and stems like {@code promis}, {@code excit} or {@code decid} ({@code mak},
+     * {@code danc}).
+     */
+    private static String getStem(String stem)
+    {
+        int length = stem.length();
+        char last = stem.charAt(length - 1);
+        if (length > 2 && last == stem.charAt(length - 2) && !isVowel(last)
+                && "lsz".indexOf(last) < 0) {
+            return stem.substring(0, length - 1);
+        }
+        if ("cuvz".indexOf(last) >= 0) {
+            return stem + "e";
+        }
+        if (last == 's' && "aeio".indexOf(stem.charAt(length - 2)) >= 0) {
+            return stem + "e";
+        }
+        if (length > 4 && "tdb".indexOf(last) >= 0 && stem.charAt(length - 2) == 'i'
+                && "cvr".indexOf(stem.charAt(length - 3)) >= 0) {
+            return stem + "e";
+        }
+        if (length >= 3 && length <= 4 && !isVowel(last) && "wxyr".indexOf(last) < 0
+                && "aiou".indexOf(stem.charAt(length - 2)) >= 0
+                && !isVowel(stem.charAt(length - 3))) {
+            return stem + "e";
+        }
+        return stem;
+    }
+
+    private static boolean isVowel(char c)
+    {
+        return "aeiouy".indexOf(c) >= 0;
+    }
+
+    /**
+     * Creates the POS annotation of the coarse type of a Penn Treebank tag.
+     */
+    private static POS createPos(JCas aJCas, String tag, int begin, int end)
+    {
+        POS pos;
+        String coarseValue;
+        if (tag.startsWith("NNP")) {
+            pos = new POS_PROPN(aJCas, begin, end);
+            coarseValue = "PROPN";
+        }
+        else if (tag.startsWith("NN")) {
+            pos = new POS_NOUN(aJCas, begin, end);
+            coarseValue = "NOUN";
+        }
+        else if (tag.startsWith("VB") || tag.equals("MD")) {
+            pos = new POS_VERB(aJCas, begin, end);
+            coarseValue = "VERB";
+        }
+        else if (tag.startsWith("JJ")) {
+            pos = new POS_ADJ(aJCas, begin, end);
+            coarseValue = "ADJ";
+        }
+        else if (tag.startsWith("RB")) {
+            pos = new POS_ADV(aJCas, begin, end);
+            coarseValue = "ADV";
+        }
+        else if (tag.startsWith("PRP")) {
+            pos = new POS_PRON(aJCas, begin, end);
+            coarseValue = "PRON";
+        }
+        else if (tag.equals("CD")) {
+            pos = new POS_NUM(aJCas, begin, end);
+            coarseValue = "NUM";
+        }
+        else if (tag.equals("DT")) {
+            pos = new POS_DET(aJCas, begin, end);
+            coarseValue = "DET";
+        }
+        else if (tag.equals("IN")) {
+            pos = new POS_ADP(aJCas, begin, end);
+            coarseValue = "ADP";
+        }
+        else if (tag.equals("CC")) {
+            pos = new POS_CONJ(aJCas, begin, end);
+            coarseValue = "CONJ";
+        }
+        else if (tag.equals("UH")) {
+            pos = new POS_INTJ(aJCas, begin, end);
+            coarseValue = "INTJ";
+        }
+        else if (tag.equals("POS")) {
+            pos = new POS_PART(aJCas, begin, end);
+            coarseValue = "PART";
+        }
+        else {
+            pos = new POS_X(aJCas, begin, end);
+            coarseValue = "X";
+        }
+        pos.setCoarseValue(coarseValue);
+        return pos;
+    }
+}
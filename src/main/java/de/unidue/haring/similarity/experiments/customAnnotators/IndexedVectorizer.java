@@ -0,0 +1,35 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import org.dkpro.core.api.embeddings.Vectorizer;
+
+/**
+ * A {@link Vectorizer} whose vectors are rows of a single row-major {@code float[]} matrix.
+ * <p>
+ * Instead of an array per token, callers obtain a row id and read the vector values directly
+ * from {@link #matrix()} starting at {@link #offset(int)}.
+ */
+public interface IndexedVectorizer
+    extends Vectorizer
+{
+    /**
+     * Looks up a token the same way {@link #vectorize(String)} does, i.e. lowercased if the model
+     * is caseless.
+     *
+     * @param token
+     *            the token
+     * @return the row id of the token or -1 if the token is unknown
+     */
+    int rowId(CharSequence token);
+
+    /**
+     * @return the row-major matrix holding all vectors, {@link #dimensions()} values per row
+     */
+    float[] matrix();
+
+    /**
+     * @param rowId
+     *            a row id as returned by {@link #rowId(CharSequence)}
+     * @return the index of the first value of the row in {@link #matrix()}
+     */
+    int offset(int rowId);
+}
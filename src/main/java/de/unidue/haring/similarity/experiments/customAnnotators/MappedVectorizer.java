@@ -0,0 +1,252 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+
+import org.dkpro.core.api.embeddings.Vectorizer;
+import org.dkpro.core.api.embeddings.VectorizerUtils;
+
+/**
+ * A {@link Vectorizer} backed by a memory-mapped model file in the format written by
+ * {@link MappedWordVectorUtils}.
+ * <p>
+ * Neither the vocabulary nor the vectors are copied onto the Java heap. Lookups perform a binary
+ * search over the sorted vocabulary section and read the matching row of the float matrix, so a
+ * model opens in milliseconds and its pages are shared through the OS page cache.
+ * <p>
+ * Use {@link #load(File)} to initialize.
+ */
+public class MappedVectorizer
+    implements Vectorizer
+{
+    private final int size;
+    private final int dimensions;
+    private final boolean caseless;
+    private final float[] unknownVector;
+
+    // Offsets of each token within the string pool, size + 1 entries
+    private final ByteBuffer vocabularyOffsets;
+    private final ByteBuffer stringPool;
+
+    // The matrix is split into several mappings as a single mapping is limited to 2 GB
+    private final FloatBuffer[] matrixChunks;
+    private final int rowsPerChunk;
+
+    private MappedVectorizer(MappedByteBuffer buffer, FloatBuffer[] matrixChunks,
+            int rowsPerChunk)
+    {
+        buffer.order(MappedWordVectorUtils.BYTE_ORDER);
+        size = buffer.getInt(8);
+        dimensions = buffer.getInt(12);
+        caseless = buffer.getInt(16) != 0;
+
+        int poolLength = buffer.getInt(20);
+        int offsetsStart = MappedWordVectorUtils.HEADER_SIZE;
+        int poolStart = offsetsStart + (size + 1) * Integer.BYTES;
+
+        vocabularyOffsets = slice(buffer, offsetsStart, (size + 1) * Integer.BYTES);
+        stringPool = slice(buffer, poolStart, poolLength);
+
+        this.matrixChunks = matrixChunks;
+        this.rowsPerChunk = rowsPerChunk;
+        unknownVector = VectorizerUtils.randomVector(dimensions);
+    }
+
+    /**
+     * Map a model file that has been written by
+     * {@link MappedWordVectorUtils#convertWordVectorsToMapped(java.util.Map, File)}.
+     *
+     * @param f
+     *            the mapped model {@link File}
+     * @return a new {@link MappedVectorizer}
+     * @throws IOException
+     *             if the file cannot be read, is truncated or is not a mapped model file
+     */
+    public static MappedVectorizer load(File f) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(MappedWordVectorUtils.HEADER_SIZE)
+                    .order(MappedWordVectorUtils.BYTE_ORDER);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated mapped embeddings file: " + f);
+                }
+            }
+            if (header.getInt(0) != MappedWordVectorUtils.MAGIC) {
+                throw new IOException("Not a mapped embeddings file: " + f);
+            }
+            if (header.getInt(4) != MappedWordVectorUtils.VERSION) {
+                throw new IOException("Unsupported mapped embeddings file version: "
+                        + header.getInt(4));
+            }
+            int size = header.getInt(8);
+            int dimensions = header.getInt(12);
+            int poolLength = header.getInt(20);
+            long matrixOffset = header.getLong(24);
+            validate(f, channel.size(), size, dimensions, poolLength, matrixOffset);
+
+            // The vocabulary section ends where the matrix starts
+            MappedByteBuffer vocabulary = channel.map(MapMode.READ_ONLY, 0, matrixOffset);
+
+            long rowBytes = (long) dimensions * Float.BYTES;
+            int rowsPerChunk = (int) Math.max(1, Math.min(size, Integer.MAX_VALUE / rowBytes));
+            int chunkCount = (size + rowsPerChunk - 1) / rowsPerChunk;
+            FloatBuffer[] chunks = new FloatBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                int rows = Math.min(rowsPerChunk, size - i * rowsPerChunk);
+                chunks[i] = channel
+                        .map(MapMode.READ_ONLY, matrixOffset + i * rowsPerChunk * rowBytes,
+                                rows * rowBytes)
+                        .order(MappedWordVectorUtils.BYTE_ORDER).asFloatBuffer();
+            }
+            // The mappings stay valid after the channel has been closed
+            return new MappedVectorizer(vocabulary, chunks, rowsPerChunk);
+        }
+    }
+
+    /**
+     * Checks that the sections described by the header lie within the file, so a truncated or
+     * corrupt file fails with an {@link IOException} instead of when it is mapped.
+     */
+    private static void validate(File f, long fileSize, int size, int dimensions, int poolLength,
+            long matrixOffset)
+        throws IOException
+    {
+        if (size < 0 || dimensions <= 0 || poolLength < 0) {
+            throw new IOException("Invalid mapped embeddings header: " + size + " tokens, "
+                    + dimensions + " dimensions, " + poolLength + " string pool bytes in " + f);
+        }
+        long vocabularyEnd = MappedWordVectorUtils.HEADER_SIZE
+                + ((long) size + 1) * Integer.BYTES + poolLength;
+        if (vocabularyEnd > Integer.MAX_VALUE || matrixOffset < vocabularyEnd
+                || matrixOffset > Integer.MAX_VALUE) {
+            throw new IOException("Invalid matrix offset " + matrixOffset + " in " + f);
+        }
+        long matrixEnd = matrixOffset + (long) size * dimensions * Float.BYTES;
+        if (matrixEnd > fileSize) {
+            throw new IOException("Truncated mapped embeddings file, " + fileSize
+                    + " bytes instead of " + matrixEnd + ": " + f);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int length)
+    {
+        ByteBuffer duplicate = buffer.duplicate();
+        // Cast to Buffer keeps the byte code compatible with Java 8 runtimes
+        ((Buffer) duplicate).position(start);
+        ((Buffer) duplicate).limit(start + length);
+        return duplicate.slice().order(MappedWordVectorUtils.BYTE_ORDER);
+    }
+
+    @Override
+    public float[] vectorize(String token)
+    {
+        if (caseless) {
+            token = token.toLowerCase();
+        }
+        int row = rowId(token);
+        return row < 0 ? unknownVector() : row(row);
+    }
+
+    @Override
+    public boolean contains(String token)
+    {
+        return rowId(token) >= 0;
+    }
+
+    /**
+     * Looks up the row of a token in the matrix.
+     *
+     * @param token
+     *            the token
+     * @return the row id of the token or a negative value if the token is unknown
+     */
+    public int rowId(String token)
+    {
+        byte[] key = token.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareToken(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the UTF-8 bytes of the vocabulary entry at the given index with the key, treating
+     * bytes as unsigned values.
+     */
+    private int compareToken(int index, byte[] key)
+    {
+        int start = vocabularyOffsets.getInt(index * Integer.BYTES);
+        int end = vocabularyOffsets.getInt((index + 1) * Integer.BYTES);
+        int length = end - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (stringPool.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Copies a row of the matrix into a new array.
+     *
+     * @param row
+     *            the row id as returned by {@link #rowId(String)}
+     * @return the vector stored in that row
+     */
+    public float[] row(int row)
+    {
+        float[] vector = new float[dimensions];
+        FloatBuffer chunk = matrixChunks[row / rowsPerChunk].duplicate();
+        ((Buffer) chunk).position((row % rowsPerChunk) * dimensions);
+        chunk.get(vector);
+        return vector;
+    }
+
+    @Override
+    public float[] unknownVector()
+    {
+        return unknownVector;
+    }
+
+    @Override
+    public int dimensions()
+    {
+        return dimensions;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isCaseless()
+    {
+        return caseless;
+    }
+}
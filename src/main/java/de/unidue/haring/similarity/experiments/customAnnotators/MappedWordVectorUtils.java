@@ -0,0 +1,209 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes word embeddings into the memory-mappable format read by {@link MappedVectorizer}.
+ * <p>
+ * The file consists of three sections:
+ * <ol>
+ * <li>a fixed-size header holding magic number, version, number of entries, dimensionality, a
+ * caseless flag, the length of the string pool and the offset of the matrix section,</li>
+ * <li>the vocabulary: {@code size + 1} int offsets into a pool of UTF-8 encoded tokens which are
+ * sorted by their unsigned byte values,</li>
+ * <li>the matrix: one row of {@code dimensions} floats per token, in vocabulary order.</li>
+ * </ol>
+ * All values are stored in little-endian byte order.
+ */
+public class MappedWordVectorUtils
+{
+    static final int MAGIC = 0x4d564543;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Amount of matrix data written per I/O call
+    private static final int WRITE_BUFFER_SIZE = 1 << 22;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedWordVectorUtils.class);
+
+    /**
+     * Converts a text-format embeddings file into the mapped format.
+     *
+     * @param args
+     *            the text-format model file, the target file and optionally {@code true} if the
+     *            model has a Word2Vec header line
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.out.println("Usage: MappedWordVectorUtils <text model> <target> [hasHeader]");
+            return;
+        }
+        boolean hasHeader = args.length > 2 && Boolean.parseBoolean(args[2]);
+        CustomTextFormatVectorizerUtils.convertMalletEmbeddingsToMapped(new File(args[0]),
+                hasHeader, new File(args[1]));
+    }
+
+    /**
+     * Writes the given embeddings into a file that can be opened with
+     * {@link MappedVectorizer#load(File)}.
+     *
+     * @param embeddings
+     *            a {@code Map<String, float[]>} mapping each token to a vector
+     * @param targetFile
+     *            the output {@link File}
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static void convertWordVectorsToMapped(Map<String, float[]> embeddings,
+            File targetFile)
+        throws IOException
+    {
+        if (embeddings.isEmpty()) {
+            throw new IllegalArgumentException("Cannot write an empty embeddings model.");
+        }
+        write(new ArrayList<String>(embeddings.keySet()),
+                embeddings.values().iterator().next().length, embeddings::get, targetFile);
+    }
+
+    /**
+     * Writes all embeddings of a text-format model into a file that can be opened with
+     * {@link MappedVectorizer#load(File)}.
+     *
+     * @param embeddings
+     *            the model
+     * @param targetFile
+     *            the output {@link File}
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static void convertWordVectorsToMapped(CustomTextFormatVectorizer embeddings,
+            File targetFile)
+        throws IOException
+    {
+        VocabularyIndex vocabulary = embeddings.vocabulary();
+        List<String> tokens = new ArrayList<String>(vocabulary.size());
+        for (int row = 0; row < vocabulary.size(); row++) {
+            tokens.add(vocabulary.token(row));
+        }
+        float[] matrix = embeddings.matrix();
+        int dimensions = embeddings.dimensions();
+        write(tokens, dimensions, token -> {
+            int offset = embeddings.offset(vocabulary.get(token));
+            return Arrays.copyOfRange(matrix, offset, offset + dimensions);
+        }, targetFile);
+    }
+
+    private static void write(List<String> tokenList, int dimensions,
+            Function<String, float[]> embeddings, File targetFile)
+        throws IOException
+    {
+        LOG.info("Writing " + tokenList.size() + " embeddings to " + targetFile);
+        int size = tokenList.size();
+
+        // Sort the tokens by their unsigned UTF-8 byte values, which is the order used for lookups
+        List<SimpleEntry<byte[], String>> tokens = new ArrayList<>(size);
+        for (String token : tokenList) {
+            tokens.add(new SimpleEntry<>(token.getBytes(StandardCharsets.UTF_8), token));
+        }
+        tokens.sort((a, b) -> compareUnsigned(a.getKey(), b.getKey()));
+
+        boolean caseless = true;
+        long poolLength = 0;
+        for (SimpleEntry<byte[], String> token : tokens) {
+            caseless &= token.getValue().equals(token.getValue().toLowerCase());
+            poolLength += token.getKey().length;
+        }
+
+        long vocabularyLength = HEADER_SIZE + (size + 1L) * Integer.BYTES + poolLength;
+        // Align the matrix to 8 bytes
+        long matrixOffset = (vocabularyLength + 7) & ~7L;
+        if (matrixOffset > Integer.MAX_VALUE) {
+            throw new IOException("Vocabulary too large for the mapped format.");
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(targetFile, "rw");
+                FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+
+            ByteBuffer vocabulary = ByteBuffer.allocate((int) matrixOffset).order(BYTE_ORDER);
+            vocabulary.putInt(MAGIC);
+            vocabulary.putInt(VERSION);
+            vocabulary.putInt(size);
+            vocabulary.putInt(dimensions);
+            vocabulary.putInt(caseless ? 1 : 0);
+            vocabulary.putInt((int) poolLength);
+            vocabulary.putLong(matrixOffset);
+
+            int offset = 0;
+            for (SimpleEntry<byte[], String> token : tokens) {
+                vocabulary.putInt(offset);
+                offset += token.getKey().length;
+            }
+            vocabulary.putInt(offset);
+            for (SimpleEntry<byte[], String> token : tokens) {
+                vocabulary.put(token.getKey());
+            }
+            ((Buffer) vocabulary).clear();
+            writeFully(channel, vocabulary);
+
+            ByteBuffer rows = ByteBuffer
+                    .allocate(Math.max(WRITE_BUFFER_SIZE, dimensions * Float.BYTES))
+                    .order(BYTE_ORDER);
+            for (SimpleEntry<byte[], String> token : tokens) {
+                float[] vector = embeddings.apply(token.getValue());
+                if (vector.length != dimensions) {
+                    throw new IOException("Vector for '" + token.getValue() + "' has "
+                            + vector.length + " dimensions, expected " + dimensions + ".");
+                }
+                if (rows.remaining() < dimensions * Float.BYTES) {
+                    ((Buffer) rows).flip();
+                    writeFully(channel, rows);
+                    ((Buffer) rows).clear();
+                }
+                rows.asFloatBuffer().put(vector);
+                ((Buffer) rows).position(rows.position() + dimensions * Float.BYTES);
+            }
+            ((Buffer) rows).flip();
+            writeFully(channel, rows);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static int compareUnsigned(byte[] a, byte[] b)
+    {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
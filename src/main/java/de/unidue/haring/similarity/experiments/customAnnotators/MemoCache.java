@@ -0,0 +1,162 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded memo cache which can be used by several threads.
+ * <p>
+ * Keys are spread over segments, each an access-ordered map holding its share of the maximum
+ * size, so threads working on different keys rarely wait for each other and the least recently
+ * used entries of a segment are dropped first. The cache counts its hits and misses.
+ * <p>
+ * {@link #getShared(String, int)} returns process-wide caches, so the annotator instances of
+ * several pipeline workers and of consecutive pipeline runs share their results.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public class MemoCache<K, V>
+{
+    private static final int SEGMENTS = 16;
+
+    private static final Map<String, MemoCache<?, ?>> SHARED =
+            new HashMap<String, MemoCache<?, ?>>();
+
+    private final int maxSize;
+    private final Segment<K, V>[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize
+     *            the maximum number of entries
+     */
+    @SuppressWarnings("unchecked")
+    public MemoCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+        segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<K, V>(Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS));
+        }
+    }
+
+    /**
+     * Gets a process-wide cache, creating it on the first request.
+     *
+     * @param name
+     *            identifies the cache
+     * @param maxSize
+     *            the maximum number of entries, only used when the cache is created
+     * @return the cache
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <K, V> MemoCache<K, V> getShared(String name, int maxSize)
+    {
+        MemoCache<?, ?> cache = SHARED.get(name);
+        if (cache == null) {
+            cache = new MemoCache<K, V>(maxSize);
+            SHARED.put(name, cache);
+        }
+        return (MemoCache<K, V>) cache;
+    }
+
+    /**
+     * Gets the value of a key and counts the lookup as hit or miss.
+     *
+     * @return the value, or null if the key is not cached
+     */
+    public V get(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    public void put(K key, V value)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key)
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & 0x7fffffff) % SEGMENTS];
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache since it was created.
+     */
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d hits of %d lookups (%.1f%%), %d of %d entries used", getHits(),
+                getHits() + getMisses(), getHitRatio() * 100, size(), maxSize);
+    }
+
+    private static class Segment<K, V>
+        extends LinkedHashMap<K, V>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Segment(int capacity)
+        {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+        {
+            return size() > capacity;
+        }
+    }
+}
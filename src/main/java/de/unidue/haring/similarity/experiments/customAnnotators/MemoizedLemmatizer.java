@@ -0,0 +1,263 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import static org.apache.uima.fit.util.JCasUtil.select;
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Memoizes the lemmas of a lemmatizer per token text and POS tag.
+ * <p>
+ * The lemmas of known tokens are copied from the cache. The sentences of a document holding
+ * unknown tokens are lemmatized together by the delegate lemmatizer in a scratch CAS holding only
+ * their tokens and POS tags, and the lemmas of the unknown tokens are cached. Unknown tokens are
+ * thus lemmatized in their sentence, while known tokens get the lemma of their first occurrence;
+ * a lemmatizer whose lemmas depend on more than the token and its tag, like the rule-based
+ * disambiguation of LanguageTool, may in rare cases lemmatize a later occurrence differently.
+ * <p>
+ * The cache is shared by all instances with the same delegate, across documents and pipeline
+ * runs, and holds at most {@value #DEFAULT_CACHE_SIZE} lemmas by default. Its hit ratio is
+ * logged when a collection is complete.
+ */
+public class MemoizedLemmatizer
+    extends JCasAnnotator_ImplBase
+{
+    /**
+     * The XML of the description of the delegate lemmatizer, see
+     * {@link #createDescription(AnalysisEngineDescription)}.
+     */
+    public static final String PARAM_DELEGATE_DESCRIPTION = "delegateDescription";
+    @ConfigurationParameter(name = PARAM_DELEGATE_DESCRIPTION, mandatory = true)
+    private String delegateDescription;
+
+    public static final int DEFAULT_CACHE_SIZE = 200000;
+
+    /**
+     * The number of lemmas kept (default: {@value #DEFAULT_CACHE_SIZE}). Only the first instance
+     * with a delegate sets the size of its cache.
+     */
+    public static final String PARAM_CACHE_SIZE = "cacheSize";
+    @ConfigurationParameter(name = PARAM_CACHE_SIZE, mandatory = true, defaultValue = "200000")
+    private int cacheSize;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoizedLemmatizer.class);
+
+    private AnalysisEngine delegate;
+    private JCas scratch;
+    private MemoCache<String, String> cache;
+    private int hits;
+    private int lookups;
+
+    /**
+     * Creates the description of a memoizing lemmatizer.
+     *
+     * @param delegate
+     *            the lemmatizer, lemmatizing the tokens within sentences
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the delegate cannot be serialized
+     */
+    public static AnalysisEngineDescription createDescription(AnalysisEngineDescription delegate)
+        throws ResourceInitializationException
+    {
+        StringWriter xml = new StringWriter();
+        try {
+            delegate.toXML(xml);
+        }
+        catch (SAXException | IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+        return AnalysisEngineFactory.createEngineDescription(MemoizedLemmatizer.class,
+                PARAM_DELEGATE_DESCRIPTION, xml.toString());
+    }
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+        try {
+            AnalysisEngineDescription description = UIMAFramework.getXMLParser()
+                    .parseAnalysisEngineDescription(new XMLInputSource(
+                            new ByteArrayInputStream(
+                                    delegateDescription.getBytes(StandardCharsets.UTF_8)),
+                            null));
+            delegate = AnalysisEngineFactory.createEngine(description);
+            scratch = delegate.newJCas();
+        }
+        catch (InvalidXMLException e) {
+            throw new ResourceInitializationException(e);
+        }
+        cache = MemoCache.getShared(MemoizedLemmatizer.class.getName() + delegateDescription,
+                cacheSize);
+        hits = 0;
+        lookups = 0;
+    }
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException
+    {
+        List<List<Token>> missed = new ArrayList<List<Token>>();
+        List<String[]> missedLemmas = new ArrayList<String[]>();
+        for (Sentence sentence : select(aJCas, Sentence.class)) {
+            List<Token> tokens = selectCovered(Token.class, sentence);
+            String[] lemmas = new String[tokens.size()];
+            boolean complete = true;
+            for (int i = 0; i < tokens.size(); i++) {
+                lemmas[i] = cache.get(getKey(tokens.get(i)));
+                lookups++;
+                if (lemmas[i] != null) {
+                    hits++;
+                }
+                else {
+                    complete = false;
+                }
+            }
+            if (complete) {
+                addLemmas(aJCas, tokens, lemmas);
+            }
+            else {
+                missed.add(tokens);
+                missedLemmas.add(lemmas);
+            }
+        }
+        if (missed.isEmpty()) {
+            return;
+        }
+
+        List<List<Token>> lemmatized = lemmatize(aJCas, missed);
+        for (int i = 0; i < missed.size(); i++) {
+            List<Token> tokens = missed.get(i);
+            String[] lemmas = missedLemmas.get(i);
+            for (int j = 0; j < tokens.size(); j++) {
+                Lemma lemma = lemmatized.get(i).get(j).getLemma();
+                if (lemmas[j] == null && lemma != null && lemma.getValue() != null) {
+                    lemmas[j] = lemma.getValue();
+                    cache.put(getKey(tokens.get(j)), lemmas[j]);
+                }
+            }
+            addLemmas(aJCas, tokens, lemmas);
+        }
+    }
+
+    private static String getKey(Token token)
+    {
+        POS pos = token.getPos();
+        if (pos == null) {
+            return token.getCoveredText();
+        }
+        return token.getCoveredText() + '\t' + pos.getType().getName() + '\t'
+                + pos.getPosValue();
+    }
+
+    private static void addLemmas(JCas aJCas, List<Token> tokens, String[] lemmas)
+    {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (lemmas[i] == null) {
+                continue;
+            }
+            Token token = tokens.get(i);
+            Lemma lemma = new Lemma(aJCas, token.getBegin(), token.getEnd());
+            lemma.setValue(lemmas[i]);
+            lemma.addToIndexes();
+            token.setLemma(lemma);
+        }
+    }
+
+    /**
+     * Lemmatizes the tokens of the given sentences in the scratch CAS, one line per sentence.
+     *
+     * @return the lemmatized tokens of the scratch CAS, per sentence
+     */
+    private List<List<Token>> lemmatize(JCas aJCas, List<List<Token>> sentences)
+        throws AnalysisEngineProcessException
+    {
+        scratch.reset();
+        StringBuilder text = new StringBuilder();
+        List<Sentence> scratchSentences = new ArrayList<Sentence>(sentences.size());
+        for (List<Token> tokens : sentences) {
+            int sentenceBegin = text.length();
+            for (Token token : tokens) {
+                if (text.length() > sentenceBegin) {
+                    text.append(' ');
+                }
+                int begin = text.length();
+                text.append(token.getCoveredText());
+                Token copy = new Token(scratch, begin, text.length());
+                POS pos = token.getPos();
+                if (pos != null) {
+                    POS posCopy = (POS) scratch.getCas().<AnnotationFS> createAnnotation(
+                            scratch.getTypeSystem().getType(pos.getType().getName()), begin,
+                            text.length());
+                    posCopy.setPosValue(pos.getPosValue());
+                    posCopy.setCoarseValue(pos.getCoarseValue());
+                    posCopy.addToIndexes();
+                    copy.setPos(posCopy);
+                }
+                copy.addToIndexes();
+            }
+            Sentence sentence = new Sentence(scratch, sentenceBegin, text.length());
+            sentence.addToIndexes();
+            scratchSentences.add(sentence);
+            text.append('\n');
+        }
+        scratch.setDocumentText(text.toString());
+        scratch.setDocumentLanguage(aJCas.getDocumentLanguage());
+        delegate.process(scratch);
+
+        List<List<Token>> lemmatized = new ArrayList<List<Token>>(sentences.size());
+        for (Sentence sentence : scratchSentences) {
+            lemmatized.add(selectCovered(Token.class, sentence));
+        }
+        return lemmatized;
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        delegate.collectionProcessComplete();
+        LOG.info(String.format("Lemmas of %d of %d tokens taken from the cache (%.1f%%), "
+                + "cache overall: %s", hits, lookups, lookups == 0 ? 0 : 100.0 * hits / lookups,
+                cache));
+        hits = 0;
+        lookups = 0;
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (delegate != null) {
+            delegate.destroy();
+            delegate = null;
+        }
+        scratch = null;
+        super.destroy();
+    }
+}
@@ -0,0 +1,269 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import static org.apache.uima.fit.util.JCasUtil.select;
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Memoizes the tags of a POS tagger per sentence.
+ * <p>
+ * A sentence is looked up by its token texts, joined by spaces. The tags of known sentences are
+ * copied from the cache, the remaining sentences of a document are tagged together by the
+ * delegate tagger in a scratch CAS holding only their tokens, and their tags are cached. The
+ * tagger sees the same token sequence either way, so the tags do not change. Tagset descriptions
+ * of the delegate are not copied.
+ * <p>
+ * The cache is shared by all instances with the same delegate, across documents and pipeline
+ * runs, and holds the tags of at most {@value #DEFAULT_CACHE_SIZE} sentences by default. Its hit
+ * ratio is logged when a collection is complete.
+ */
+public class MemoizedPosTagger
+    extends JCasAnnotator_ImplBase
+{
+    /**
+     * The XML of the description of the delegate POS tagger, see
+     * {@link #createDescription(AnalysisEngineDescription)}.
+     */
+    public static final String PARAM_DELEGATE_DESCRIPTION = "delegateDescription";
+    @ConfigurationParameter(name = PARAM_DELEGATE_DESCRIPTION, mandatory = true)
+    private String delegateDescription;
+
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    /**
+     * The number of sentences whose tags are kept (default: {@value #DEFAULT_CACHE_SIZE}). Only the
+     * first instance with a delegate sets the size of its cache.
+     */
+    public static final String PARAM_CACHE_SIZE = "cacheSize";
+    @ConfigurationParameter(name = PARAM_CACHE_SIZE, mandatory = true, defaultValue = "100000")
+    private int cacheSize;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoizedPosTagger.class);
+
+    private AnalysisEngine delegate;
+    private JCas scratch;
+    private MemoCache<String, Tags> cache;
+    private int hits;
+    private int lookups;
+
+    /**
+     * Creates the description of a memoizing POS tagger.
+     *
+     * @param delegate
+     *            the POS tagger, tagging the tokens within sentences
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the delegate cannot be serialized
+     */
+    public static AnalysisEngineDescription createDescription(AnalysisEngineDescription delegate)
+        throws ResourceInitializationException
+    {
+        StringWriter xml = new StringWriter();
+        try {
+            delegate.toXML(xml);
+        }
+        catch (SAXException | IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+        return AnalysisEngineFactory.createEngineDescription(MemoizedPosTagger.class,
+                PARAM_DELEGATE_DESCRIPTION, xml.toString());
+    }
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+        try {
+            AnalysisEngineDescription description = UIMAFramework.getXMLParser()
+                    .parseAnalysisEngineDescription(new XMLInputSource(
+                            new ByteArrayInputStream(
+                                    delegateDescription.getBytes(StandardCharsets.UTF_8)),
+                            null));
+            delegate = AnalysisEngineFactory.createEngine(description);
+            scratch = delegate.newJCas();
+        }
+        catch (InvalidXMLException e) {
+            throw new ResourceInitializationException(e);
+        }
+        cache = MemoCache.getShared(MemoizedPosTagger.class.getName() + delegateDescription,
+                cacheSize);
+        hits = 0;
+        lookups = 0;
+    }
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException
+    {
+        List<List<Token>> missed = new ArrayList<List<Token>>();
+        List<String> missedKeys = new ArrayList<String>();
+        for (Sentence sentence : select(aJCas, Sentence.class)) {
+            List<Token> tokens = selectCovered(Token.class, sentence);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            String key = getKey(tokens);
+            Tags tags = cache.get(key);
+            lookups++;
+            if (tags != null) {
+                hits++;
+                tags.addTo(aJCas, tokens);
+            }
+            else {
+                missed.add(tokens);
+                missedKeys.add(key);
+            }
+        }
+        if (missed.isEmpty()) {
+            return;
+        }
+
+        List<List<Token>> tagged = tag(aJCas, missed);
+        for (int i = 0; i < missed.size(); i++) {
+            Tags tags = new Tags(tagged.get(i));
+            cache.put(missedKeys.get(i), tags);
+            tags.addTo(aJCas, missed.get(i));
+        }
+    }
+
+    private static String getKey(List<Token> tokens)
+    {
+        StringBuilder key = new StringBuilder();
+        for (Token token : tokens) {
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            key.append(token.getCoveredText());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Tags the tokens of the given sentences in the scratch CAS, one line per sentence.
+     *
+     * @return the tagged tokens of the scratch CAS, per sentence
+     */
+    private List<List<Token>> tag(JCas aJCas, List<List<Token>> sentences)
+        throws AnalysisEngineProcessException
+    {
+        scratch.reset();
+        StringBuilder text = new StringBuilder();
+        List<Sentence> scratchSentences = new ArrayList<Sentence>(sentences.size());
+        for (List<Token> tokens : sentences) {
+            int sentenceBegin = text.length();
+            for (Token token : tokens) {
+                if (text.length() > sentenceBegin) {
+                    text.append(' ');
+                }
+                int begin = text.length();
+                text.append(token.getCoveredText());
+                new Token(scratch, begin, text.length()).addToIndexes();
+            }
+            Sentence sentence = new Sentence(scratch, sentenceBegin, text.length());
+            sentence.addToIndexes();
+            scratchSentences.add(sentence);
+            text.append('\n');
+        }
+        scratch.setDocumentText(text.toString());
+        scratch.setDocumentLanguage(aJCas.getDocumentLanguage());
+        delegate.process(scratch);
+
+        List<List<Token>> tagged = new ArrayList<List<Token>>(sentences.size());
+        for (Sentence sentence : scratchSentences) {
+            tagged.add(selectCovered(Token.class, sentence));
+        }
+        return tagged;
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        delegate.collectionProcessComplete();
+        LOG.info(String.format("POS tags of %d of %d sentences taken from the cache (%.1f%%), "
+                + "cache overall: %s", hits, lookups, lookups == 0 ? 0 : 100.0 * hits / lookups,
+                cache));
+        hits = 0;
+        lookups = 0;
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (delegate != null) {
+            delegate.destroy();
+            delegate = null;
+        }
+        scratch = null;
+        super.destroy();
+    }
+
+    /**
+     * The tags of the tokens of a sentence.
+     */
+    private static class Tags
+    {
+        private final String[] types;
+        private final String[] values;
+        private final String[] coarseValues;
+
+        private Tags(List<Token> tokens)
+        {
+            types = new String[tokens.size()];
+            values = new String[tokens.size()];
+            coarseValues = new String[tokens.size()];
+            for (int i = 0; i < tokens.size(); i++) {
+                POS pos = tokens.get(i).getPos();
+                if (pos != null) {
+                    types[i] = pos.getType().getName();
+                    values[i] = pos.getPosValue();
+                    coarseValues[i] = pos.getCoarseValue();
+                }
+            }
+        }
+
+        private void addTo(JCas aJCas, List<Token> tokens)
+        {
+            for (int i = 0; i < tokens.size(); i++) {
+                if (types[i] == null) {
+                    continue;
+                }
+                Token token = tokens.get(i);
+                Type type = aJCas.getTypeSystem().getType(types[i]);
+                POS pos = (POS) aJCas.getCas().<AnnotationFS> createAnnotation(type,
+                        token.getBegin(), token.getEnd());
+                pos.setPosValue(values[i]);
+                pos.setCoarseValue(coarseValues[i]);
+                pos.addToIndexes();
+                token.setPos(pos);
+            }
+        }
+    }
+}
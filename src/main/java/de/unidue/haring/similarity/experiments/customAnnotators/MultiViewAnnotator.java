@@ -0,0 +1,233 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.component.CasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs an analysis chain once over the texts of several views instead of once per view.
+ * <p>
+ * The texts of the views are joined with a separator in a scratch CAS, the chain processes the
+ * scratch CAS and each annotation is copied into the view its offsets fall into, shifted by the
+ * start of that view's text. Annotations spanning the whole scratch text, e.g. tagset
+ * descriptions, are copied into every view. Annotations within or across a separator are dropped,
+ * so the separator should end a sentence for the chain: the default {@value #DEFAULT_SEPARATOR}
+ * puts the sentence boundary token {@code #} of the pipeline's segmenter on its own line.
+ * <p>
+ * The chain only sees the texts of the views, so it must not depend on annotations added to the
+ * views before.
+ */
+public class MultiViewAnnotator
+    extends CasAnnotator_ImplBase
+{
+    /**
+     * The XML of the description of the delegate analysis chain, see
+     * {@link #createDescription(AnalysisEngineDescription, String...)}.
+     */
+    public static final String PARAM_DELEGATE_DESCRIPTION = "delegateDescription";
+    @ConfigurationParameter(name = PARAM_DELEGATE_DESCRIPTION, mandatory = true)
+    private String delegateDescription;
+
+    /**
+     * The views processed together.
+     */
+    public static final String PARAM_VIEWS = "views";
+    @ConfigurationParameter(name = PARAM_VIEWS, mandatory = true)
+    private String[] views;
+
+    public static final String DEFAULT_SEPARATOR = "\n#\n";
+
+    /**
+     * The text put between the texts of two views (default: {@value #DEFAULT_SEPARATOR}).
+     */
+    public static final String PARAM_SEPARATOR = "separator";
+    @ConfigurationParameter(name = PARAM_SEPARATOR, mandatory = true, defaultValue = DEFAULT_SEPARATOR)
+    private String separator;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiViewAnnotator.class);
+
+    private AnalysisEngine delegate;
+    private CAS scratch;
+    private int processed;
+    private int dropped;
+
+    /**
+     * Creates the description of a view-batching annotator.
+     *
+     * @param delegate
+     *            the analysis chain, processing the initial view
+     * @param views
+     *            the views processed together
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the delegate cannot be serialized
+     */
+    public static AnalysisEngineDescription createDescription(AnalysisEngineDescription delegate,
+            String... views)
+        throws ResourceInitializationException
+    {
+        StringWriter xml = new StringWriter();
+        try {
+            delegate.toXML(xml);
+        }
+        catch (SAXException | IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+        return AnalysisEngineFactory.createEngineDescription(MultiViewAnnotator.class,
+                PARAM_DELEGATE_DESCRIPTION, xml.toString(), PARAM_VIEWS, views);
+    }
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+        if (separator.isEmpty()) {
+            throw new ResourceInitializationException(
+                    new IllegalArgumentException("PARAM_SEPARATOR must not be empty."));
+        }
+
+        try {
+            AnalysisEngineDescription description = UIMAFramework.getXMLParser()
+                    .parseAnalysisEngineDescription(new XMLInputSource(
+                            new ByteArrayInputStream(
+                                    delegateDescription.getBytes(StandardCharsets.UTF_8)),
+                            null));
+            delegate = AnalysisEngineFactory.createEngine(description);
+            scratch = delegate.newCAS();
+        }
+        catch (InvalidXMLException e) {
+            throw new ResourceInitializationException(e);
+        }
+        processed = 0;
+        dropped = 0;
+    }
+
+    @Override
+    public void process(CAS aCAS) throws AnalysisEngineProcessException
+    {
+        CAS[] targets = new CAS[views.length];
+        int[] begins = new int[views.length];
+        int[] ends = new int[views.length];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < views.length; i++) {
+            targets[i] = aCAS.getView(views[i]);
+            if (i > 0) {
+                text.append(separator);
+            }
+            begins[i] = text.length();
+            if (targets[i].getDocumentText() != null) {
+                text.append(targets[i].getDocumentText());
+            }
+            ends[i] = text.length();
+        }
+
+        scratch.reset();
+        scratch.setDocumentText(text.toString());
+        scratch.setDocumentLanguage(targets[0].getDocumentLanguage());
+        delegate.process(scratch);
+
+        copyAnnotations(targets, begins, ends);
+        processed++;
+    }
+
+    /**
+     * Copies the annotations of the scratch CAS into the views. The annotation index is sorted by
+     * begin, so the views are visited in order.
+     */
+    private void copyAnnotations(CAS[] targets, int[] begins, int[] ends)
+    {
+        Type documentAnnotation = scratch.getTypeSystem()
+                .getType(CAS.TYPE_NAME_DOCUMENT_ANNOTATION);
+        int length = scratch.getDocumentText().length();
+        CasCopier[] copiers = new CasCopier[targets.length];
+        // Annotations referenced by a copied annotation are copied along, each copy is shifted
+        // only once
+        Set<FeatureStructure> shifted = Collections
+                .newSetFromMap(new IdentityHashMap<FeatureStructure, Boolean>());
+
+        int view = 0;
+        for (AnnotationFS annotation : scratch.getAnnotationIndex()) {
+            if (scratch.getTypeSystem().subsumes(documentAnnotation, annotation.getType())) {
+                continue;
+            }
+            if (annotation.getBegin() == 0 && annotation.getEnd() == length) {
+                for (int i = 0; i < targets.length; i++) {
+                    copyAnnotation(annotation, targets, begins, ends, i, copiers, shifted);
+                }
+                continue;
+            }
+            while (view + 1 < targets.length && begins[view + 1] <= annotation.getBegin()) {
+                view++;
+            }
+            if (annotation.getBegin() > ends[view] || annotation.getEnd() > ends[view]) {
+                dropped++;
+                continue;
+            }
+
+            copyAnnotation(annotation, targets, begins, ends, view, copiers, shifted);
+        }
+    }
+
+    private void copyAnnotation(AnnotationFS annotation, CAS[] targets, int[] begins, int[] ends,
+            int view, CasCopier[] copiers, Set<FeatureStructure> shifted)
+    {
+        if (copiers[view] == null) {
+            copiers[view] = new CasCopier(scratch, targets[view]);
+        }
+        FeatureStructure copy = copiers[view].copyFs(annotation);
+        if (shifted.add(copy)) {
+            // Offsets are clipped to the view for annotations spanning all views
+            copy.setIntValue(targets[view].getBeginFeature(),
+                    Math.max(annotation.getBegin(), begins[view]) - begins[view]);
+            copy.setIntValue(targets[view].getEndFeature(),
+                    Math.min(annotation.getEnd(), ends[view]) - begins[view]);
+        }
+        targets[view].addFsToIndexes(copy);
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        delegate.collectionProcessComplete();
+        LOG.info("Processed the views of " + processed + " documents together, dropped "
+                + dropped + " annotations in or across separators");
+        processed = 0;
+        dropped = 0;
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (delegate != null) {
+            delegate.destroy();
+            delegate = null;
+        }
+        scratch = null;
+        super.destroy();
+    }
+}
@@ -0,0 +1,545 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads uncompressed text-format embeddings files in parallel.
+ * <p>
+ * The file is split into byte ranges that end at line boundaries. Each range is parsed on a
+ * {@link ForkJoinPool} with a float parser working directly on the raw bytes. Without a
+ * {@link VocabularyFilter} a String is created for the token of every line. With a filter, lines
+ * are first checked against its Bloom filter on the raw bytes, so only kept tokens and the rare
+ * false positives are decoded. The partial results are merged into one vocabulary afterwards.
+ */
+public class ParallelTextFormatReader
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelTextFormatReader.class);
+
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 26;
+
+    // Powers of ten which are exactly representable as double
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    // The 29 bits of a double significand which are dropped when it is rounded to a normal float,
+    // and their value if the double lies exactly halfway between two floats
+    private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+    private static final long FLOAT_HALFWAY = 1L << 28;
+
+    // Each worker thread reuses its read buffer across chunks
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>();
+
+    private final File file;
+    private final boolean hasHeader;
+    private final VocabularyFilter filter;
+    private final int parallelism;
+
+    private int dimensions = -1;
+    private int headerSize = -1;
+
+    /**
+     * @param file
+     *            an uncompressed text-format embeddings file
+     * @param hasHeader
+     *            if true, the first line contains size and dimensionality
+     * @param usedWords
+     *            if not null, only tokens contained in this set are kept
+     */
+    public ParallelTextFormatReader(File file, boolean hasHeader, Set<String> usedWords)
+    {
+        this(file, hasHeader,
+                usedWords != null ? new VocabularyFilter("usedWords", usedWords) : null);
+    }
+
+    /**
+     * @param file
+     *            an uncompressed text-format embeddings file
+     * @param hasHeader
+     *            if true, the first line contains size and dimensionality
+     * @param filter
+     *            if not null, only tokens contained in the filter are kept
+     */
+    public ParallelTextFormatReader(File file, boolean hasHeader, VocabularyFilter filter)
+    {
+        this(file, hasHeader, filter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelTextFormatReader(File file, boolean hasHeader, VocabularyFilter filter,
+            int parallelism)
+    {
+        this.file = file;
+        this.hasHeader = hasHeader;
+        this.filter = filter;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Reads the embeddings file.
+     *
+     * @return a {@code Map<String, float[]>} mapping each token to a vector. If a token occurs
+     *         more than once, its first vector is kept.
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public Map<String, float[]> read() throws IOException
+    {
+        long startTime = System.nanoTime();
+        List<Chunk> chunks = parse();
+
+        int total = countTokens(chunks);
+        Map<String, float[]> embeddings = new HashMap<String, float[]>(total * 4 / 3 + 1);
+        int duplicates = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.tokens.size(); i++) {
+                float[] vector = Arrays.copyOfRange(chunk.values, i * dimensions,
+                        (i + 1) * dimensions);
+                if (embeddings.putIfAbsent(chunk.tokens.get(i), vector) != null) {
+                    duplicates++;
+                }
+            }
+        }
+        finish(chunks, embeddings.size(), duplicates, startTime);
+        return embeddings;
+    }
+
+    /**
+     * Reads the embeddings file into a {@link CustomTextFormatVectorizer}. The parsed rows are
+     * copied straight into one contiguous matrix, no per-token vector arrays are created.
+     *
+     * @return the vectorizer. If a token occurs more than once, its first vector is kept.
+     * @throws IOException
+     *             if the file cannot be read, is empty or too large for a single matrix
+     */
+    public CustomTextFormatVectorizer readVectorizer() throws IOException
+    {
+        long startTime = System.nanoTime();
+        List<Chunk> chunks = parse();
+
+        int total = countTokens(chunks);
+        if (total == 0) {
+            throw new IOException("No embeddings read from " + file);
+        }
+        VocabularyIndex vocabulary = new VocabularyIndex(total);
+        float[] matrix = new float[CustomTextFormatVectorizer.checkedMatrixSize(total,
+                dimensions)];
+        int duplicates = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.tokens.size(); i++) {
+                int row = vocabulary.add(chunk.tokens.get(i));
+                if (row < 0) {
+                    duplicates++;
+                    continue;
+                }
+                System.arraycopy(chunk.values, i * dimensions, matrix, row * dimensions,
+                        dimensions);
+            }
+            // Release the chunk early, the matrix holds its values now
+            chunk.values = null;
+        }
+        vocabulary.trim();
+        if (duplicates > 0) {
+            matrix = Arrays.copyOf(matrix, vocabulary.size() * dimensions);
+        }
+        finish(chunks, vocabulary.size(), duplicates, startTime);
+        return new CustomTextFormatVectorizer(vocabulary, matrix, dimensions);
+    }
+
+    private List<Chunk> parse() throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            long fileSize = channel.size();
+            long start = 0;
+            if (hasHeader) {
+                start = nextLineStart(channel, 0);
+                String[] header = readLine(channel, 0, start).trim().split(" ");
+                headerSize = Integer.parseInt(header[0]);
+                dimensions = Integer.parseInt(header[1]);
+            }
+            else {
+                long end = nextLineStart(channel, 0);
+                dimensions = countFields(readLine(channel, 0, end)) - 1;
+            }
+
+            long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                    Math.min(MAX_CHUNK_SIZE, (fileSize - start) / (parallelism * 4L) + 1));
+            List<long[]> ranges = new ArrayList<long[]>();
+            while (start < fileSize) {
+                long end = start + chunkSize >= fileSize ? fileSize
+                        : nextLineStart(channel, start + chunkSize);
+                ranges.add(new long[] { start, end });
+                start = end;
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<ForkJoinTask<Chunk>> tasks = new ArrayList<ForkJoinTask<Chunk>>();
+                for (long[] range : ranges) {
+                    tasks.add(pool.submit(() -> parseChunk(channel, range[0], range[1])));
+                }
+                List<Chunk> chunks = new ArrayList<Chunk>(tasks.size());
+                for (ForkJoinTask<Chunk> task : tasks) {
+                    chunks.add(task.join());
+                }
+                return chunks;
+            }
+            catch (RuntimeException e) {
+                // join() wraps the exception of a task once more, so the IOException may be
+                // several causes deep
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                }
+                throw e;
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static int countTokens(List<Chunk> chunks)
+    {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.tokens.size();
+        }
+        return total;
+    }
+
+    private void finish(List<Chunk> chunks, int size, int duplicates, long startTime)
+    {
+        if (duplicates > 0) {
+            LOG.warn("Ignored " + duplicates + " duplicate tokens in " + file);
+        }
+        if (hasHeader && filter == null && headerSize != size) {
+            LOG.warn("Header announces " + headerSize + " embeddings, but " + size
+                    + " were read.");
+        }
+        logThroughput(chunks, startTime);
+    }
+
+    private void logThroughput(List<Chunk> chunks, long startTime)
+    {
+        long lines = 0;
+        long bytes = 0;
+        long skipped = 0;
+        long rejected = 0;
+        for (Chunk chunk : chunks) {
+            lines += chunk.lines;
+            bytes += chunk.bytes;
+            skipped += chunk.malformedLines;
+            rejected += chunk.rejectedLines;
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - startTime) / 1e9);
+        LOG.info(String.format(
+                "Read %d lines (%.1f MB) in %.2f s with %d threads: %.0f lines/s, %.1f MB/s",
+                lines, bytes / 1e6, seconds, parallelism, lines / seconds,
+                bytes / 1e6 / seconds));
+        if (filter != null) {
+            LOG.info(String.format("Vocabulary filter %s (%d tokens) rejected %.2f%% of lines "
+                    + "without decoding their token", filter, filter.size(),
+                    lines > 0 ? rejected * 100.0 / lines : 0.0));
+        }
+        if (skipped > 0) {
+            LOG.warn("Skipped " + skipped + " malformed lines, expected " + dimensions
+                    + " numeric values per line.");
+        }
+    }
+
+    private Chunk parseChunk(FileChannel channel, long start, long end) throws IOException
+    {
+        int length = (int) (end - start);
+        byte[] bytes = BUFFERS.get();
+        if (bytes == null || bytes.length < length) {
+            bytes = new byte[Math.max(length, MIN_CHUNK_SIZE)];
+            BUFFERS.set(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        long position = start;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file " + file);
+            }
+            position += read;
+        }
+
+        Chunk chunk = new Chunk(length, dimensions);
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            parseLine(bytes, lineStart, lineEnd, chunk);
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses a single line {@code <token> <value1> ... <valueN>}. Since some models contain tokens
+     * with blanks, the token is everything in front of the last {@code dimensions} fields.
+     */
+    private void parseLine(byte[] bytes, int start, int end, Chunk chunk)
+    {
+        // Strip trailing blanks and carriage returns
+        while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\r')) {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        chunk.lines++;
+
+        // Vocabulary tokens never contain blanks, so the Bloom filter can check the bytes up to the
+        // first blank before the line is split
+        int firstBlank = start;
+        if (filter != null) {
+            while (firstBlank < end && bytes[firstBlank] != ' ') {
+                firstBlank++;
+            }
+            if (!filter.mightContain(bytes, start, firstBlank)) {
+                chunk.rejectedLines++;
+                return;
+            }
+        }
+
+        // Find the blank in front of the first vector value by walking backwards
+        int tokenEnd = end;
+        int fields = 0;
+        while (fields < dimensions && tokenEnd > start) {
+            tokenEnd--;
+            if (bytes[tokenEnd] == ' ') {
+                fields++;
+            }
+        }
+        if (fields < dimensions || tokenEnd == start) {
+            chunk.malformedLines++;
+            return;
+        }
+
+        if (filter != null && tokenEnd != firstBlank) {
+            return;
+        }
+        String token = new String(bytes, start, tokenEnd - start, StandardCharsets.UTF_8);
+        if (filter != null && !filter.contains(token)) {
+            return;
+        }
+
+        float[] values = chunk.reserve();
+        int offset = chunk.tokens.size() * dimensions;
+        int fieldStart = tokenEnd + 1;
+        try {
+            for (int d = 0; d < dimensions; d++) {
+                int fieldEnd = fieldStart;
+                while (fieldEnd < end && bytes[fieldEnd] != ' ') {
+                    fieldEnd++;
+                }
+                values[offset + d] = parseFloat(bytes, fieldStart, fieldEnd);
+                fieldStart = fieldEnd + 1;
+            }
+        }
+        catch (NumberFormatException e) {
+            chunk.malformedLines++;
+            return;
+        }
+        chunk.tokens.add(token);
+    }
+
+    /**
+     * Parses a decimal float without creating intermediate objects, with the same result as
+     * {@link Float#parseFloat(String)}. The value is computed in double precision, which rounds
+     * once, and then rounded to float. The second rounding can only differ from rounding the
+     * decimal directly if the double lies exactly halfway between two floats; such values, numbers
+     * with more than 18 significant digits, exponents beyond the exactly representable powers of
+     * ten and special values fall back to {@link Float#parseFloat(String)}.
+     *
+     * @param bytes
+     *            the raw ASCII bytes
+     * @param start
+     *            index of the first character
+     * @param end
+     *            index behind the last character
+     * @return the parsed value
+     */
+    static float parseFloat(byte[] bytes, int start, int end)
+    {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean truncated = false;
+
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+            anyDigit = true;
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            }
+            else {
+                truncated = true;
+            }
+            i++;
+        }
+        if (i < end && bytes[i] == '.') {
+            i++;
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                anyDigit = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    exponent--;
+                }
+                else {
+                    truncated = true;
+                }
+                i++;
+            }
+        }
+        if (anyDigit && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            boolean exponentDigit = false;
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9' && explicitExponent < 10000) {
+                explicitExponent = explicitExponent * 10 + (bytes[i] - '0');
+                exponentDigit = true;
+                i++;
+            }
+            if (!exponentDigit) {
+                return fallback(bytes, start, end);
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (!anyDigit || truncated || i != end) {
+            return fallback(bytes, start, end);
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0f : 0.0f;
+        }
+        if (exponent < -22 || exponent > 22 || mantissa >= 1L << 53) {
+            return fallback(bytes, start, end);
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                : mantissa / POWERS_OF_TEN[-exponent];
+        if ((Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_BITS) == FLOAT_HALFWAY) {
+            return fallback(bytes, start, end);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private static float fallback(byte[] bytes, int start, int end)
+    {
+        return Float.parseFloat(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private static long nextLineStart(FileChannel channel, long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long size = channel.size();
+        while (position < size) {
+            ((Buffer) buffer).clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static String readLine(FileChannel channel, long start, long end) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+            // read until the buffer is full
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private static int countFields(String line)
+    {
+        return line.trim().split(" ").length;
+    }
+
+    /**
+     * The tokens and a flat array of vector values parsed from one byte range.
+     */
+    private static class Chunk
+    {
+        private final List<String> tokens = new ArrayList<String>();
+        private final int dimensions;
+        private float[] values;
+        private final long bytes;
+        private long lines;
+        private long malformedLines;
+        // Lines skipped by the Bloom filter of the vocabulary filter
+        private long rejectedLines;
+
+        private Chunk(long bytes, int dimensions)
+        {
+            this.bytes = bytes;
+            this.dimensions = dimensions;
+            values = new float[dimensions * 1024];
+        }
+
+        /**
+         * Makes sure there is space for one more row and returns the value array.
+         */
+        private float[] reserve()
+        {
+            int required = (tokens.size() + 1) * dimensions;
+            if (required > values.length) {
+                values = Arrays.copyOf(values, Math.max(required, values.length * 2));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.dkpro.core.api.embeddings.Vectorizer;
+import org.dkpro.core.api.embeddings.VectorizerUtils;
+
+/**
+ * A {@link Vectorizer} that stores its vectors quantized, either as IEEE 754 half precision
+ * floats or as bytes with one scale factor per row.
+ * <p>
+ * Compared to float32, half precision halves and int8 quarters the memory needed for the vectors.
+ * {@link #vectorize(String)} dequantizes a row on the fly. The {@code dot} and {@code cosine}
+ * kernels work directly on the quantized rows without materializing them.
+ * <p>
+ * Use {@link #quantize(CustomTextFormatVectorizer, Encoding)} or {@link #load(File)} to
+ * initialize.
+ */
+public class QuantizedVectorizer
+    implements Vectorizer
+{
+    /**
+     * The storage format of the vector values.
+     */
+    public enum Encoding
+    {
+        /** IEEE 754 half precision, 2 bytes per value */
+        FP16(2),
+        /** Signed bytes scaled by the largest absolute value of the row, 1 byte per value */
+        INT8(1);
+
+        private final int bytesPerValue;
+
+        private Encoding(int bytesPerValue)
+        {
+            this.bytesPerValue = bytesPerValue;
+        }
+
+        public int getBytesPerValue()
+        {
+            return bytesPerValue;
+        }
+    }
+
+    // Amount of vector data read per I/O call
+    private static final int READ_BUFFER_SIZE = 1 << 22;
+
+    // All 2^16 half precision values, indexed by their bit pattern
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+    static {
+        for (int i = 0; i < HALF_TO_FLOAT.length; i++) {
+            HALF_TO_FLOAT[i] = halfToFloat(i);
+        }
+    }
+
+    private final VocabularyIndex vocabulary;
+    private final Encoding encoding;
+    private final int dimensions;
+    private final boolean caseless;
+    private final float[] unknownVector;
+
+    // FP16 rows
+    private final short[] halfs;
+    // INT8 rows and their scale factors
+    private final byte[] bytes;
+    private final float[] scales;
+    // Euclidean norm of each dequantized row
+    private final float[] norms;
+
+    private QuantizedVectorizer(VocabularyIndex vocabulary, Encoding encoding, int dimensions,
+            short[] halfs, byte[] bytes, float[] scales)
+    {
+        this.vocabulary = vocabulary;
+        this.encoding = encoding;
+        this.dimensions = dimensions;
+        this.halfs = halfs;
+        this.bytes = bytes;
+        this.scales = scales;
+        caseless = vocabulary.isCaseless();
+        unknownVector = VectorizerUtils.randomVector(dimensions);
+
+        norms = new float[vocabulary.size()];
+        for (int row = 0; row < norms.length; row++) {
+            norms[row] = (float) Math.sqrt(dot(row, row));
+        }
+    }
+
+    /**
+     * Quantizes a float32 model. The vocabulary is shared with the source model.
+     *
+     * @param source
+     *            the float32 model
+     * @param encoding
+     *            the target encoding
+     * @return a new {@link QuantizedVectorizer}
+     */
+    public static QuantizedVectorizer quantize(CustomTextFormatVectorizer source,
+            Encoding encoding)
+    {
+        int size = source.size();
+        int dimensions = source.dimensions();
+        float[] matrix = source.matrix();
+
+        if (encoding == Encoding.FP16) {
+            short[] halfs = new short[matrix.length];
+            for (int i = 0; i < matrix.length; i++) {
+                halfs[i] = floatToHalf(matrix[i]);
+            }
+            return new QuantizedVectorizer(source.vocabulary(), encoding, dimensions, halfs,
+                    null, null);
+        }
+
+        byte[] bytes = new byte[matrix.length];
+        float[] scales = new float[size];
+        for (int row = 0; row < size; row++) {
+            int offset = row * dimensions;
+            float max = 0;
+            for (int d = 0; d < dimensions; d++) {
+                max = Math.max(max, Math.abs(matrix[offset + d]));
+            }
+            if (max == 0) {
+                continue;
+            }
+            scales[row] = max / 127;
+            for (int d = 0; d < dimensions; d++) {
+                bytes[offset + d] = (byte) Math.round(matrix[offset + d] / scales[row]);
+            }
+        }
+        return new QuantizedVectorizer(source.vocabulary(), encoding, dimensions, null, bytes,
+                scales);
+    }
+
+    /**
+     * Load a model file that has been written by
+     * {@link QuantizedWordVectorUtils#writeQuantized(QuantizedVectorizer, File)}.
+     *
+     * @param f
+     *            the quantized model {@link File}
+     * @return a new {@link QuantizedVectorizer}
+     * @throws IOException
+     *             if the file cannot be read or is not a quantized model file
+     */
+    public static QuantizedVectorizer load(File f) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f), READ_BUFFER_SIZE))) {
+            if (in.readInt() != QuantizedWordVectorUtils.MAGIC) {
+                throw new IOException("Not a quantized embeddings file.");
+            }
+            int version = in.readInt();
+            if (version != QuantizedWordVectorUtils.VERSION) {
+                throw new IOException("Unsupported quantized embeddings file version: " + version);
+            }
+            Encoding encoding = Encoding.values()[in.readInt()];
+            int size = in.readInt();
+            int dimensions = in.readInt();
+            int values = CustomTextFormatVectorizer.checkedMatrixSize(size, dimensions);
+
+            VocabularyIndex vocabulary = new VocabularyIndex(size);
+            for (int row = 0; row < size; row++) {
+                vocabulary.add(in.readUTF());
+            }
+            vocabulary.trim();
+
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            if (encoding == Encoding.FP16) {
+                short[] halfs = new short[values];
+                int position = 0;
+                while (position < values) {
+                    int count = Math.min(values - position, buffer.length / Short.BYTES);
+                    in.readFully(buffer, 0, count * Short.BYTES);
+                    ByteBuffer.wrap(buffer, 0, count * Short.BYTES).asShortBuffer().get(halfs,
+                            position, count);
+                    position += count;
+                }
+                return new QuantizedVectorizer(vocabulary, encoding, dimensions, halfs, null,
+                        null);
+            }
+
+            float[] scales = new float[size];
+            for (int row = 0; row < size; row++) {
+                scales[row] = in.readFloat();
+            }
+            byte[] bytes = new byte[values];
+            in.readFully(bytes);
+            return new QuantizedVectorizer(vocabulary, encoding, dimensions, null, bytes, scales);
+        }
+    }
+
+    @Override
+    public float[] vectorize(String token)
+    {
+        int row = rowId(token);
+        if (row < 0) {
+            return unknownVector();
+        }
+        float[] vector = new float[dimensions];
+        row(row, vector, 0);
+        return vector;
+    }
+
+    /**
+     * Looks up a token the same way {@link #vectorize(String)} does, i.e. lowercased if the model
+     * is caseless.
+     *
+     * @param token
+     *            the token
+     * @return the row id of the token or -1 if the token is unknown
+     */
+    public int rowId(CharSequence token)
+    {
+        return caseless ? vocabulary.getLowercase(token) : vocabulary.get(token);
+    }
+
+    /**
+     * Dequantizes a row into the target array.
+     *
+     * @param row
+     *            the row id
+     * @param target
+     *            the array to write to
+     * @param offset
+     *            the index of the first value in the target array
+     */
+    public void row(int row, float[] target, int offset)
+    {
+        int start = row * dimensions;
+        if (encoding == Encoding.FP16) {
+            for (int d = 0; d < dimensions; d++) {
+                target[offset + d] = HALF_TO_FLOAT[halfs[start + d] & 0xffff];
+            }
+        }
+        else {
+            float scale = scales[row];
+            for (int d = 0; d < dimensions; d++) {
+                target[offset + d] = bytes[start + d] * scale;
+            }
+        }
+    }
+
+    /**
+     * Computes the dot product of two rows.
+     */
+    public float dot(int rowA, int rowB)
+    {
+        int a = rowA * dimensions;
+        int b = rowB * dimensions;
+        if (encoding == Encoding.FP16) {
+            float sum = 0;
+            for (int d = 0; d < dimensions; d++) {
+                sum += HALF_TO_FLOAT[halfs[a + d] & 0xffff] * HALF_TO_FLOAT[halfs[b + d] & 0xffff];
+            }
+            return sum;
+        }
+        // The products of two bytes are accumulated exactly as integers
+        int sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            sum += bytes[a + d] * bytes[b + d];
+        }
+        return sum * scales[rowA] * scales[rowB];
+    }
+
+    /**
+     * Computes the dot product of a row and a float32 vector.
+     */
+    public float dot(int row, float[] vector)
+    {
+        int start = row * dimensions;
+        float sum = 0;
+        if (encoding == Encoding.FP16) {
+            for (int d = 0; d < dimensions; d++) {
+                sum += HALF_TO_FLOAT[halfs[start + d] & 0xffff] * vector[d];
+            }
+            return sum;
+        }
+        for (int d = 0; d < dimensions; d++) {
+            sum += bytes[start + d] * vector[d];
+        }
+        return sum * scales[row];
+    }
+
+    /**
+     * Computes the cosine similarity of two rows.
+     *
+     * @return the similarity or 0 if one of the rows is a null vector
+     */
+    public float cosine(int rowA, int rowB)
+    {
+        float norm = norms[rowA] * norms[rowB];
+        return norm == 0 ? 0 : dot(rowA, rowB) / norm;
+    }
+
+    /**
+     * Computes the cosine similarity of a row and a float32 vector.
+     *
+     * @return the similarity or 0 if one of the vectors is a null vector
+     */
+    public float cosine(int row, float[] vector)
+    {
+        float vectorNorm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            vectorNorm += vector[d] * vector[d];
+        }
+        float norm = norms[row] * (float) Math.sqrt(vectorNorm);
+        return norm == 0 ? 0 : dot(row, vector) / norm;
+    }
+
+    /**
+     * Converts a float into the bit pattern of the nearest half precision value, rounding ties to
+     * even. Values beyond the half precision range become infinite.
+     */
+    static short floatToHalf(float value)
+    {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent == 0xff) {
+            // Infinity or NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // Subnormal half, or too small to be represented at all
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int midpoint = 1 << (shift - 1);
+            if (rest > midpoint || (rest == midpoint && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int rest = mantissa & 0x1fff;
+        // A carry out of the mantissa correctly increments the exponent
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    private static float halfToFloat(int half)
+    {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * @return the token stored for the row
+     */
+    public String token(int row)
+    {
+        return vocabulary.token(row);
+    }
+
+    public Encoding getEncoding()
+    {
+        return encoding;
+    }
+
+    short[] halfs()
+    {
+        return halfs;
+    }
+
+    byte[] bytes()
+    {
+        return bytes;
+    }
+
+    float[] scales()
+    {
+        return scales;
+    }
+
+    @Override
+    public boolean contains(String token)
+    {
+        return vocabulary.get(token) >= 0;
+    }
+
+    @Override
+    public float[] unknownVector()
+    {
+        return unknownVector;
+    }
+
+    @Override
+    public int dimensions()
+    {
+        return dimensions;
+    }
+
+    @Override
+    public int size()
+    {
+        return vocabulary.size();
+    }
+
+    @Override
+    public boolean isCaseless()
+    {
+        return caseless;
+    }
+}
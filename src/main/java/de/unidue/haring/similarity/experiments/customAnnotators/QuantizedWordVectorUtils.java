@@ -0,0 +1,93 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.unidue.haring.similarity.experiments.customAnnotators.QuantizedVectorizer.Encoding;
+
+/**
+ * Writes word embeddings into the quantized format read by {@link QuantizedVectorizer}.
+ * <p>
+ * The file starts with magic number, version, encoding, number of entries and dimensionality,
+ * followed by the tokens in row order (modified UTF-8 as written by
+ * {@link DataOutputStream#writeUTF(String)}). FP16 files then hold {@code size * dimensions}
+ * half precision values, INT8 files hold {@code size} float scale factors followed by
+ * {@code size * dimensions} bytes. All values are stored in big-endian byte order.
+ */
+public class QuantizedWordVectorUtils
+{
+    static final int MAGIC = 0x51564543;
+    static final int VERSION = 1;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 22;
+
+    private static final Logger LOG = LoggerFactory.getLogger(QuantizedWordVectorUtils.class);
+
+    /**
+     * Converts a text-format embeddings file into the quantized format.
+     *
+     * @param args
+     *            the text-format model file, the target file, the encoding ({@code fp16} or
+     *            {@code int8}) and optionally {@code true} if the model has a Word2Vec header line
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3) {
+            System.out.println(
+                    "Usage: QuantizedWordVectorUtils <text model> <target> <fp16|int8> [hasHeader]");
+            return;
+        }
+        boolean hasHeader = args.length > 3 && Boolean.parseBoolean(args[3]);
+        CustomTextFormatVectorizerUtils.convertMalletEmbeddingsToQuantized(new File(args[0]),
+                hasHeader, Encoding.valueOf(args[2].toUpperCase()), new File(args[1]));
+    }
+
+    /**
+     * Writes a quantized model into a file that can be opened with
+     * {@link QuantizedVectorizer#load(File)}.
+     *
+     * @param vectorizer
+     *            the quantized model
+     * @param targetFile
+     *            the output {@link File}
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static void writeQuantized(QuantizedVectorizer vectorizer, File targetFile)
+        throws IOException
+    {
+        LOG.info("Writing " + vectorizer.size() + " " + vectorizer.getEncoding()
+                + " embeddings to " + targetFile);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(targetFile), WRITE_BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(vectorizer.getEncoding().ordinal());
+            out.writeInt(vectorizer.size());
+            out.writeInt(vectorizer.dimensions());
+            for (int row = 0; row < vectorizer.size(); row++) {
+                out.writeUTF(vectorizer.token(row));
+            }
+
+            if (vectorizer.getEncoding() == Encoding.FP16) {
+                for (short half : vectorizer.halfs()) {
+                    out.writeShort(half);
+                }
+            }
+            else {
+                for (float scale : vectorizer.scales()) {
+                    out.writeFloat(scale);
+                }
+                out.write(vectorizer.bytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.component.CasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.XMLInputSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs an analysis chain once per distinct document text and copies the result into every CAS
+ * with the same text.
+ * <p>
+ * The reader emits one CAS per question, each holding the full instance text. Mapped onto the
+ * instance view, this annotator processes an instance text only the first time it occurs in a
+ * scratch CAS and afterwards copies the tokens, sentences, lemmas and POS tags of that scratch
+ * CAS into the view. Scratch CASes are kept for the {@value #DEFAULT_CACHE_SIZE} most recently
+ * seen texts; as the questions of an instance follow each other, one would suffice for the
+ * MCScript files.
+ */
+public class SharedInstanceAnnotator
+    extends CasAnnotator_ImplBase
+{
+    /**
+     * The XML of the description of the delegate analysis chain, see
+     * {@link #createDescription(AnalysisEngineDescription)}.
+     */
+    public static final String PARAM_DELEGATE_DESCRIPTION = "delegateDescription";
+    @ConfigurationParameter(name = PARAM_DELEGATE_DESCRIPTION, mandatory = true)
+    private String delegateDescription;
+
+    public static final int DEFAULT_CACHE_SIZE = 8;
+
+    /**
+     * The number of analyzed texts kept (default: {@value #DEFAULT_CACHE_SIZE}).
+     */
+    public static final String PARAM_CACHE_SIZE = "cacheSize";
+    @ConfigurationParameter(name = PARAM_CACHE_SIZE, mandatory = true, defaultValue = "8")
+    private int cacheSize;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedInstanceAnnotator.class);
+
+    private AnalysisEngine delegate;
+    private Map<String, CAS> analyzedTexts;
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates the description of a shared annotator. The annotator processes its default view, so
+     * it has to be mapped onto the instance view when it is added to a pipeline.
+     *
+     * @param delegate
+     *            the analysis chain, processing the initial view
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the delegate cannot be serialized
+     */
+    public static AnalysisEngineDescription createDescription(AnalysisEngineDescription delegate)
+        throws ResourceInitializationException
+    {
+        StringWriter xml = new StringWriter();
+        try {
+            delegate.toXML(xml);
+        }
+        catch (SAXException | IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+        return AnalysisEngineFactory.createEngineDescription(SharedInstanceAnnotator.class,
+                PARAM_DELEGATE_DESCRIPTION, xml.toString());
+    }
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+
+        try {
+            AnalysisEngineDescription description = UIMAFramework.getXMLParser()
+                    .parseAnalysisEngineDescription(new XMLInputSource(
+                            new ByteArrayInputStream(
+                                    delegateDescription.getBytes(StandardCharsets.UTF_8)),
+                            null));
+            delegate = AnalysisEngineFactory.createEngine(description);
+        }
+        catch (InvalidXMLException e) {
+            throw new ResourceInitializationException(e);
+        }
+
+        // Least recently used texts are dropped first
+        analyzedTexts = new LinkedHashMap<String, CAS>(cacheSize * 2, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CAS> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public void process(CAS aCAS) throws AnalysisEngineProcessException
+    {
+        String text = aCAS.getDocumentText();
+        CAS analyzed = analyzedTexts.get(text);
+        if (analyzed == null) {
+            misses++;
+            try {
+                analyzed = delegate.newCAS();
+            }
+            catch (ResourceInitializationException e) {
+                throw new AnalysisEngineProcessException(e);
+            }
+            analyzed.setDocumentText(text);
+            analyzed.setDocumentLanguage(aCAS.getDocumentLanguage());
+            delegate.process(analyzed);
+            analyzedTexts.put(text, analyzed);
+        }
+        else {
+            hits++;
+        }
+        new CasCopier(analyzed, aCAS).copyCasView(analyzed, aCAS, false);
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        delegate.collectionProcessComplete();
+        LOG.info(String.format("Analyzed %d distinct texts for %d documents", misses,
+                misses + hits));
+        // The annotator may be reused for another collection
+        analyzedTexts.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (delegate != null) {
+            delegate.destroy();
+            delegate = null;
+        }
+        super.destroy();
+    }
+}
@@ -0,0 +1,81 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.component.CasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import de.unidue.haring.similarity.experiments.utils.StageTimings;
+
+/**
+ * Marks the start or the end of a timed stage of an analysis chain.
+ * <p>
+ * A stage is enclosed by a start and an end marker, see
+ * {@link #createDescription(String, AnalysisEngineDescription...)}. The markers do not touch the
+ * CAS, so they can be placed anywhere in an aggregate without sofa mappings. As an aggregate
+ * processes a CAS on one thread, the start of a stage is kept per thread, and the end marker
+ * records the time in between to the {@link StageTimings}.
+ */
+public class StageTimer
+    extends CasAnnotator_ImplBase
+{
+    /**
+     * The name of the stage.
+     */
+    public static final String PARAM_STAGE = "stage";
+    @ConfigurationParameter(name = PARAM_STAGE, mandatory = true)
+    private String stage;
+
+    /**
+     * True for the end marker of the stage, false for the start marker.
+     */
+    public static final String PARAM_END = "end";
+    @ConfigurationParameter(name = PARAM_END, mandatory = true, defaultValue = "false")
+    private boolean end;
+
+    private static final ThreadLocal<Map<String, Long>> STARTS = ThreadLocal
+            .withInitial(HashMap::new);
+
+    /**
+     * Creates an aggregate which times the given engines as one stage.
+     *
+     * @param stage
+     *            the name of the stage
+     * @param engines
+     *            the engines of the stage
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the description cannot be created
+     */
+    public static AnalysisEngineDescription createDescription(String stage,
+            AnalysisEngineDescription... engines)
+        throws ResourceInitializationException
+    {
+        AnalysisEngineDescription[] chain = new AnalysisEngineDescription[engines.length + 2];
+        chain[0] = createEngineDescription(StageTimer.class, PARAM_STAGE, stage);
+        System.arraycopy(engines, 0, chain, 1, engines.length);
+        chain[chain.length - 1] = createEngineDescription(StageTimer.class, PARAM_STAGE, stage,
+                PARAM_END, true);
+        return createEngineDescription(chain);
+    }
+
+    @Override
+    public void process(CAS aCAS) throws AnalysisEngineProcessException
+    {
+        if (!end) {
+            STARTS.get().put(stage, System.nanoTime());
+            return;
+        }
+        Long start = STARTS.get().remove(stage);
+        if (start != null) {
+            StageTimings.record(stage, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Restricts the tokens loaded from an embeddings file to a known vocabulary.
+ * <p>
+ * Besides the exact token set, the filter holds a Bloom filter which is checked first. It hashes
+ * the raw UTF-8 bytes of a line or a prefix of a {@link CharSequence}, so the large majority of
+ * lines of a big model can be rejected without creating a String. Tokens which pass the Bloom
+ * filter are confirmed with {@link #contains(String)}.
+ */
+public class VocabularyFilter
+{
+    // A false positive rate of about 0.1% with 10 hash functions
+    private static final double BITS_PER_TOKEN = 14.4;
+    private static final int HASH_FUNCTIONS = 10;
+
+    // 64-bit FNV-1a over the UTF-16 chars of a token
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String id;
+    private final Set<String> tokens;
+    private final long[] bits;
+    private final int mask;
+
+    /**
+     * @param id
+     *            identifies the vocabulary, e.g. the dataset it was collected from
+     * @param tokens
+     *            the tokens to keep, the set is copied
+     */
+    public VocabularyFilter(String id, Set<String> tokens)
+    {
+        this.id = id;
+        this.tokens = Collections.unmodifiableSet(new HashSet<String>(tokens));
+
+        long requiredBits = (long) Math.ceil(Math.max(1, tokens.size()) * BITS_PER_TOKEN);
+        int size = Integer.highestOneBit((int) Math.min(1L << 30, Math.max(64, requiredBits)) - 1)
+                << 1;
+        bits = new long[size >>> 6];
+        mask = size - 1;
+        for (String token : this.tokens) {
+            add(hash(token, 0, token.length()));
+        }
+    }
+
+    private void add(long hash)
+    {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean test(long hash)
+    {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the Bloom filter for a part of a char sequence.
+     *
+     * @return false if the token is definitely not in the vocabulary
+     */
+    public boolean mightContain(CharSequence text, int start, int end)
+    {
+        return test(hash(text, start, end));
+    }
+
+    /**
+     * Checks the Bloom filter for a UTF-8 encoded token. The bytes are decoded on the fly, so the
+     * result is the same as for the decoded String. Malformed input is never rejected.
+     *
+     * @return false if the token is definitely not in the vocabulary
+     */
+    public boolean mightContain(byte[] bytes, int start, int end)
+    {
+        long h = FNV_OFFSET;
+        int i = start;
+        while (i < end) {
+            int b = bytes[i];
+            if (b >= 0) {
+                h = (h ^ b) * FNV_PRIME;
+                i++;
+                continue;
+            }
+            int codePoint;
+            int length;
+            if ((b & 0xe0) == 0xc0) {
+                codePoint = b & 0x1f;
+                length = 2;
+            }
+            else if ((b & 0xf0) == 0xe0) {
+                codePoint = b & 0x0f;
+                length = 3;
+            }
+            else if ((b & 0xf8) == 0xf0) {
+                codePoint = b & 0x07;
+                length = 4;
+            }
+            else {
+                return true;
+            }
+            if (i + length > end) {
+                return true;
+            }
+            for (int j = 1; j < length; j++) {
+                int next = bytes[i + j];
+                if ((next & 0xc0) != 0x80) {
+                    return true;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3f);
+            }
+            if (codePoint < 0x10000) {
+                h = (h ^ codePoint) * FNV_PRIME;
+            }
+            else {
+                h = (h ^ Character.highSurrogate(codePoint)) * FNV_PRIME;
+                h = (h ^ Character.lowSurrogate(codePoint)) * FNV_PRIME;
+            }
+            i += length;
+        }
+        return test(mix(h));
+    }
+
+    /**
+     * Checks whether a token is part of the vocabulary.
+     */
+    public boolean contains(String token)
+    {
+        return tokens.contains(token);
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public Set<String> getTokens()
+    {
+        return tokens;
+    }
+
+    public int size()
+    {
+        return tokens.size();
+    }
+
+    private static long hash(CharSequence text, int start, int end)
+    {
+        long h = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreads the bits of both halves used as hash functions.
+     */
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString()
+    {
+        return id;
+    }
+}
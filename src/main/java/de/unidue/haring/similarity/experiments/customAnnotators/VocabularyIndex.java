@@ -0,0 +1,204 @@
+package de.unidue.haring.similarity.experiments.customAnnotators;
+
+import java.util.Arrays;
+
+/**
+ * A compact string to row id mapping based on open addressing.
+ * <p>
+ * All tokens are stored back to back in a single {@code char[]} pool, the hash table only holds
+ * {@code int} row ids. Compared to a {@code HashMap<String, ...>} this avoids the String, entry
+ * and array headers of every token. Lookups accept any {@link CharSequence} and can fold the
+ * query to lowercase on the fly, so neither a key object nor a lowercased copy is created.
+ */
+public class VocabularyIndex
+{
+    private static final float MAX_LOAD = 0.5f;
+
+    private char[] pool;
+    private int poolLength;
+    // Start of row i in the pool, starts[size] is the end of the last row
+    private int[] starts;
+    private int[] hashes;
+    // Slots hold row + 1, 0 marks an empty slot
+    private int[] slots;
+    private int size;
+    private boolean caseless = true;
+
+    public VocabularyIndex(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1)
+                << 1;
+        slots = new int[capacity];
+        starts = new int[Math.max(16, expectedSize + 1)];
+        hashes = new int[Math.max(16, expectedSize)];
+        pool = new char[Math.max(256, expectedSize * 8)];
+    }
+
+    /**
+     * Adds a token.
+     *
+     * @param token
+     *            the token
+     * @return the row id of the new token, or {@code -(row + 1)} if the token was already present
+     */
+    public int add(String token)
+    {
+        int hash = hash(token, false);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int row = slots[slot] - 1;
+            if (hashes[row] == hash && matches(row, token, false)) {
+                return -(row + 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int row = size;
+        ensureCapacity(token.length());
+        token.getChars(0, token.length(), pool, poolLength);
+        poolLength += token.length();
+        hashes[row] = hash;
+        starts[row + 1] = poolLength;
+        slots[slot] = row + 1;
+        size++;
+        caseless &= token.equals(token.toLowerCase());
+
+        if (size > slots.length * MAX_LOAD) {
+            rehash(slots.length << 1);
+        }
+        return row;
+    }
+
+    /**
+     * Looks up a token.
+     *
+     * @param token
+     *            the token
+     * @return its row id or -1 if the token is unknown
+     */
+    public int get(CharSequence token)
+    {
+        return find(token, false);
+    }
+
+    /**
+     * Looks up the lowercase form of a token. Each character is folded with
+     * {@link Character#toLowerCase(char)}, which matches {@link String#toLowerCase()} except for
+     * a few locale-specific and length-changing special cases.
+     *
+     * @param token
+     *            the token
+     * @return the row id of the lowercased token or -1 if it is unknown
+     */
+    public int getLowercase(CharSequence token)
+    {
+        return find(token, true);
+    }
+
+    private int find(CharSequence token, boolean lowercase)
+    {
+        int hash = hash(token, lowercase);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int row = slots[slot] - 1;
+            if (hashes[row] == hash && matches(row, token, lowercase)) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param row
+     *            a row id
+     * @return the token stored for the row
+     */
+    public String token(int row)
+    {
+        return new String(pool, starts[row], starts[row + 1] - starts[row]);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return true if all tokens are lowercase
+     */
+    public boolean isCaseless()
+    {
+        return caseless;
+    }
+
+    /**
+     * Releases unused capacity once all tokens have been added.
+     */
+    public void trim()
+    {
+        pool = Arrays.copyOf(pool, poolLength);
+        starts = Arrays.copyOf(starts, size + 1);
+        hashes = Arrays.copyOf(hashes, size);
+    }
+
+    private boolean matches(int row, CharSequence token, boolean lowercase)
+    {
+        int start = starts[row];
+        int length = starts[row + 1] - start;
+        if (length != token.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (lowercase) {
+                c = Character.toLowerCase(c);
+            }
+            if (pool[start + i] != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence token, boolean lowercase)
+    {
+        int h = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            h = 31 * h + (lowercase ? Character.toLowerCase(c) : c);
+        }
+        // Spread the bits as linear probing only uses the low bits
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private void ensureCapacity(int tokenLength)
+    {
+        if (poolLength + tokenLength > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(poolLength + tokenLength, pool.length * 2));
+        }
+        if (size + 2 > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(16, starts.length * 2));
+        }
+        if (size + 1 > hashes.length) {
+            hashes = Arrays.copyOf(hashes, Math.max(16, hashes.length * 2));
+        }
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] newSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int row = 0; row < size; row++) {
+            int slot = hashes[row] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = row + 1;
+        }
+        slots = newSlots;
+    }
+}
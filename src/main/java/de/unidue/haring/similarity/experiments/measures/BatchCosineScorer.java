@@ -0,0 +1,206 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
+
+/**
+ * Scores the cosine measures of an embeddings model for all QuestionAnswerProblems of a run at
+ * once, instead of one problem at a time.
+ * <p>
+ * While the problems are processed,
+ * {@link #add(EmbeddingsSimilarityMeasure, QuestionAnswerProblem)} collects the normalized
+ * centroids of the segments the measure compares. Centroids shared by several problems, e.g. the
+ * one of an instance, are the same arrays, see {@link CentroidCache}, and become a single row of
+ * the matrix. {@link #score()} then computes the dot products of all
+ * pairs of rows with {@link VectorKernels#dotRows(float[], int, int[], int[])} and sets the
+ * relatedness values on the QuestionAnswerPairs, as the measures would have.
+ */
+public class BatchCosineScorer
+{
+    private static final int INITIAL_ROWS = 1024;
+
+    private final VectorKernels kernels;
+
+    // Row of each centroid in the matrix
+    private final Map<float[], Integer> rows = new IdentityHashMap<float[], Integer>();
+    private float[] matrix;
+    private int dimensions = -1;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public BatchCosineScorer()
+    {
+        this(VectorKernels.get());
+    }
+
+    /**
+     * @param kernels
+     *            the kernels computing the dot products
+     */
+    public BatchCosineScorer(VectorKernels kernels)
+    {
+        this.kernels = kernels;
+    }
+
+    /**
+     * Collects the centroids a measure compares for a problem, if the measure is a cosine of
+     * centroids, see {@link EmbeddingsSimilarityMeasure#getBatchSegment()}. The centroids must
+     * have been set on the QuestionAnswerPairs by the embeddings model of the measure; they are
+     * taken now, as the pairs get the centroids of the next model afterwards.
+     *
+     * @param measure
+     *            the measure
+     * @param questionAnswerProblem
+     *            the prepared problem
+     * @return whether the problem is scored by {@link #score()}, false if the measure has to be
+     *         applied itself
+     */
+    public boolean add(EmbeddingsSimilarityMeasure measure,
+            QuestionAnswerProblem questionAnswerProblem)
+    {
+        CentroidCache.Segment segment = measure.getBatchSegment();
+        if (segment == null) {
+            return false;
+        }
+        QuestionAnswerPair pair1 = questionAnswerProblem.getPair1();
+        QuestionAnswerPair pair2 = questionAnswerProblem.getPair2();
+        entries.add(new Entry(measure, pair1, pair2, getRow(getCentroid(pair1, segment)),
+                getRow(pair1.getAnswerCentroid()), getRow(getCentroid(pair2, segment)),
+                getRow(pair2.getAnswerCentroid())));
+        return true;
+    }
+
+    /**
+     * Computes the collected similarities and sets them on the QuestionAnswerPairs. The collected
+     * problems are cleared.
+     *
+     * @return the number of scored problems
+     */
+    public int score()
+    {
+        int problems = entries.size();
+        int[] leftRows = new int[problems * 2];
+        int[] rightRows = new int[problems * 2];
+        int pairs = 0;
+        for (Entry entry : entries) {
+            pairs = addPair(entry.left1, entry.right1, leftRows, rightRows, pairs);
+            pairs = addPair(entry.left2, entry.right2, leftRows, rightRows, pairs);
+        }
+        double[] products = pairs > 0
+                ? kernels.dotRows(matrix, dimensions, Arrays.copyOf(leftRows, pairs),
+                        Arrays.copyOf(rightRows, pairs))
+                : new double[0];
+
+        int pair = 0;
+        for (Entry entry : entries) {
+            double value1 = 0;
+            if (entry.left1 >= 0 && entry.right1 >= 0) {
+                value1 = products[pair++];
+            }
+            double value2 = 0;
+            if (entry.left2 >= 0 && entry.right2 >= 0) {
+                value2 = products[pair++];
+            }
+            entry.measure.setSemanticRelatedness(entry.measure.getMeasureMethodName(), entry.pair1,
+                    entry.pair2, value1, value2);
+        }
+        clear();
+        return problems;
+    }
+
+    /**
+     * Drops the collected problems and centroids.
+     */
+    public void clear()
+    {
+        entries.clear();
+        rows.clear();
+        matrix = null;
+        dimensions = -1;
+    }
+
+    /**
+     * Adds a pair of rows to compute, unless a segment has no embeddings; its similarity is 0.
+     */
+    private static int addPair(int left, int right, int[] leftRows, int[] rightRows, int pairs)
+    {
+        if (left < 0 || right < 0) {
+            return pairs;
+        }
+        leftRows[pairs] = left;
+        rightRows[pairs] = right;
+        return pairs + 1;
+    }
+
+    private static float[] getCentroid(QuestionAnswerPair pair, CentroidCache.Segment segment)
+    {
+        switch (segment) {
+        case INSTANCE:
+            return pair.getInstanceCentroid();
+        case QUESTION:
+            return pair.getQuestionCentroid();
+        default:
+            return pair.getAnswerCentroid();
+        }
+    }
+
+    /**
+     * Gets the row of a centroid, appending it to the matrix if it has none yet.
+     *
+     * @return the row, or -1 if the segment has no embeddings
+     */
+    private int getRow(float[] centroid)
+    {
+        if (centroid == null) {
+            return -1;
+        }
+        Integer row = rows.get(centroid);
+        if (row != null) {
+            return row;
+        }
+        if (dimensions < 0) {
+            dimensions = centroid.length;
+            matrix = new float[INITIAL_ROWS * dimensions];
+        }
+        else if (centroid.length != dimensions) {
+            throw new IllegalArgumentException("Centroid of " + centroid.length
+                    + " dimensions in a batch of " + dimensions + " dimensions.");
+        }
+        row = rows.size();
+        if ((row + 1) * dimensions > matrix.length) {
+            matrix = Arrays.copyOf(matrix, matrix.length * 2);
+        }
+        System.arraycopy(centroid, 0, matrix, row * dimensions, dimensions);
+        rows.put(centroid, row);
+        return row;
+    }
+
+    private static class Entry
+    {
+        private final EmbeddingsSimilarityMeasure measure;
+        private final QuestionAnswerPair pair1;
+        private final QuestionAnswerPair pair2;
+        private final int left1;
+        private final int right1;
+        private final int left2;
+        private final int right2;
+
+        private Entry(EmbeddingsSimilarityMeasure measure, QuestionAnswerPair pair1,
+                QuestionAnswerPair pair2, int left1, int right1, int left2, int right2)
+        {
+            this.measure = measure;
+            this.pair1 = pair1;
+            this.pair2 = pair2;
+            this.left1 = left1;
+            this.right1 = right1;
+            this.left2 = left2;
+            this.right2 = right2;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.unidue.haring.similarity.experiments.customAnnotators.MemoCache;
+
+/**
+ * Caches the averaged embeddings of text segments, normalized to unit length, so the cosine
+ * similarity of two segments is their dot product.
+ * <p>
+ * Centroids are keyed by the kind of segment, the embeddings model and the segment text. All
+ * questions on an instance share its text, so the centroid of an instance is computed once for
+ * all its questions and answers, and the measures of a run only read the centroids set on the
+ * QuestionAnswerPairs, see {@link SimilarityMeasure#setCentroidCache(CentroidCache)}. The
+ * arithmetic is done by the {@link VectorKernels} selected for the process.
+ */
+public class CentroidCache
+{
+    /**
+     * The kinds of text segments of a QuestionAnswerProblem.
+     */
+    public enum Segment
+    {
+        INSTANCE, QUESTION, ANSWER
+    }
+
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    // Cached for segments without embeddings, as the cache does not hold null values
+    private static final float[] NO_CENTROID = new float[0];
+
+    private static final VectorKernels KERNELS = VectorKernels.get();
+
+    private final MemoCache<Key, float[]> centroids;
+
+    public CentroidCache()
+    {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxSize
+     *            the maximum number of cached centroids
+     */
+    public CentroidCache(int maxSize)
+    {
+        centroids = new MemoCache<Key, float[]>(maxSize);
+    }
+
+    /**
+     * Gets the normalized centroid of a segment, computing it on the first request.
+     *
+     * @param segment
+     *            the kind of segment
+     * @param text
+     *            the text of the segment
+     * @param embeddingsModelId
+     *            the embeddings model, may be null if a single model is used
+     * @param embeddings
+     *            the embeddings of the tokens of the segment
+     * @return the centroid, or null if the segment has no embeddings
+     */
+    public float[] getCentroid(Segment segment, String text, String embeddingsModelId,
+            List<float[]> embeddings)
+    {
+        Key key = new Key(segment, embeddingsModelId, text);
+        float[] centroid = centroids.get(key);
+        if (centroid == null) {
+            centroid = computeNormalizedCentroid(embeddings);
+            centroids.put(key, centroid != null ? centroid : NO_CENTROID);
+            return centroid;
+        }
+        return centroid != NO_CENTROID ? centroid : null;
+    }
+
+    /**
+     * Computes the average of the given embeddings, normalized to unit length. The centroid of a
+     * segment whose embeddings add up to zero is NaN, like the cosine similarity of a zero vector.
+     *
+     * @param embeddings
+     *            the embeddings
+     * @return the centroid, or null if the list is empty
+     */
+    public static float[] computeNormalizedCentroid(List<float[]> embeddings)
+    {
+        if (embeddings.isEmpty()) {
+            return null;
+        }
+        // The mean has the direction of the sum
+        float[] centroid = KERNELS.sum(embeddings);
+        double norm = KERNELS.norm(centroid);
+        if (norm == 0) {
+            Arrays.fill(centroid, Float.NaN);
+            return centroid;
+        }
+        float scale = (float) (1 / norm);
+        for (int i = 0; i < centroid.length; i++) {
+            centroid[i] *= scale;
+        }
+        return centroid;
+    }
+
+    /**
+     * Computes the cosine similarity of two normalized centroids.
+     *
+     * @return the similarity, 0 if a segment has no embeddings
+     */
+    public static double cosineSimilarity(float[] centroid1, float[] centroid2)
+    {
+        if (centroid1 == null || centroid2 == null) {
+            return 0;
+        }
+        return KERNELS.dot(centroid1, centroid2);
+    }
+
+    @Override
+    public String toString()
+    {
+        return centroids.toString();
+    }
+
+    private static class Key
+    {
+        private final Segment segment;
+        private final String embeddingsModelId;
+        private final String text;
+        private final int hash;
+
+        private Key(Segment segment, String embeddingsModelId, String text)
+        {
+            this.segment = segment;
+            this.embeddingsModelId = embeddingsModelId;
+            this.text = text;
+            hash = (segment.ordinal() * 31
+                    + (embeddingsModelId != null ? embeddingsModelId.hashCode() : 0)) * 31
+                    + text.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && segment == other.segment
+                    && (embeddingsModelId == null ? other.embeddingsModelId == null
+                            : embeddingsModelId.equals(other.embeddingsModelId))
+                    && text.equals(other.text);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.unidue.haring.similarity.experiments.measures;
 
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.uima.cas.CAS;
 
@@ -11,6 +12,7 @@ public class ConceptualJWeb1TMeasure
     extends JWeb1TMeasure
 {
     private static final String MEASURE_METHOD_NAME = "ConceptualJWeb1TMeasure";
+    private QuestionAnswerProblem questionAnswerProblem;
     private QuestionAnswerPair questionAnswerPair1;
     private QuestionAnswerPair questionAnswerPair2;
     
@@ -24,12 +26,10 @@ public class ConceptualJWeb1TMeasure
     public QuestionAnswerProblem measureSimilarity(CAS aCAS,
             QuestionAnswerProblem questionAnswerProblem)
     {
+        this.questionAnswerProblem = questionAnswerProblem;
         questionAnswerPair1 = questionAnswerProblem.getPair1();
         questionAnswerPair2 = questionAnswerProblem.getPair2();
 
-        if (web1t == null) {
-            initJWeb1T();
-        }
         questionText = questionAnswerProblem.getQuestionText().toLowerCase();
 
         if (questionText.startsWith("when")) {
@@ -64,31 +64,27 @@ public class ConceptualJWeb1TMeasure
 
     private void useInstanzeToAnswerPrediction()
     {
-        double cosineSimPair1 = computeCosineSimilarity(
-                questionAnswerPair1.getInstanceLemmasEmbeddingAnnotationsList(),
-                questionAnswerPair1.getAnswerLemmasEmbeddingAnnotationsList());
-        double cosineSimPair2 = computeCosineSimilarity(
-                questionAnswerPair2.getInstanceLemmasEmbeddingAnnotationsList(),
-                questionAnswerPair2.getAnswerLemmasEmbeddingAnnotationsList());
+        double[] cosineSims = getFeature(INSTANCE_ANSWER_COSINES, questionAnswerProblem);
 
         setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1, questionAnswerPair2,
-                cosineSimPair1, cosineSimPair2);
+                cosineSims[0], cosineSims[1]);
     }
 
     private void useSimpleWeb1TPrediction()
     {
-        try {
-            double a1Freq = sumLemmataFrequency(questionAnswerPair1.getAnswerLemmas());
-            double a2Freq = sumLemmataFrequency(questionAnswerPair2.getAnswerLemmas());
-
+        double[] frequencies = getFeature(ANSWER_LOG_FREQUENCIES, questionAnswerProblem);
+        if (frequencies != null) {
             setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1, questionAnswerPair2,
-                    a1Freq, a2Freq);
-        }
-        catch (IOException e) {
-            e.printStackTrace();
+                    frequencies[0], frequencies[1]);
         }
     }
 
+    @Override
+    public List<Feature<?>> getFeatures()
+    {
+        return Arrays.<Feature<?>> asList(ANSWER_LOG_FREQUENCIES, INSTANCE_ANSWER_COSINES);
+    }
+
     @Override
     public String getMeasureMethodName()
     {
@@ -1,56 +1,80 @@
 package de.unidue.haring.similarity.experiments.measures;
 
-import java.util.List;
-
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
-import org.nd4j.linalg.ops.transforms.Transforms;
-
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
 
 public class EmbeddingsSimilarityMeasure
     extends SimilarityMeasure
 {
+    // The vector arithmetic of the measures, selected for the process
+    protected static final VectorKernels VECTOR_KERNELS = VectorKernels.get();
+
+    // The centroids of a segment of both QuestionAnswerPairs, see CentroidCache
+    public static final Feature<float[][]> INSTANCE_CENTROIDS = new Feature<float[][]>(
+            "InstanceCentroids", true,
+            (problem, modelId) -> getCentroids(problem, CentroidCache.Segment.INSTANCE));
+    public static final Feature<float[][]> QUESTION_CENTROIDS = new Feature<float[][]>(
+            "QuestionCentroids", true,
+            (problem, modelId) -> getCentroids(problem, CentroidCache.Segment.QUESTION));
+    public static final Feature<float[][]> ANSWER_CENTROIDS = new Feature<float[][]>(
+            "AnswerCentroids", true,
+            (problem, modelId) -> getCentroids(problem, CentroidCache.Segment.ANSWER));
+
+    // The cosine similarities of a segment with the answer of both QuestionAnswerPairs
+    public static final Feature<double[]> INSTANCE_ANSWER_COSINES = new Feature<double[]>(
+            "InstanceAnswerCosines", true,
+            (problem, modelId) -> getCosineSimilarities(
+                    INSTANCE_CENTROIDS.get(problem, modelId),
+                    ANSWER_CENTROIDS.get(problem, modelId)),
+            INSTANCE_CENTROIDS, ANSWER_CENTROIDS);
+    public static final Feature<double[]> QUESTION_ANSWER_COSINES = new Feature<double[]>(
+            "QuestionAnswerCosines", true,
+            (problem, modelId) -> getCosineSimilarities(
+                    QUESTION_CENTROIDS.get(problem, modelId),
+                    ANSWER_CENTROIDS.get(problem, modelId)),
+            QUESTION_CENTROIDS, ANSWER_CENTROIDS);
+
     public EmbeddingsSimilarityMeasure()
     {
         super();
     }
 
-    /**
-     * Computes the cosine similarity of given vector lists.
-     * 
-     * @param pair the QuestionAnswerPair
-     * @return the cosine similarity value
-     */
-    protected double computeCosineSimilarity(List<float[]> listVector1, List<float[]> listVector2)
+    @Override
+    public boolean usesEmbeddings()
     {
-        if (listVector1.size() < 1 || listVector2.size() < 1) {
-            return 0.f;
-        }
-        INDArray averageVector1 = computeVectorAverage(listVector1);
-        INDArray averageVector2 = computeVectorAverage(listVector2);
-
-        double similarity = Transforms.cosineSim(averageVector1, averageVector2);
-
-        return similarity;
+        return true;
     }
 
     /**
-     * Computes the average of a given vector list. Precondition: the list contains more than one
-     * element.
+     * Gets the segment this measure compares with the answer by the cosine similarity of their
+     * centroids, if that is all the measure does. Such measures can be scored for all problems at
+     * once by a {@link BatchCosineScorer}.
      * 
-     * @param embeddingsList list containing word embeddings of a given sentence
-     * @return the average vector
+     * @return the segment, or null if the measure has to be applied to each problem
      */
-    private INDArray computeVectorAverage(List<float[]> embeddingsList)
+    public CentroidCache.Segment getBatchSegment()
     {
-        INDArray sum = Nd4j.zeros(embeddingsList.get(0).length);
+        return null;
+    }
 
-        for (float[] vec : embeddingsList) {
-            INDArray nd = Nd4j.create(vec);
-            sum = sum.add(nd);
+    private static float[][] getCentroids(QuestionAnswerProblem questionAnswerProblem,
+            CentroidCache.Segment segment)
+    {
+        QuestionAnswerPair pair1 = questionAnswerProblem.getPair1();
+        QuestionAnswerPair pair2 = questionAnswerProblem.getPair2();
+        switch (segment) {
+        case INSTANCE:
+            return new float[][] { pair1.getInstanceCentroid(), pair2.getInstanceCentroid() };
+        case QUESTION:
+            return new float[][] { pair1.getQuestionCentroid(), pair2.getQuestionCentroid() };
+        default:
+            return new float[][] { pair1.getAnswerCentroid(), pair2.getAnswerCentroid() };
         }
-        sum = sum.div(embeddingsList.size());
-        return sum;
+    }
+
+    private static double[] getCosineSimilarities(float[][] centroids, float[][] answerCentroids)
+    {
+        return new double[] { CentroidCache.cosineSimilarity(centroids[0], answerCentroids[0]),
+                CentroidCache.cosineSimilarity(centroids[1], answerCentroids[1]) };
     }
 }
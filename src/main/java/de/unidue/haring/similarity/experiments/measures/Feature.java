@@ -0,0 +1,137 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
+
+/**
+ * A named value computed from a QuestionAnswerProblem that several measures are based on, e.g.
+ * the cosine similarities of the instance and the answers. Measures declare the features they read
+ * with {@link SimilarityMeasure#getFeatures()}, and a {@link FeatureScheduler} computes each of
+ * them once per problem before the measures are applied.
+ * <p>
+ * The values are stored on the problem. Features reading the embeddings or centroids of the pairs
+ * are model dependent and stored per embeddings model. They have to be computed while the pairs
+ * hold the embeddings of the model, which the scheduler does; afterwards the values can be read
+ * on any thread, e.g. by measures applied after the problem has been processed. Deferrable
+ * features only read the values of their dependencies, so they can be computed after the problem
+ * has been processed as well, see {@link FeatureScheduler#computeDeferredFeatures}.
+ *
+ * @param <T>
+ *            the type of the value
+ */
+public class Feature<T>
+{
+    private final String name;
+    private final boolean modelDependent;
+    private final boolean deferrable;
+    private final BiFunction<QuestionAnswerProblem, String, T> computation;
+    private final List<Feature<?>> dependencies;
+
+    /**
+     * @param name
+     *            the name of the feature, unique among all features
+     * @param modelDependent
+     *            whether the value depends on the embeddings model
+     * @param computation
+     *            computes the value from the problem and the embeddings model id, may return null
+     *            if it cannot be computed
+     * @param dependencies
+     *            the features the computation reads with
+     *            {@link #get(QuestionAnswerProblem, String)}
+     */
+    public Feature(String name, boolean modelDependent,
+            BiFunction<QuestionAnswerProblem, String, T> computation, Feature<?>... dependencies)
+    {
+        this(name, modelDependent, false, computation, dependencies);
+    }
+
+    /**
+     * @param name
+     *            the name of the feature, unique among all features
+     * @param modelDependent
+     *            whether the value depends on the embeddings model
+     * @param deferrable
+     *            whether the computation only reads the values of the dependencies, but neither
+     *            the annotations of the CAS nor the embeddings set on the pairs
+     * @param computation
+     *            computes the value from the problem and the embeddings model id, may return null
+     *            if it cannot be computed
+     * @param dependencies
+     *            the features the computation reads with
+     *            {@link #get(QuestionAnswerProblem, String)}
+     */
+    public Feature(String name, boolean modelDependent, boolean deferrable,
+            BiFunction<QuestionAnswerProblem, String, T> computation, Feature<?>... dependencies)
+    {
+        this.name = name;
+        this.modelDependent = modelDependent;
+        this.deferrable = deferrable;
+        this.computation = computation;
+        this.dependencies = Collections.unmodifiableList(Arrays.asList(dependencies));
+    }
+
+    /**
+     * Gets the value of the feature for a problem, computing it on the first request.
+     *
+     * @param questionAnswerProblem
+     *            the prepared problem
+     * @param embeddingsModelId
+     *            the embeddings model, may be null if a single model is used
+     * @return the value, null if it cannot be computed
+     */
+    @SuppressWarnings("unchecked")
+    public T get(QuestionAnswerProblem questionAnswerProblem, String embeddingsModelId)
+    {
+        String key = getKey(embeddingsModelId);
+        if (questionAnswerProblem.hasFeatureValue(key)) {
+            return (T) questionAnswerProblem.getFeatureValue(key);
+        }
+        T value = computation.apply(questionAnswerProblem, embeddingsModelId);
+        questionAnswerProblem.setFeatureValue(key, value);
+        return value;
+    }
+
+    /**
+     * Gets the key the value is stored under on a problem, the name qualified by the embeddings
+     * model if the feature is model dependent.
+     */
+    private String getKey(String embeddingsModelId)
+    {
+        return modelDependent ? SimilarityMeasure.getRelatednessName(name, embeddingsModelId)
+                : name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isModelDependent()
+    {
+        return modelDependent;
+    }
+
+    /**
+     * Whether the value can be computed after the problem has been processed, on another thread,
+     * see {@link SimilarityMeasure#isDeferrable()}.
+     */
+    public boolean isDeferrable()
+    {
+        return deferrable;
+    }
+
+    public List<Feature<?>> getDependencies()
+    {
+        return dependencies;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
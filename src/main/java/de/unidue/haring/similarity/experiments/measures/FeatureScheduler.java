@@ -0,0 +1,187 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
+import de.unidue.haring.similarity.experiments.utils.StageTimings;
+
+/**
+ * Computes the features of a set of measures once per problem, see {@link Feature}.
+ * <p>
+ * The features declared by the measures and the features they depend on form a directed acyclic
+ * graph. The scheduler orders it once, so each feature is computed after its dependencies, and
+ * features declared by several measures are computed only once. The measures then only combine
+ * the computed values.
+ * <p>
+ * If some of the measures are deferred, see {@link SimilarityMeasure#isDeferrable()}, the
+ * deferrable features that only they read are left out of {@link #computeFeatures} and computed
+ * with the measures by {@link #computeDeferredFeatures}, e.g. the Web1T frequencies.
+ */
+public class FeatureScheduler
+{
+    // Prefixes the name of a feature to name its stage in the StageTimings
+    public static final String FEATURE_STAGE_PREFIX = "feature/";
+
+    private final List<Feature<?>> features;
+    private final List<Feature<?>> deferredFeatures;
+
+    /**
+     * @param similarityMeasures
+     *            the measures applied to each problem
+     * @throws IllegalArgumentException
+     *             if the features depend on each other in a cycle, or two features have the same
+     *             name
+     */
+    public FeatureScheduler(Collection<? extends SimilarityMeasure> similarityMeasures)
+    {
+        this(similarityMeasures, Collections.<SimilarityMeasure> emptyList());
+    }
+
+    /**
+     * @param similarityMeasures
+     *            the measures applied to each problem
+     * @param deferredMeasures
+     *            those of the measures which are applied after the problem has been processed
+     * @throws IllegalArgumentException
+     *             if the features depend on each other in a cycle, or two features have the same
+     *             name
+     */
+    public FeatureScheduler(Collection<? extends SimilarityMeasure> similarityMeasures,
+            Collection<? extends SimilarityMeasure> deferredMeasures)
+    {
+        List<Feature<?>> ordered = new ArrayList<Feature<?>>();
+        Map<String, Feature<?>> visited = new HashMap<String, Feature<?>>();
+        for (SimilarityMeasure similarityMeasure : similarityMeasures) {
+            for (Feature<?> feature : similarityMeasure.getFeatures()) {
+                visit(feature, visited, new ArrayList<Feature<?>>(), ordered);
+            }
+        }
+
+        // Features are deferred unless a measure applied with the problem, or a feature which is
+        // not deferrable, depends on them
+        Set<Feature<?>> immediate = Collections
+                .newSetFromMap(new IdentityHashMap<Feature<?>, Boolean>());
+        for (SimilarityMeasure similarityMeasure : similarityMeasures) {
+            if (!deferredMeasures.contains(similarityMeasure)) {
+                for (Feature<?> feature : similarityMeasure.getFeatures()) {
+                    addWithDependencies(feature, immediate);
+                }
+            }
+        }
+        for (Feature<?> feature : ordered) {
+            if (!feature.isDeferrable()) {
+                addWithDependencies(feature, immediate);
+            }
+        }
+        List<Feature<?>> immediateOrdered = new ArrayList<Feature<?>>();
+        List<Feature<?>> deferredOrdered = new ArrayList<Feature<?>>();
+        for (Feature<?> feature : ordered) {
+            (immediate.contains(feature) ? immediateOrdered : deferredOrdered).add(feature);
+        }
+        features = Collections.unmodifiableList(immediateOrdered);
+        deferredFeatures = Collections.unmodifiableList(deferredOrdered);
+    }
+
+    private static void addWithDependencies(Feature<?> feature, Set<Feature<?>> features)
+    {
+        if (features.add(feature)) {
+            for (Feature<?> dependency : feature.getDependencies()) {
+                addWithDependencies(dependency, features);
+            }
+        }
+    }
+
+    /**
+     * Adds a feature after its dependencies, depth first.
+     *
+     * @param path
+     *            the features depending on the feature, to detect cycles
+     */
+    private static void visit(Feature<?> feature, Map<String, Feature<?>> visited,
+            List<Feature<?>> path, List<Feature<?>> ordered)
+    {
+        if (path.contains(feature)) {
+            throw new IllegalArgumentException("Cyclic feature dependency: " + path);
+        }
+        Feature<?> known = visited.get(feature.getName());
+        if (known != null) {
+            if (known != feature) {
+                throw new IllegalArgumentException("Duplicate feature name: " + feature);
+            }
+            return;
+        }
+        path.add(feature);
+        for (Feature<?> dependency : feature.getDependencies()) {
+            visit(dependency, visited, path, ordered);
+        }
+        path.remove(path.size() - 1);
+        visited.put(feature.getName(), feature);
+        ordered.add(feature);
+    }
+
+    /**
+     * Computes the features of the measures for a problem, except the deferred ones, and records
+     * the latency of each under {@value #FEATURE_STAGE_PREFIX} and its name, see
+     * {@link StageTimings}. Features already computed for the problem and the embeddings model are
+     * not computed again.
+     *
+     * @param questionAnswerProblem
+     *            the problem, prepared with the embeddings of the model
+     * @param embeddingsModelId
+     *            the embeddings model, may be null if a single model is used
+     */
+    public void computeFeatures(QuestionAnswerProblem questionAnswerProblem,
+            String embeddingsModelId)
+    {
+        computeFeatures(features, questionAnswerProblem, embeddingsModelId);
+    }
+
+    /**
+     * Computes the deferred features for a problem after {@link #computeFeatures}, on any thread.
+     *
+     * @param questionAnswerProblem
+     *            the problem
+     * @param embeddingsModelId
+     *            the embeddings model, may be null if a single model is used
+     */
+    public void computeDeferredFeatures(QuestionAnswerProblem questionAnswerProblem,
+            String embeddingsModelId)
+    {
+        computeFeatures(deferredFeatures, questionAnswerProblem, embeddingsModelId);
+    }
+
+    private static void computeFeatures(List<Feature<?>> features,
+            QuestionAnswerProblem questionAnswerProblem, String embeddingsModelId)
+    {
+        for (Feature<?> feature : features) {
+            long start = System.nanoTime();
+            feature.get(questionAnswerProblem, embeddingsModelId);
+            StageTimings.record(FEATURE_STAGE_PREFIX + feature.getName(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the features computed with the problem, in the order they are computed.
+     */
+    public List<Feature<?>> getFeatures()
+    {
+        return features;
+    }
+
+    /**
+     * Gets the features computed after the problem has been processed, in the order they are
+     * computed.
+     */
+    public List<Feature<?>> getDeferredFeatures()
+    {
+        return deferredFeatures;
+    }
+}
@@ -1,6 +1,7 @@
 package de.unidue.haring.similarity.experiments.measures;
 
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.uima.cas.CAS;
 
@@ -25,38 +26,32 @@ public class HighDifferenceJWeb1TMeasure
         QuestionAnswerPair questionAnswerPair1 = questionAnswerProblem.getPair1();
         QuestionAnswerPair questionAnswerPair2 = questionAnswerProblem.getPair2();
 
-        try {
-            if (web1t == null) {
-                initJWeb1T();
-            }
-            double a1Freq = sumLemmataFrequency(questionAnswerPair1.getAnswerLemmas());
-            double a2Freq = sumLemmataFrequency(questionAnswerPair2.getAnswerLemmas());
-
-            // If the difference in frequencies exceeds a certain value, the more likely sentence is
-            // selected as the answer prediction. Otherwise compute the cosine similarity between
-            // averaged instance embeddings and averaged answer embeddings.
-            if (Math.abs(a1Freq - a2Freq) > THRESHOLD) {
-                setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1,
-                        questionAnswerPair2, a1Freq, a2Freq);
-            }
-            else {
-                double cosineSimPair1 = computeCosineSimilarity(
-                        questionAnswerPair1.getInstanceLemmasEmbeddingAnnotationsList(),
-                        questionAnswerPair1.getAnswerLemmasEmbeddingAnnotationsList());
-                double cosineSimPair2 = computeCosineSimilarity(
-                        questionAnswerPair2.getInstanceLemmasEmbeddingAnnotationsList(),
-                        questionAnswerPair2.getAnswerLemmasEmbeddingAnnotationsList());
+        double[] frequencies = getFeature(ANSWER_LOG_FREQUENCIES, questionAnswerProblem);
+        if (frequencies == null) {
+            return questionAnswerProblem;
+        }
 
-                setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1,
-                        questionAnswerPair2, cosineSimPair1, cosineSimPair2);
-            }
+        // If the difference in frequencies exceeds a certain value, the more likely sentence is
+        // selected as the answer prediction. Otherwise use the cosine similarity between
+        // averaged instance embeddings and averaged answer embeddings.
+        if (Math.abs(frequencies[0] - frequencies[1]) > THRESHOLD) {
+            setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1, questionAnswerPair2,
+                    frequencies[0], frequencies[1]);
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        else {
+            double[] cosineSims = getFeature(INSTANCE_ANSWER_COSINES, questionAnswerProblem);
+            setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1, questionAnswerPair2,
+                    cosineSims[0], cosineSims[1]);
         }
         return questionAnswerProblem;
     }
 
+    @Override
+    public List<Feature<?>> getFeatures()
+    {
+        return Arrays.<Feature<?>> asList(ANSWER_LOG_FREQUENCIES, INSTANCE_ANSWER_COSINES);
+    }
+
     @Override
     public String getMeasureMethodName()
     {
@@ -1,5 +1,8 @@
 package de.unidue.haring.similarity.experiments.measures;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.uima.cas.CAS;
 
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
@@ -22,18 +25,31 @@ public class InstanceToAnswerSimilarityMeasure
         QuestionAnswerPair questionAnswerPair1 = questionAnswerProblem.getPair1();
         QuestionAnswerPair questionAnswerPair2 = questionAnswerProblem.getPair2();
 
-        double cosineSimPair1 = computeCosineSimilarity(
-                questionAnswerPair1.getInstanceLemmasEmbeddingAnnotationsList(),
-                questionAnswerPair1.getAnswerLemmasEmbeddingAnnotationsList());
-        double cosineSimPair2 = computeCosineSimilarity(
-                questionAnswerPair2.getInstanceLemmasEmbeddingAnnotationsList(),
-                questionAnswerPair2.getAnswerLemmasEmbeddingAnnotationsList());
+        double[] cosineSims = getFeature(INSTANCE_ANSWER_COSINES, questionAnswerProblem);
 
         setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1, questionAnswerPair2,
-                cosineSimPair1, cosineSimPair2);
+                cosineSims[0], cosineSims[1]);
         return questionAnswerProblem;
     }
 
+    @Override
+    public List<Feature<?>> getFeatures()
+    {
+        return Collections.<Feature<?>> singletonList(INSTANCE_ANSWER_COSINES);
+    }
+
+    @Override
+    public boolean isDeferrable()
+    {
+        return true;
+    }
+
+    @Override
+    public CentroidCache.Segment getBatchSegment()
+    {
+        return CentroidCache.Segment.INSTANCE;
+    }
+
     @Override
     public String getMeasureMethodName()
     {
@@ -2,6 +2,8 @@ package de.unidue.haring.similarity.experiments.measures;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.googlecode.jweb1t.JWeb1TAggregator;
 import com.googlecode.jweb1t.JWeb1TSearcher;
@@ -13,46 +15,105 @@ public class JWeb1TMeasure
 {
     private static final String DATA_DIR = "src/test/resources/Web1t/";
     private static final String INDEX_FILE_1 = "src/test/resources/Web1t/index-1gms";
-    protected static JWeb1TSearcher web1t;
+    // Set once by initJWeb1T; the searcher is not thread-safe, so lookups hold its lock
+    protected static volatile JWeb1TSearcher web1t;
     private static JWeb1TAggregator aggregator;
 
-    private static long normalization;
+    private static volatile long normalization;
+
+    // The frequencies looked up so far, shared by all measures and threads
+    private static final ConcurrentMap<String, Long> FREQUENCIES =
+            new ConcurrentHashMap<String, Long>();
     private static final boolean NORMALIZE_FREQUENCY = true;
 
+    // The texts of the answer lemmas of both QuestionAnswerPairs, read from the CAS
+    public static final Feature<String[][]> ANSWER_LEMMAS = new Feature<String[][]>(
+            "AnswerLemmas", false,
+            (problem, modelId) -> new String[][] { getTexts(problem.getPair1().getAnswerLemmas()),
+                    getTexts(problem.getPair2().getAnswerLemmas()) });
+    // The summed frequencies of the answer lemmas of both QuestionAnswerPairs, see
+    // sumLemmataFrequency. Deferrable, so the slow lookups can run after the problem has been
+    // processed.
+    public static final Feature<double[]> ANSWER_LOG_FREQUENCIES = new Feature<double[]>(
+            "AnswerLogFrequencies", false, true,
+            (problem, modelId) -> getAnswerLogFrequencies(ANSWER_LEMMAS.get(problem, modelId)),
+            ANSWER_LEMMAS);
+
     public JWeb1TMeasure()
     {
         super();
     }
 
-    protected void initJWeb1T()
+    /**
+     * The Web1T measures only read their features and the question text.
+     */
+    @Override
+    public boolean isDeferrable()
+    {
+        return true;
+    }
+
+    /**
+     * Opens the Web1T index, unless another measure or thread has already done so.
+     */
+    protected static synchronized void initJWeb1T()
     {
+        if (web1t != null) {
+            return;
+        }
         try {
-            web1t = new JWeb1TSearcher(INDEX_FILE_1);
+            JWeb1TSearcher searcher = new JWeb1TSearcher(INDEX_FILE_1);
 
             aggregator = new JWeb1TAggregator(DATA_DIR, 1);
             aggregator.create();
+
+            // Only using unigrams
+            normalization = searcher.getNrOfNgrams(1);
+            web1t = searcher;
         }
         catch (IOException e) {
             e.printStackTrace();
         }
-        // Only using unigrams
-        normalization = web1t.getNrOfNgrams(1);
+    }
+
+    /**
+     * Gets the frequency of a word, looking it up in the Web1T index on the first request.
+     */
+    private static long getFrequency(String word) throws IOException
+    {
+        Long frequency = FREQUENCIES.get(word);
+        if (frequency == null) {
+            synchronized (web1t) {
+                frequency = web1t.getFrequency(word);
+            }
+            FREQUENCIES.put(word, frequency);
+        }
+        return frequency;
+    }
+
+    private static String[] getTexts(List<Lemma> lemmata)
+    {
+        String[] texts = new String[lemmata.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = lemmata.get(i).getCoveredText();
+        }
+        return texts;
     }
 
     /**
      * Summarizes over the frequencies of the respective lemmas. Normalizes the values, if desired.
      * 
-     * @param lemmata list containing all answer lemmata
+     * @param lemmata the texts of all answer lemmata
      * @return the (normalized) frequency
      * @throws IOException
      */
-    protected double sumLemmataFrequency(List<Lemma> lemmata) throws IOException
+    protected static double sumLemmataFrequency(String[] lemmata) throws IOException
     {
         double aFreq = 0.0;
         int weighting = 1;
 
-        for (Lemma l : lemmata) {
-            long frequency = web1t.getFrequency(l.getCoveredText());
+        for (String lemma : lemmata) {
+            long frequency = getFrequency(lemma);
             if (NORMALIZE_FREQUENCY) {
                 if (frequency > 0) {
                     double logCount = Math.log(weighting * ((double) frequency) / normalization);
@@ -73,4 +134,29 @@ public class JWeb1TMeasure
             return aFreq;
         }
     }
+
+    /**
+     * Gets the summed frequencies of the answer lemmas of both QuestionAnswerPairs.
+     * 
+     * @param answerLemmas
+     *            the answer lemmas of both pairs, see {@link #ANSWER_LEMMAS}
+     * @return the frequencies, or null if the Web1T index cannot be read
+     */
+    private static double[] getAnswerLogFrequencies(String[][] answerLemmas)
+    {
+        try {
+            if (web1t == null) {
+                initJWeb1T();
+                if (web1t == null) {
+                    return null;
+                }
+            }
+            return new double[] { sumLemmataFrequency(answerLemmas[0]),
+                    sumLemmataFrequency(answerLemmas[1]) };
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 }
@@ -0,0 +1,199 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vector kernels in plain Java, working directly on the float arrays without allocating anything
+ * but the results.
+ * <p>
+ * The element-wise loops are simple enough for the JIT compiler to translate them into SIMD
+ * instructions. The reductions keep four independent partial sums, so consecutive additions do
+ * not wait for each other; the JIT does not vectorize float reductions itself, as that would
+ * change the order of the additions.
+ */
+public final class JavaVectorKernels
+    implements VectorKernels
+{
+    public static final String NAME = "java";
+
+    public static final JavaVectorKernels INSTANCE = new JavaVectorKernels();
+
+    private JavaVectorKernels()
+    {
+    }
+
+    @Override
+    public float[] sum(List<float[]> vectors)
+    {
+        float[] sum = vectors.get(0).clone();
+        for (int v = 1; v < vectors.size(); v++) {
+            float[] vector = vectors.get(v);
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += vector[i];
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public float[] mean(List<float[]> vectors)
+    {
+        float[] mean = sum(vectors);
+        float scale = 1f / vectors.size();
+        for (int i = 0; i < mean.length; i++) {
+            mean[i] *= scale;
+        }
+        return mean;
+    }
+
+    @Override
+    public double dot(float[] a, float[] b)
+    {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    @Override
+    public double dot(float[] a, int offsetA, float[] b, int offsetB, int length)
+    {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int end = length - 3; i < end; i += 4) {
+            s0 += a[offsetA + i] * b[offsetB + i];
+            s1 += a[offsetA + i + 1] * b[offsetB + i + 1];
+            s2 += a[offsetA + i + 2] * b[offsetB + i + 2];
+            s3 += a[offsetA + i + 3] * b[offsetB + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[offsetA + i] * b[offsetB + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double norm(float[] a)
+    {
+        return Math.sqrt(dot(a, 0, a, 0, a.length));
+    }
+
+    @Override
+    public double norm(float[] a, int offset, int length)
+    {
+        return Math.sqrt(dot(a, offset, a, offset, length));
+    }
+
+    @Override
+    public double cosine(float[] a, float[] b)
+    {
+        return cosine(a, 0, b, 0, a.length);
+    }
+
+    @Override
+    public double cosine(float[] a, int offsetA, float[] b, int offsetB, int length)
+    {
+        // One pass for the dot product and both norms
+        float d0 = 0;
+        float d1 = 0;
+        float a0 = 0;
+        float a1 = 0;
+        float b0 = 0;
+        float b1 = 0;
+        int i = 0;
+        for (int end = length - 1; i < end; i += 2) {
+            float x0 = a[offsetA + i];
+            float y0 = b[offsetB + i];
+            float x1 = a[offsetA + i + 1];
+            float y1 = b[offsetB + i + 1];
+            d0 += x0 * y0;
+            d1 += x1 * y1;
+            a0 += x0 * x0;
+            a1 += x1 * x1;
+            b0 += y0 * y0;
+            b1 += y1 * y1;
+        }
+        if (i < length) {
+            float x = a[offsetA + i];
+            float y = b[offsetB + i];
+            d0 += x * y;
+            a0 += x * x;
+            b0 += y * y;
+        }
+        return (d0 + d1) / Math.sqrt((double) (a0 + a1) * (b0 + b1));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The pairs are ordered by left row, and each left row is multiplied with two right rows at a
+     * time, so every element of the left row is loaded once per two products. The partial sums
+     * are those of {@link #dot(float[], int, float[], int, int)}, so the results are the same.
+     */
+    @Override
+    public double[] dotRows(float[] matrix, int dimensions, int[] leftRows, int[] rightRows)
+    {
+        int pairs = leftRows.length;
+        // The left row in the upper and the index of the pair in the lower half
+        long[] order = new long[pairs];
+        for (int p = 0; p < pairs; p++) {
+            order[p] = ((long) leftRows[p] << 32) | p;
+        }
+        Arrays.sort(order);
+
+        double[] results = new double[pairs];
+        int start = 0;
+        while (start < pairs) {
+            int left = (int) (order[start] >>> 32);
+            int end = start + 1;
+            while (end < pairs && (int) (order[end] >>> 32) == left) {
+                end++;
+            }
+            int offset = left * dimensions;
+            int p = start;
+            for (; p + 1 < end; p += 2) {
+                int pairA = (int) order[p];
+                int pairB = (int) order[p + 1];
+                int offsetA = rightRows[pairA] * dimensions;
+                int offsetB = rightRows[pairB] * dimensions;
+                float a0 = 0;
+                float a1 = 0;
+                float a2 = 0;
+                float a3 = 0;
+                float b0 = 0;
+                float b1 = 0;
+                float b2 = 0;
+                float b3 = 0;
+                int i = 0;
+                for (int last = dimensions - 3; i < last; i += 4) {
+                    float x0 = matrix[offset + i];
+                    float x1 = matrix[offset + i + 1];
+                    float x2 = matrix[offset + i + 2];
+                    float x3 = matrix[offset + i + 3];
+                    a0 += x0 * matrix[offsetA + i];
+                    a1 += x1 * matrix[offsetA + i + 1];
+                    a2 += x2 * matrix[offsetA + i + 2];
+                    a3 += x3 * matrix[offsetA + i + 3];
+                    b0 += x0 * matrix[offsetB + i];
+                    b1 += x1 * matrix[offsetB + i + 1];
+                    b2 += x2 * matrix[offsetB + i + 2];
+                    b3 += x3 * matrix[offsetB + i + 3];
+                }
+                for (; i < dimensions; i++) {
+                    a0 += matrix[offset + i] * matrix[offsetA + i];
+                    b0 += matrix[offset + i] * matrix[offsetB + i];
+                }
+                results[pairA] = (a0 + a1) + (a2 + a3);
+                results[pairB] = (b0 + b1) + (b2 + b3);
+            }
+            if (p < end) {
+                int pair = (int) order[p];
+                results[pair] = dot(matrix, offset, matrix, rightRows[pair] * dimensions,
+                        dimensions);
+            }
+            start = end;
+        }
+        return results;
+    }
+}
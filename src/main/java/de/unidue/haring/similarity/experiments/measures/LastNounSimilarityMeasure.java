@@ -1,15 +1,11 @@
 package de.unidue.haring.similarity.experiments.measures;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.uima.cas.CAS;
-import org.apache.uima.fit.util.JCasUtil;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
-import org.nd4j.linalg.ops.transforms.Transforms;
 
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
-import de.tudarmstadt.ukp.dkpro.core.mallet.type.WordEmbedding;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
 
@@ -17,6 +13,7 @@ public class LastNounSimilarityMeasure
     extends EmbeddingsSimilarityMeasure
 {
     private static final String MEASURE_METHOD_NAME = "LastNounSimilarityMeasure";
+    private static final int DEFAULT_DIMENSIONS = 300;
 
     public LastNounSimilarityMeasure()
     {
@@ -44,7 +41,7 @@ public class LastNounSimilarityMeasure
 
     /**
      * Computes the similarity between to given tokens from its embedding annotations. If a token is
-     * null, an array filled with ones will be used instead.
+     * null, an array filled with ones of the length of the other embedding will be used instead.
      * 
      * @param token1
      *            the first token
@@ -54,27 +51,24 @@ public class LastNounSimilarityMeasure
      */
     private double computeTokenSimilarity(Token token1, Token token2)
     {
-        INDArray annotationToken1;
-        INDArray annotationToken2;
+        float[] annotationToken1 = token1 != null ? getEmbedding(token1) : null;
+        float[] annotationToken2 = token2 != null ? getEmbedding(token2) : null;
 
-        if (token1 == null) {
-            annotationToken1 = Nd4j.ones(300);
-            // annotationToken1 = Nd4j.zeros(300);
+        if (annotationToken1 == null) {
+            annotationToken1 = ones(annotationToken2);
         }
-        else {
-            annotationToken1 = Nd4j.create(JCasUtil.selectCovered(WordEmbedding.class, token1)
-                    .get(0).getWordEmbedding().toArray());
-        }
-        if (token2 == null) {
-            annotationToken2 = Nd4j.ones(300);
-            // annotationToken2 = Nd4j.zeros(300);
-        }
-        else {
-            annotationToken2 = Nd4j.create(JCasUtil.selectCovered(WordEmbedding.class, token2)
-                    .get(0).getWordEmbedding().toArray());
+        if (annotationToken2 == null) {
+            annotationToken2 = ones(annotationToken1);
         }
 
-        return Transforms.cosineSim(annotationToken1, annotationToken2);
+        return VECTOR_KERNELS.cosine(annotationToken1, annotationToken2);
+    }
+
+    private static float[] ones(float[] other)
+    {
+        float[] ones = new float[other != null ? other.length : DEFAULT_DIMENSIONS];
+        Arrays.fill(ones, 1f);
+        return ones;
     }
 
     private Token getLastTokenOfSentence(List<Token> tokenList)
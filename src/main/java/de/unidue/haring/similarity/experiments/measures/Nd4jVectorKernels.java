@@ -0,0 +1,155 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Vector kernels on ND4J arrays, as the measures used them before {@link JavaVectorKernels}.
+ * Every call wraps its input in new ND4J arrays, rows are copied out of their matrix first.
+ */
+public final class Nd4jVectorKernels
+    implements VectorKernels
+{
+    public static final String NAME = "nd4j";
+
+    public static final Nd4jVectorKernels INSTANCE = new Nd4jVectorKernels();
+
+    // Left rows multiplied in one matrix product by dotRows
+    private static final int CHUNK_ROWS = 512;
+
+    private Nd4jVectorKernels()
+    {
+    }
+
+    @Override
+    public float[] sum(List<float[]> vectors)
+    {
+        return sumArray(vectors).data().asFloat();
+    }
+
+    @Override
+    public float[] mean(List<float[]> vectors)
+    {
+        return sumArray(vectors).divi(vectors.size()).data().asFloat();
+    }
+
+    private static INDArray sumArray(List<float[]> vectors)
+    {
+        INDArray sum = Nd4j.zeros(vectors.get(0).length);
+        for (float[] vector : vectors) {
+            sum.addi(Nd4j.create(vector));
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(float[] a, float[] b)
+    {
+        return Nd4j.getBlasWrapper().dot(Nd4j.create(a), Nd4j.create(b));
+    }
+
+    @Override
+    public double dot(float[] a, int offsetA, float[] b, int offsetB, int length)
+    {
+        return dot(row(a, offsetA, length), row(b, offsetB, length));
+    }
+
+    @Override
+    public double norm(float[] a)
+    {
+        return Nd4j.create(a).norm2Number().doubleValue();
+    }
+
+    @Override
+    public double norm(float[] a, int offset, int length)
+    {
+        return norm(row(a, offset, length));
+    }
+
+    @Override
+    public double cosine(float[] a, float[] b)
+    {
+        return Transforms.cosineSim(Nd4j.create(a), Nd4j.create(b));
+    }
+
+    @Override
+    public double cosine(float[] a, int offsetA, float[] b, int offsetB, int length)
+    {
+        return cosine(row(a, offsetA, length), row(b, offsetB, length));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The distinct left rows are taken in chunks of {@value #CHUNK_ROWS}; the left rows of a chunk
+     * and the right rows they are paired with are copied into two matrices, which are multiplied
+     * in one matrix product.
+     */
+    @Override
+    public double[] dotRows(float[] matrix, int dimensions, int[] leftRows, int[] rightRows)
+    {
+        int pairs = leftRows.length;
+        double[] results = new double[pairs];
+        // Index of each pair's left row in its chunk, in the order of the first pair using it
+        Map<Integer, Integer> leftIndexes = new HashMap<Integer, Integer>();
+        int[] chunks = new int[pairs];
+        int[] leftIndex = new int[pairs];
+        for (int p = 0; p < pairs; p++) {
+            Integer index = leftIndexes.get(leftRows[p]);
+            if (index == null) {
+                index = leftIndexes.size();
+                leftIndexes.put(leftRows[p], index);
+            }
+            chunks[p] = index / CHUNK_ROWS;
+            leftIndex[p] = index % CHUNK_ROWS;
+        }
+
+        int chunkCount = (leftIndexes.size() + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            List<Integer> left = new ArrayList<Integer>();
+            Map<Integer, Integer> rightIndexes = new HashMap<Integer, Integer>();
+            for (int p = 0; p < pairs; p++) {
+                if (chunks[p] != chunk) {
+                    continue;
+                }
+                if (leftIndex[p] == left.size()) {
+                    left.add(leftRows[p]);
+                }
+                if (!rightIndexes.containsKey(rightRows[p])) {
+                    rightIndexes.put(rightRows[p], rightIndexes.size());
+                }
+            }
+            float[] leftData = new float[left.size() * dimensions];
+            for (int i = 0; i < left.size(); i++) {
+                System.arraycopy(matrix, left.get(i) * dimensions, leftData, i * dimensions,
+                        dimensions);
+            }
+            float[] rightData = new float[rightIndexes.size() * dimensions];
+            for (Map.Entry<Integer, Integer> entry : rightIndexes.entrySet()) {
+                System.arraycopy(matrix, entry.getKey() * dimensions, rightData,
+                        entry.getValue() * dimensions, dimensions);
+            }
+            INDArray products = Nd4j.create(leftData, new int[] { left.size(), dimensions })
+                    .mmul(Nd4j.create(rightData, new int[] { rightIndexes.size(), dimensions })
+                            .transpose());
+            for (int p = 0; p < pairs; p++) {
+                if (chunks[p] == chunk) {
+                    results[p] = products.getDouble(leftIndex[p], rightIndexes.get(rightRows[p]));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static float[] row(float[] matrix, int offset, int length)
+    {
+        return Arrays.copyOfRange(matrix, offset, offset + length);
+    }
+}
@@ -34,6 +34,12 @@ public class RandomSimilarityMeasure
         return questionAnswerProblem;
     }
 
+    @Override
+    public boolean isDeferrable()
+    {
+        return true;
+    }
+
     @Override
     public String getMeasureMethodName()
     {
@@ -1,10 +1,14 @@
 package de.unidue.haring.similarity.experiments.measures;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -17,22 +21,43 @@ import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
 import de.unidue.haring.similarity.experiments.types.SemanticRelatedness;
 import de.unidue.haring.similarity.experiments.utils.CustomXmlReader;
+import de.unidue.haring.similarity.experiments.utils.Evaluator;
 import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.mallet.type.WordEmbedding;
+import de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding;
 
 public class SimilarityMeasure
     extends AbstractSimilarityMeasure
 {
     private static final String MEASURE_METHOD_NAME = "DefaultSimilarityMeasure";
-    private static List<String> missingEmbeddingAnnotations;
-    private static List<String> totalTokens;
+    // The tokens seen while preparing the pairs, shared by all measures, see
+    // clearTokenStatistics
+    private static final Set<String> missingEmbeddingAnnotations = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final Set<String> totalTokens = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // The id of the ModelWordEmbedding annotations used, null for WordEmbedding annotations
+    private String embeddingsModelId;
+    // The embeddings model whose features the measure reads, see setFeaturesModelId
+    private String featuresModelId;
+    // Provides the centroids of the segments, see setCentroidCache
+    private CentroidCache centroidCache;
 
     public SimilarityMeasure()
     {
-        missingEmbeddingAnnotations = new ArrayList<String>();
-        totalTokens = new ArrayList<String>();
+    }
+
+    /**
+     * Clears the tokens and the tokens without embedding annotations seen so far, e.g. before a
+     * new run.
+     */
+    public static void clearTokenStatistics()
+    {
+        missingEmbeddingAnnotations.clear();
+        totalTokens.clear();
     }
 
     @Override
@@ -59,6 +84,7 @@ public class SimilarityMeasure
     protected void setSemanticRelatedness(String relatednessName, QuestionAnswerPair pair1,
             QuestionAnswerPair pair2, double valuePair1, double valuePair2)
     {
+        relatednessName = getRelatednessName(relatednessName, embeddingsModelId);
         SemanticRelatedness semanticRelatednessPair1 = new SemanticRelatedness(relatednessName);
         SemanticRelatedness semanticRelatednessPair2 = new SemanticRelatedness(relatednessName);
 
@@ -114,11 +140,11 @@ public class SimilarityMeasure
     {
         setQuestionAnswerPairAnnotations(questionAnswerProblem.getPair1(), iCas, qJCas, a1JCas);
         setQuestionAnswerPairAnnotations(questionAnswerProblem.getPair2(), iCas, qJCas, a2JCas);
+        setEmbeddingsAnnotations(questionAnswerProblem, iCas, qJCas, a1JCas, a2JCas);
     }
 
     /**
-     * Sets the annotations for a QuestionAnswerPair. First, the corresponding lemmas are annotated.
-     * After that, the mallet embedding annotations are set.
+     * Sets the token and lemma annotations for a QuestionAnswerPair.
      * 
      * @param questionAnswerPair
      *            the question
@@ -137,14 +163,70 @@ public class SimilarityMeasure
         questionAnswerPair.setInstanceLemmas(getLemmaList(instanceJCas));
         questionAnswerPair.setQuestionLemmas(getLemmaList(questionJcas));
         questionAnswerPair.setAnswerLemmas(getLemmaList(answerJcas));
+    }
 
-        // Sets embedding annotations for QuestionAnswerPair
-        questionAnswerPair.setInstanceLemmasEmbeddingAnnotationsList(
-                getMalletEmbeddingsAnnotations(instanceJCas));
-        questionAnswerPair.setQuestionLemmasEmbeddingAnnotationsList(
-                getMalletEmbeddingsAnnotations(questionJcas));
-        questionAnswerPair.setAnswerLemmasEmbeddingAnnotationsList(
-                getMalletEmbeddingsAnnotations(answerJcas));
+    /**
+     * Replaces the embedding annotations of the QuestionAnswerPairs by the ones of the embeddings
+     * model of this measure. Used to score the pairs with further models after
+     * {@link #prepareQuestionAnswerPairs(CAS, QuestionAnswerProblem)}.
+     * 
+     * @param aCAS
+     *            the current CAS
+     * @param questionAnswerProblem
+     *            the current QuestionAnswerProblem
+     */
+    public void prepareEmbeddingsAnnotations(CAS aCAS, QuestionAnswerProblem questionAnswerProblem)
+    {
+        try {
+            JCas iJCas = aCAS.getView(CustomXmlReader.INSTANCE_VIEW).getJCas();
+            JCas qJCas = aCAS.getView(CustomXmlReader.QUESTION_VIEW).getJCas();
+            JCas a1JCas = aCAS.getView(CustomXmlReader.ANSWER_VIEW_1).getJCas();
+            JCas a2JCas = aCAS.getView(CustomXmlReader.ANSWER_VIEW_2).getJCas();
+
+            setEmbeddingsAnnotations(questionAnswerProblem, iJCas, qJCas, a1JCas, a2JCas);
+        }
+        catch (CASException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets the embedding annotations and the centroids of the segments for both
+     * QuestionAnswerPairs. The instance and the question are the same for both pairs, so their
+     * embeddings are collected once.
+     */
+    private void setEmbeddingsAnnotations(QuestionAnswerProblem questionAnswerProblem,
+            JCas instanceJCas, JCas questionJcas, JCas answer1Jcas, JCas answer2Jcas)
+    {
+        if (centroidCache == null) {
+            centroidCache = new CentroidCache();
+        }
+        List<float[]> instanceEmbeddings = getMalletEmbeddingsAnnotations(instanceJCas);
+        float[] instanceCentroid = centroidCache.getCentroid(CentroidCache.Segment.INSTANCE,
+                instanceJCas.getDocumentText(), embeddingsModelId, instanceEmbeddings);
+        List<float[]> questionEmbeddings = getMalletEmbeddingsAnnotations(questionJcas);
+        float[] questionCentroid = centroidCache.getCentroid(CentroidCache.Segment.QUESTION,
+                questionJcas.getDocumentText(), embeddingsModelId, questionEmbeddings);
+
+        for (QuestionAnswerPair questionAnswerPair : Arrays.asList(questionAnswerProblem.getPair1(),
+                questionAnswerProblem.getPair2())) {
+            questionAnswerPair.setInstanceLemmasEmbeddingAnnotationsList(instanceEmbeddings);
+            questionAnswerPair.setInstanceCentroid(instanceCentroid);
+            questionAnswerPair.setQuestionLemmasEmbeddingAnnotationsList(questionEmbeddings);
+            questionAnswerPair.setQuestionCentroid(questionCentroid);
+        }
+        setAnswerEmbeddingsAnnotations(questionAnswerProblem.getPair1(), answer1Jcas);
+        setAnswerEmbeddingsAnnotations(questionAnswerProblem.getPair2(), answer2Jcas);
+    }
+
+    private void setAnswerEmbeddingsAnnotations(QuestionAnswerPair questionAnswerPair,
+            JCas answerJcas)
+    {
+        List<float[]> answerEmbeddings = getMalletEmbeddingsAnnotations(answerJcas);
+        questionAnswerPair.setAnswerLemmasEmbeddingAnnotationsList(answerEmbeddings);
+        questionAnswerPair.setAnswerCentroid(centroidCache.getCentroid(
+                CentroidCache.Segment.ANSWER, answerJcas.getDocumentText(), embeddingsModelId,
+                answerEmbeddings));
     }
 
     /**
@@ -163,17 +245,13 @@ public class SimilarityMeasure
                     s.getEnd());
             GeneralPipelineUtils.addLemmaListToUsedWordSet(tokenOfSentence);
             for (Token token : tokenOfSentence) {
-                if (!totalTokens.contains(token.getCoveredText())) {
-                    totalTokens.add(token.getCoveredText());
-                }
-                try {
-                    embeddingsAnnotationsList.add(JCasUtil.selectCovered(WordEmbedding.class, token)
-                            .get(0).getWordEmbedding().toArray());
+                totalTokens.add(token.getCoveredText());
+                float[] embedding = getEmbedding(token);
+                if (embedding != null) {
+                    embeddingsAnnotationsList.add(embedding);
                 }
-                catch (IndexOutOfBoundsException e) {
-                    if (!missingEmbeddingAnnotations.contains(token.getCoveredText())) {
-                        missingEmbeddingAnnotations.add(token.getCoveredText());
-                    }
+                else {
+                    missingEmbeddingAnnotations.add(token.getCoveredText());
                 }
 
             }
@@ -181,6 +259,28 @@ public class SimilarityMeasure
         return embeddingsAnnotationsList;
     }
 
+    /**
+     * Gets the embedding a token is annotated with by the embeddings model of this measure.
+     * 
+     * @param token
+     *            the token
+     * @return the embedding, or null if the token has no embedding annotation
+     */
+    protected float[] getEmbedding(Token token)
+    {
+        if (embeddingsModelId == null) {
+            List<WordEmbedding> embeddings = JCasUtil.selectCovered(WordEmbedding.class, token);
+            return embeddings.isEmpty() ? null : embeddings.get(0).getWordEmbedding().toArray();
+        }
+        for (ModelWordEmbedding embedding : JCasUtil.selectCovered(ModelWordEmbedding.class,
+                token)) {
+            if (embeddingsModelId.equals(embedding.getModelId())) {
+                return embedding.getWordEmbedding().toArray();
+            }
+        }
+        return null;
+    }
+
     /**
      * Gets all lemmas from jcas.
      * 
@@ -228,12 +328,128 @@ public class SimilarityMeasure
 
     public List<String> getTotalTokens()
     {
-        return totalTokens;
+        return new ArrayList<String>(totalTokens);
     }
 
     public List<String> getMissingEmbeddingsAnnotation()
     {
-        return missingEmbeddingAnnotations;
+        return new ArrayList<String>(missingEmbeddingAnnotations);
+    }
+
+    /**
+     * Gets the features the measure reads, see {@link Feature}. They are computed by a
+     * {@link FeatureScheduler} before the measure is applied to a problem.
+     * 
+     * @return the features, empty if the measure reads the QuestionAnswerPairs only
+     */
+    public List<Feature<?>> getFeatures()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Gets the value of a feature the measure reads, see {@link #getFeatures()}.
+     * 
+     * @param feature
+     *            the feature
+     * @param questionAnswerProblem
+     *            the problem
+     * @return the value for the embeddings model of the measure, see
+     *         {@link #setFeaturesModelId(String)}
+     */
+    protected <T> T getFeature(Feature<T> feature, QuestionAnswerProblem questionAnswerProblem)
+    {
+        return feature.get(questionAnswerProblem, featuresModelId);
+    }
+
+    /**
+     * Whether the measure can be applied after the problem has been processed, on another thread,
+     * see {@link Evaluator#PARAM_MEASURE_THREADS}. That is the case if it only reads its features
+     * and the texts of the problem, but neither the annotations of the CAS, which is reused for
+     * the next document, nor the embeddings set on the pairs, which are replaced for each
+     * embeddings model. A measure instance is never applied on two threads at the same time.
+     */
+    public boolean isDeferrable()
+    {
+        return false;
+    }
+
+    /**
+     * Whether the measure depends on the embeddings model. Measures which do not are evaluated
+     * only once if several models are scored in the same run.
+     */
+    public boolean usesEmbeddings()
+    {
+        return false;
+    }
+
+    public String getEmbeddingsModelId()
+    {
+        return embeddingsModelId;
+    }
+
+    /**
+     * Sets the embeddings model whose {@link ModelWordEmbedding} annotations the measure uses. The
+     * relatedness values of the measure are then stored under the model id as well, see
+     * {@link #getRelatednessName()}.
+     * 
+     * @param embeddingsModelId
+     *            the model id, or null to use the {@link WordEmbedding} annotations
+     */
+    public void setEmbeddingsModelId(String embeddingsModelId)
+    {
+        this.embeddingsModelId = embeddingsModelId;
+        featuresModelId = embeddingsModelId;
+    }
+
+    /**
+     * Sets the embeddings model whose model dependent features the measure reads, if the measure
+     * does not use the embeddings itself but is applied with a model, see {@link Feature}. Set
+     * along with {@link #setEmbeddingsModelId(String)} otherwise.
+     * 
+     * @param featuresModelId
+     *            the model id, or null if a single model is used
+     */
+    public void setFeaturesModelId(String featuresModelId)
+    {
+        this.featuresModelId = featuresModelId;
+    }
+
+    /**
+     * Sets the cache the centroids of the segments are taken from when the QuestionAnswerPairs are
+     * prepared. Measures preparing the pairs of several embeddings models can share a cache, as
+     * it is keyed by the model. If no cache is set, the measure creates its own.
+     * 
+     * @param centroidCache
+     *            the cache
+     */
+    public void setCentroidCache(CentroidCache centroidCache)
+    {
+        this.centroidCache = centroidCache;
+    }
+
+    /**
+     * Gets the name the relatedness values of this measure are stored under in the
+     * QuestionAnswerPairs.
+     */
+    public String getRelatednessName()
+    {
+        return getRelatednessName(getMeasureMethodName(), embeddingsModelId);
+    }
+
+    /**
+     * Gets the name relatedness values of a measure are stored under.
+     * 
+     * @param measureMethodName
+     *            the name of the measure method
+     * @param embeddingsModelId
+     *            the embeddings model used by the measure, may be null
+     * @return the measure method name, qualified by the model id if one is given
+     */
+    public static String getRelatednessName(String measureMethodName, String embeddingsModelId)
+    {
+        return embeddingsModelId == null ? measureMethodName
+                : measureMethodName + "@" + embeddingsModelId;
     }
 
     @Override
@@ -1,7 +1,7 @@
 package de.unidue.haring.similarity.experiments.measures;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.uima.cas.CAS;
@@ -25,6 +25,16 @@ public class SimpleJWeb1TMeasure
         super();
     }
 
+    /**
+     * Unlike the other Web1T measures, which fall back to the instance/answer cosine similarity,
+     * this measure only uses the frequencies of the answer lemmas.
+     */
+    @Override
+    public boolean usesEmbeddings()
+    {
+        return false;
+    }
+
     @Override
     public QuestionAnswerProblem measureSimilarity(CAS aCAS,
             QuestionAnswerProblem questionAnswerProblem)
@@ -32,22 +42,20 @@ public class SimpleJWeb1TMeasure
         QuestionAnswerPair questionAnswerPair1 = questionAnswerProblem.getPair1();
         QuestionAnswerPair questionAnswerPair2 = questionAnswerProblem.getPair2();
 
-        try {
-            if (web1t == null) {
-                initJWeb1T();
-            }
-            double a1Freq = sumLemmataFrequency(questionAnswerPair1.getAnswerLemmas());
-            double a2Freq = sumLemmataFrequency(questionAnswerPair2.getAnswerLemmas());
-
+        double[] frequencies = getFeature(ANSWER_LOG_FREQUENCIES, questionAnswerProblem);
+        if (frequencies != null) {
             setSemanticRelatedness(MEASURE_METHOD_NAME, questionAnswerPair1, questionAnswerPair2,
-                    a1Freq, a2Freq);
-        }
-        catch (IOException e) {
-            e.printStackTrace();
+                    frequencies[0], frequencies[1]);
         }
         return questionAnswerProblem;
     }
 
+    @Override
+    public List<Feature<?>> getFeatures()
+    {
+        return Collections.<Feature<?>> singletonList(ANSWER_LOG_FREQUENCIES);
+    }
+
     @Override
     public String getMeasureMethodName()
     {
@@ -0,0 +1,112 @@
+package de.unidue.haring.similarity.experiments.measures;
+
+import java.util.List;
+
+/**
+ * Vector arithmetic on embeddings, given as float arrays or as rows of a row-major matrix.
+ * <p>
+ * Two implementations are available: {@link JavaVectorKernels}, plain Java loops working directly
+ * on the arrays, and {@link Nd4jVectorKernels}, which wraps the arrays in ND4J arrays. The one
+ * used by the measures is selected with the system property {@value #KERNELS_PROPERTY}
+ * ({@code java}, the default, or {@code nd4j}); VectorKernelsBenchmark compares them.
+ */
+public interface VectorKernels
+{
+    String KERNELS_PROPERTY = "vector.kernels";
+
+    /**
+     * Gets the kernels selected with {@value #KERNELS_PROPERTY}.
+     *
+     * @return the kernels
+     */
+    static VectorKernels get()
+    {
+        return get(System.getProperty(KERNELS_PROPERTY, JavaVectorKernels.NAME));
+    }
+
+    /**
+     * Gets kernels by name.
+     *
+     * @param name
+     *            {@code java} or {@code nd4j}
+     * @return the kernels
+     */
+    static VectorKernels get(String name)
+    {
+        if (JavaVectorKernels.NAME.equals(name)) {
+            return JavaVectorKernels.INSTANCE;
+        }
+        if (Nd4jVectorKernels.NAME.equals(name)) {
+            return Nd4jVectorKernels.INSTANCE;
+        }
+        throw new IllegalArgumentException("Unknown vector kernels: " + name);
+    }
+
+    /**
+     * Adds up vectors of the same length.
+     *
+     * @param vectors
+     *            the vectors, at least one
+     * @return the sum
+     */
+    float[] sum(List<float[]> vectors);
+
+    /**
+     * Averages vectors of the same length.
+     *
+     * @param vectors
+     *            the vectors, at least one
+     * @return the mean
+     */
+    float[] mean(List<float[]> vectors);
+
+    double dot(float[] a, float[] b);
+
+    /**
+     * Computes the dot product of two rows.
+     *
+     * @param a
+     *            the matrix of the first row
+     * @param offsetA
+     *            the index of the first element of the first row
+     * @param b
+     *            the matrix of the second row
+     * @param offsetB
+     *            the index of the first element of the second row
+     * @param length
+     *            the length of the rows
+     * @return the dot product
+     */
+    double dot(float[] a, int offsetA, float[] b, int offsetB, int length);
+
+    double norm(float[] a);
+
+    double norm(float[] a, int offset, int length);
+
+    /**
+     * Computes the cosine similarity of two vectors, NaN if one of them is zero.
+     */
+    double cosine(float[] a, float[] b);
+
+    /**
+     * Computes the cosine similarity of two rows, see
+     * {@link #dot(float[], int, float[], int, int)}.
+     */
+    double cosine(float[] a, int offsetA, float[] b, int offsetB, int length);
+
+    /**
+     * Computes the dot products of pairs of rows of a matrix. Pairs with the same left row are
+     * computed together, so the left row is read once for all of them.
+     *
+     * @param matrix
+     *            the row-major matrix
+     * @param dimensions
+     *            the length of the rows
+     * @param leftRows
+     *            the index of the left row of each pair
+     * @param rightRows
+     *            the index of the right row of each pair
+     * @return the dot product of each pair
+     */
+    double[] dotRows(float[] matrix, int dimensions, int[] leftRows, int[] rightRows);
+}
@@ -0,0 +1,120 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps instantiated analysis engines across pipeline runs.
+ * <p>
+ * Engines are looked up by their description, so a run with the same configuration as an earlier
+ * run gets the engines of that run, including their loaded models, instead of new ones. The
+ * engines of the least recently used descriptions are destroyed once more than the given number
+ * of descriptions are held, which for example releases the embeddings models of earlier runs.
+ * <p>
+ * Engines are handed out for one run at a time; a session must not be used by concurrent runs.
+ */
+public class AnalysisSession
+    implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisSession.class);
+
+    private final int maxDescriptions;
+    private final Map<String, List<AnalysisEngine>> engines;
+
+    /**
+     * @param maxDescriptions
+     *            the number of distinct descriptions whose engines are kept
+     */
+    public AnalysisSession(int maxDescriptions)
+    {
+        this.maxDescriptions = maxDescriptions;
+        engines = new LinkedHashMap<String, List<AnalysisEngine>>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets instances of an analysis engine, creating the missing ones.
+     *
+     * @param description
+     *            the description of the engine
+     * @param count
+     *            the number of instances
+     * @return independent instances of the engine, owned by the session
+     * @throws ResourceInitializationException
+     *             if an engine cannot be created
+     */
+    public synchronized List<AnalysisEngine> getEngines(AnalysisEngineDescription description,
+            int count)
+        throws ResourceInitializationException
+    {
+        String key = toXml(description);
+        List<AnalysisEngine> instances = engines.get(key);
+        if (instances == null) {
+            instances = new ArrayList<AnalysisEngine>(count);
+            engines.put(key, instances);
+            evict();
+        }
+        else {
+            LOG.info("Reusing " + Math.min(count, instances.size())
+                    + " engines of an earlier run");
+        }
+        while (instances.size() < count) {
+            instances.add(createEngine(description));
+        }
+        return new ArrayList<AnalysisEngine>(instances.subList(0, count));
+    }
+
+    private void evict()
+    {
+        Iterator<List<AnalysisEngine>> iterator = engines.values().iterator();
+        while (engines.size() > maxDescriptions && iterator.hasNext()) {
+            destroy(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Destroys all engines of the session. The session can still be used afterwards.
+     */
+    @Override
+    public synchronized void close()
+    {
+        for (List<AnalysisEngine> instances : engines.values()) {
+            destroy(instances);
+        }
+        engines.clear();
+    }
+
+    private static void destroy(List<AnalysisEngine> instances)
+    {
+        for (AnalysisEngine engine : instances) {
+            engine.destroy();
+        }
+    }
+
+    private static String toXml(AnalysisEngineDescription description)
+        throws ResourceInitializationException
+    {
+        StringWriter xml = new StringWriter();
+        try {
+            description.toXML(xml);
+        }
+        catch (SAXException | IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+        return xml.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.unidue.haring.similarity.experiments.measures.BatchCosineScorer;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblemFactory;
+import de.unidue.haring.similarity.experiments.types.SemanticRelatedness;
+import de.unidue.haring.similarity.experiments.utils.Evaluator;
+import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+import de.unidue.haring.similarity.experiments.utils.StageTimings;
+
+/**
+ * Compares the throughput of scoring the cosine measures on each problem with scoring them for
+ * all problems at once, see {@link BatchCosineScorer}.
+ * <p>
+ * The pipeline is run on the test data with the measures comparing centroids, first once to warm
+ * up the JIT compiler and the caches, then with each scoring path. For both paths the report lists
+ * the duration of the run, the time spent in the evaluator including the batch scoring, and the
+ * problems per second, followed by the number of relatedness values which differ between the
+ * paths. The report is written to {@value #REPORT_FILE_NAME} in the results directory.
+ */
+public class BatchScoringReport
+{
+    public static final String REPORT_FILE_NAME = "batch_scoring_report";
+
+    private static final String DEFAULT_EMBEDDINGS =
+            "src/test/resources/embeddings/glove.6B.50d.txt";
+
+    private static final String[] MEASURE_METHODS = { "InstanceToAnswerSimilarityMeasure",
+            "QuestionToAnswerSimilarityMeasure" };
+
+    // The stage the Pipeline times the evaluator under
+    private static final String EVALUATOR_STAGE = "evaluator";
+
+    private static final String LF = System.getProperty("line.separator");
+
+    /**
+     * @param args
+     *            optionally the text-format embeddings model and {@code false} if the model is
+     *            not caseless
+     * @throws Exception
+     *             if a pipeline run fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String wordEmbeddingsData = args.length > 0 ? args[0] : DEFAULT_EMBEDDINGS;
+        boolean lowercase = args.length > 1 ? Boolean.parseBoolean(args[1]) : true;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Batch scoring report for data: " + Pipeline.TEST_DATA + ". Used embeddings: "
+                + wordEmbeddingsData);
+        sb.append(LF);
+        sb.append(String.format("%-10s%12s%16s%12s", "Scoring", "Run [s]", "Evaluator [ms]",
+                "Problems/s"));
+        sb.append(LF);
+
+        Map<String, Double> perPairValues;
+        Map<String, Double> batchValues;
+        try {
+            Pipeline.setBatchScoring(false);
+            run(wordEmbeddingsData, lowercase);
+
+            sb.append(run(wordEmbeddingsData, lowercase, "per pair"));
+            perPairValues = getRelatednessValues();
+
+            Pipeline.setBatchScoring(true);
+            sb.append(run(wordEmbeddingsData, lowercase, "batch"));
+            batchValues = getRelatednessValues();
+        }
+        finally {
+            Pipeline.setBatchScoring(Boolean.getBoolean("pipeline.batchScoring"));
+            Pipeline.destroyEngines();
+        }
+
+        int differences = 0;
+        for (Map.Entry<String, Double> entry : perPairValues.entrySet()) {
+            if (!entry.getValue().equals(batchValues.get(entry.getKey()))) {
+                differences++;
+            }
+        }
+        sb.append(LF);
+        sb.append(String.format("Relatedness values differing between the paths: %d of %d",
+                differences, perPairValues.size()));
+        sb.append(LF);
+
+        String report = sb.toString();
+        System.out.println(report);
+        GeneralPipelineUtils.writeToFileWithFileName(report,
+                GeneralPipelineUtils.getEvaluationResultsFilePath(), REPORT_FILE_NAME);
+    }
+
+    private static void run(String wordEmbeddingsData, boolean lowercase) throws Exception
+    {
+        Pipeline.runPipeline(Pipeline.TEST_DATA,
+                Collections.singletonMap(wordEmbeddingsData, lowercase), "none", new String[0],
+                MEASURE_METHODS, null);
+    }
+
+    /**
+     * Runs the pipeline and formats its throughput.
+     *
+     * @return the line of the report
+     */
+    private static String run(String wordEmbeddingsData, boolean lowercase, String scoring)
+        throws Exception
+    {
+        long start = System.nanoTime();
+        run(wordEmbeddingsData, lowercase);
+        long runNanos = System.nanoTime() - start;
+        long evaluatorNanos = StageTimings.getTotalNanos(EVALUATOR_STAGE)
+                + StageTimings.getTotalNanos(Evaluator.BATCH_SCORING_STAGE);
+        int problems = QuestionAnswerProblemFactory.getQuestionAnswerProblems().size();
+        return String.format("%-10s%12.2f%16.1f%12.0f", scoring, runNanos / 1e9,
+                evaluatorNanos / 1e6, problems / (runNanos / 1e9)) + LF;
+    }
+
+    /**
+     * Gets the relatedness values of the measures on the problems of the last run.
+     *
+     * @return the values by problem, answer and measure method name
+     */
+    private static Map<String, Double> getRelatednessValues()
+    {
+        Map<String, Double> values = new HashMap<String, Double>();
+        for (Map.Entry<Integer, QuestionAnswerProblem> entry : QuestionAnswerProblemFactory
+                .getQuestionAnswerProblems().entrySet()) {
+            QuestionAnswerPair[] pairs = { entry.getValue().getPair1(),
+                    entry.getValue().getPair2() };
+            for (int i = 0; i < pairs.length; i++) {
+                for (String measureMethod : MEASURE_METHODS) {
+                    SemanticRelatedness relatedness = pairs[i].getRelatedness(measureMethod);
+                    if (relatedness != null) {
+                        values.put(entry.getKey() + "/" + i + "/" + measureMethod,
+                                relatedness.getSemanticRelatednessValue());
+                    }
+                }
+            }
+        }
+        return values;
+    }
+}
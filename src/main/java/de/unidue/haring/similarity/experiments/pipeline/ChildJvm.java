@@ -0,0 +1,84 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts a class of this project in a child JVM with the class path of the current JVM.
+ * <p>
+ * The system properties given on the command line of the current JVM, e.g. the settings of the
+ * pipeline and its caches, are passed on unless they are overridden. So is the maximum heap,
+ * unless another one is given.
+ */
+class ChildJvm
+{
+    private final List<String> command;
+
+    /**
+     * @param maxHeapMb
+     *            the maximum heap of the child in MB, or 0 to use that of the current JVM
+     * @param properties
+     *            system properties of the child, overriding those of the current JVM
+     * @param mainClass
+     *            the class to run
+     * @param args
+     *            the arguments of its main method
+     */
+    ChildJvm(long maxHeapMb, Map<String, String> properties, Class<?> mainClass, String... args)
+    {
+        command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-Xmx") ? maxHeapMb <= 0
+                    : argument.startsWith("-D") && !isOverridden(argument, properties)) {
+                command.add(argument);
+            }
+        }
+        if (maxHeapMb > 0) {
+            command.add("-Xmx" + maxHeapMb + "m");
+        }
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            command.add("-D" + property.getKey() + "=" + property.getValue());
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        Collections.addAll(command, args);
+    }
+
+    private static boolean isOverridden(String argument, Map<String, String> properties)
+    {
+        int end = argument.indexOf('=');
+        return properties.containsKey(argument.substring(2, end < 0 ? argument.length() : end));
+    }
+
+    /**
+     * Runs the child and waits until it exits.
+     *
+     * @param logFile
+     *            receives the output of the child
+     * @return the exit code
+     * @throws IOException
+     *             if the child cannot be started
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting
+     */
+    int run(File logFile) throws IOException, InterruptedException
+    {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(logFile).start();
+        try {
+            return process.waitFor();
+        }
+        finally {
+            if (process.isAlive()) {
+                process.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The experiment matrix of an {@link ExperimentRunner}: datasets × embeddings models × measure
+ * methods, read from a properties file.
+ *
+ * <pre>
+ * # Datasets, each with optional subset files evaluated as filters
+ * datasets = test
+ * dataset.test.file = src/test/resources/data/test-data.xml
+ * dataset.test.subsets = src/test/resources/data/testdata_subset_why.xml, ...
+ *
+ * # Text-format embeddings models; lowercase defaults to true, heapMb to an estimate
+ * embeddings = glove50
+ * embeddings.glove50.file = src/test/resources/embeddings/glove.6B.50d.txt
+ * embeddings.glove50.lowercase = true
+ * embeddings.glove50.heapMb = 2048
+ *
+ * # Measure methods, all if empty
+ * measures = InstanceToAnswerSimilarityMeasure, QuestionToAnswerSimilarityMeasure
+ *
+ * quantization = none
+ * # Heap of all concurrently running models together
+ * memoryBudgetMb = 8192
+ * </pre>
+ *
+ * Relative paths are resolved against the working directory, like the paths in {@link Pipeline}.
+ */
+public class ExperimentConfig
+{
+    public static final long DEFAULT_MEMORY_BUDGET_MB = 8192;
+
+    // The heap of the NLP stages, the CASes and the evaluation, without the embeddings
+    static final long BASE_HEAP_MB = 1536;
+
+    private final Map<String, Dataset> datasets;
+    private final Map<String, Embeddings> embeddings;
+    private final String[] measureMethods;
+    private final String quantization;
+    private final long memoryBudgetMb;
+
+    private ExperimentConfig(Map<String, Dataset> datasets, Map<String, Embeddings> embeddings,
+            String[] measureMethods, String quantization, long memoryBudgetMb)
+    {
+        this.datasets = datasets;
+        this.embeddings = embeddings;
+        this.measureMethods = measureMethods;
+        this.quantization = quantization;
+        this.memoryBudgetMb = memoryBudgetMb;
+    }
+
+    /**
+     * Reads an experiment matrix.
+     *
+     * @param configFile
+     *            the properties file
+     * @return the matrix
+     * @throws IOException
+     *             if the file cannot be read
+     * @throws IllegalArgumentException
+     *             if a dataset or embeddings model is not defined or its file does not exist
+     */
+    public static ExperimentConfig load(File configFile) throws IOException
+    {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(configFile);
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        Map<String, Dataset> datasets = new LinkedHashMap<String, Dataset>();
+        for (String name : getList(properties, "datasets")) {
+            String file = getExistingFile(properties, "dataset." + name + ".file");
+            List<String> subsets = getList(properties, "dataset." + name + ".subsets");
+            for (String subset : subsets) {
+                checkExists(subset);
+            }
+            datasets.put(name, new Dataset(name, file, subsets.toArray(new String[0])));
+        }
+        Map<String, Embeddings> embeddings = new LinkedHashMap<String, Embeddings>();
+        for (String name : getList(properties, "embeddings")) {
+            String prefix = "embeddings." + name + ".";
+            String file = getExistingFile(properties, prefix + "file");
+            boolean lowercase = Boolean
+                    .parseBoolean(properties.getProperty(prefix + "lowercase", "true").trim());
+            String heapMb = properties.getProperty(prefix + "heapMb", "").trim();
+            embeddings.put(name, new Embeddings(name, file, lowercase,
+                    heapMb.isEmpty() ? estimateHeapMb(new File(file)) : Long.parseLong(heapMb)));
+        }
+        if (datasets.isEmpty() || embeddings.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "The experiment config must list at least one dataset and embeddings model.");
+        }
+
+        List<String> measures = getList(properties, "measures");
+        String budget = properties.getProperty("memoryBudgetMb", "").trim();
+        return new ExperimentConfig(datasets, embeddings,
+                measures.isEmpty() ? null : measures.toArray(new String[0]),
+                properties.getProperty("quantization", "none").trim(),
+                budget.isEmpty() ? DEFAULT_MEMORY_BUDGET_MB : Long.parseLong(budget));
+    }
+
+    /**
+     * Estimates the heap of a pipeline run with a text-format model: the base heap plus about
+     * three quarters of the file size, the float vectors and the vocabulary of the model if it
+     * is loaded unfiltered.
+     */
+    private static long estimateHeapMb(File modelFile)
+    {
+        return BASE_HEAP_MB + modelFile.length() * 3 / 4 / (1024 * 1024);
+    }
+
+    private static List<String> getList(Properties properties, String key)
+    {
+        List<String> values = new ArrayList<String>();
+        for (String value : properties.getProperty(key, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private static String getExistingFile(Properties properties, String key)
+    {
+        String file = properties.getProperty(key, "").trim();
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("Missing property " + key);
+        }
+        checkExists(file);
+        return file;
+    }
+
+    private static void checkExists(String file)
+    {
+        if (!new File(file).isFile()) {
+            throw new IllegalArgumentException("File not found: " + file);
+        }
+    }
+
+    /**
+     * @return the datasets by name, in the order of the config
+     */
+    public Map<String, Dataset> getDatasets()
+    {
+        return Collections.unmodifiableMap(datasets);
+    }
+
+    /**
+     * @return the files of all datasets
+     */
+    public String[] getDatasetFiles()
+    {
+        String[] files = new String[datasets.size()];
+        int i = 0;
+        for (Dataset dataset : datasets.values()) {
+            files[i++] = dataset.getFile();
+        }
+        return files;
+    }
+
+    /**
+     * @return the embeddings models by name, in the order of the config
+     */
+    public Map<String, Embeddings> getEmbeddings()
+    {
+        return Collections.unmodifiableMap(embeddings);
+    }
+
+    /**
+     * @return the measure methods to evaluate, or null for all
+     */
+    public String[] getMeasureMethods()
+    {
+        return measureMethods;
+    }
+
+    public String getQuantization()
+    {
+        return quantization;
+    }
+
+    public long getMemoryBudgetMb()
+    {
+        return memoryBudgetMb;
+    }
+
+    /**
+     * A dataset and its subset files.
+     */
+    public static class Dataset
+    {
+        private final String name;
+        private final String file;
+        private final String[] subsets;
+
+        private Dataset(String name, String file, String[] subsets)
+        {
+            this.name = name;
+            this.file = file;
+            this.subsets = subsets;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getFile()
+        {
+            return file;
+        }
+
+        public String[] getSubsets()
+        {
+            return subsets.clone();
+        }
+    }
+
+    /**
+     * A text-format embeddings model and the heap of a pipeline run using it.
+     */
+    public static class Embeddings
+    {
+        private final String name;
+        private final String file;
+        private final boolean lowercase;
+        private final long heapMb;
+
+        private Embeddings(String name, String file, boolean lowercase, long heapMb)
+        {
+            this.name = name;
+            this.file = file;
+            this.lowercase = lowercase;
+            this.heapMb = heapMb;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getFile()
+        {
+            return file;
+        }
+
+        public boolean isLowercase()
+        {
+            return lowercase;
+        }
+
+        public long getHeapMb()
+        {
+            return heapMb;
+        }
+    }
+}
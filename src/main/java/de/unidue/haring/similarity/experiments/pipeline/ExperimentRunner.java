@@ -0,0 +1,249 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import de.unidue.haring.similarity.experiments.pipeline.ExperimentConfig.Dataset;
+import de.unidue.haring.similarity.experiments.pipeline.ExperimentConfig.Embeddings;
+import de.unidue.haring.similarity.experiments.types.EvaluationResult;
+import de.unidue.haring.similarity.experiments.utils.Evaluator;
+import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+import de.unidue.haring.similarity.experiments.utils.PartialEvaluationResults;
+import de.unidue.haring.similarity.experiments.utils.ResultsTablePrinter;
+
+/**
+ * Runs the experiment matrix of an {@link ExperimentConfig}.
+ * <p>
+ * The cells of the matrix are grouped by embeddings model. Each group runs in a child JVM which
+ * loads its model once and runs the pipeline on all datasets, restricting the model to the joint
+ * vocabulary of the datasets. Separate processes are used because the pipeline keeps
+ * process-wide state, like the parsed problems and the last evaluation results. Groups are
+ * started largest model first, as many at a time as their heap fits into the memory budget, so
+ * a full sweep takes about as long as its longest group. Each child gets the heap of its model
+ * and a share of the processors for the NLP stages.
+ * <p>
+ * The children write their results, evaluation results and logs to
+ * {@value #OUTPUT_DIRECTORY_NAME} in the results directory. When all groups are done, the results
+ * are appended as one table to the results table file of {@link ResultsTablePrinter}, and the
+ * duration of each group is written to the evaluation results file.
+ */
+public class ExperimentRunner
+{
+    public static final String DEFAULT_CONFIG = "src/main/resources/experiments.properties";
+
+    public static final String OUTPUT_DIRECTORY_NAME = "experiments";
+
+    private static final String GROUP_ARGUMENT = "--group";
+
+    private static final String LF = System.getProperty("line.separator");
+
+    /**
+     * @param args
+     *            optionally the experiment config, {@value #DEFAULT_CONFIG} by default
+     * @throws Exception
+     *             if the config is invalid or a group fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 4 && GROUP_ARGUMENT.equals(args[0])) {
+            runGroup(ExperimentConfig.load(new File(args[1])), args[2], new File(args[3]));
+            return;
+        }
+        File configFile = new File(args.length > 0 ? args[0] : DEFAULT_CONFIG);
+        runMatrix(configFile, ExperimentConfig.load(configFile));
+    }
+
+    private static void runMatrix(File configFile, ExperimentConfig config) throws Exception
+    {
+        File outputDirectory = new File(GeneralPipelineUtils.getEvaluationResultsFilePath(),
+                OUTPUT_DIRECTORY_NAME);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + outputDirectory);
+        }
+        GeneralPipelineUtils.deleteEvaluationResultsFileIfExists();
+
+        List<Embeddings> groups = new ArrayList<Embeddings>(config.getEmbeddings().values());
+        groups.sort((e1, e2) -> Long.compare(e2.getHeapMb(), e1.getHeapMb()));
+        int budgetMb = (int) Math.min(config.getMemoryBudgetMb(), Integer.MAX_VALUE);
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors()
+                / getMaxConcurrentGroups(groups, budgetMb));
+
+        Semaphore memory = new Semaphore(budgetMb, true);
+        ExecutorService executor = Executors.newFixedThreadPool(groups.size());
+        Map<String, Future<Long>> durations = new LinkedHashMap<String, Future<Long>>();
+        long start = System.currentTimeMillis();
+        try {
+            for (Embeddings group : groups) {
+                // A group larger than the budget runs alone
+                int heapMb = (int) Math.min(group.getHeapMb(), budgetMb);
+                memory.acquire(heapMb);
+                durations.put(group.getName(), executor.submit(
+                        () -> runChild(configFile, group, outputDirectory, threads, memory,
+                                heapMb)));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        List<String> failed = new ArrayList<String>();
+        long longest = 0;
+        for (Map.Entry<String, Future<Long>> entry : durations.entrySet()) {
+            long millis = entry.getValue().get();
+            if (millis < 0) {
+                failed.add(entry.getKey());
+                sb.append(String.format("%32s%12s", entry.getKey(), "failed"));
+            }
+            else {
+                longest = Math.max(longest, millis);
+                sb.append(String.format("%32s%10.1f s", entry.getKey(), millis / 1000.0));
+            }
+            sb.append(LF);
+        }
+        sb.append(String.format("Sweep: %.1f s, longest group %.1f s",
+                (System.currentTimeMillis() - start) / 1000.0, longest / 1000.0));
+
+        writeResultsTable(config, outputDirectory, sb.toString());
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("Failed experiment groups: " + failed
+                    + ", see the logs in " + outputDirectory);
+        }
+    }
+
+    /**
+     * Gets the number of groups whose heap fits into the budget at the same time, at least one.
+     */
+    private static int getMaxConcurrentGroups(List<Embeddings> groups, long budgetMb)
+    {
+        List<Long> heaps = new ArrayList<Long>();
+        for (Embeddings group : groups) {
+            heaps.add(group.getHeapMb());
+        }
+        Collections.sort(heaps);
+        int count = 0;
+        long used = 0;
+        for (long heapMb : heaps) {
+            if (used + heapMb > budgetMb) {
+                break;
+            }
+            used += heapMb;
+            count++;
+        }
+        return Math.max(1, count);
+    }
+
+    /**
+     * Runs a group in a child JVM and releases its memory when it is done.
+     *
+     * @return the duration in milliseconds, or -1 if the child failed
+     */
+    private static long runChild(File configFile, Embeddings group, File outputDirectory,
+            int threads, Semaphore memory, int heapMb)
+        throws IOException, InterruptedException
+    {
+        try {
+            File resultsFile = new File(outputDirectory, group.getName() + ".tsv");
+            Files.deleteIfExists(resultsFile.toPath());
+            Files.deleteIfExists(new File(outputDirectory, group.getName() + ".txt").toPath());
+
+            Map<String, String> properties = new LinkedHashMap<String, String>();
+            properties.put("pipeline.threads", String.valueOf(threads));
+            properties.put(GeneralPipelineUtils.EVALUATION_RESULTS_FILE_PROPERTY,
+                    OUTPUT_DIRECTORY_NAME + "/" + group.getName() + ".txt");
+            ChildJvm child = new ChildJvm(group.getHeapMb(), properties, ExperimentRunner.class,
+                    GROUP_ARGUMENT, configFile.getPath(), group.getName(), resultsFile.getPath());
+
+            System.out.println("Starting experiment group " + group.getName() + " with "
+                    + group.getHeapMb() + " MB heap");
+            long start = System.currentTimeMillis();
+            int exitCode = child.run(new File(outputDirectory, group.getName() + ".log"));
+            long millis = System.currentTimeMillis() - start;
+            System.out.println(String.format("Experiment group %s %s after %.1f s",
+                    group.getName(), exitCode == 0 ? "finished" : "failed", millis / 1000.0));
+            return exitCode == 0 ? millis : -1;
+        }
+        finally {
+            memory.release(heapMb);
+        }
+    }
+
+    /**
+     * Runs the pipeline with one embeddings model on all datasets and appends the results to a
+     * {@link PartialEvaluationResults} file, labeled with the dataset and subset names.
+     */
+    private static void runGroup(ExperimentConfig config, String embeddingsName, File resultsFile)
+        throws Exception
+    {
+        Embeddings embeddings = config.getEmbeddings().get(embeddingsName);
+        Map<String, Boolean> model = Collections.singletonMap(embeddings.getFile(),
+                Boolean.valueOf(embeddings.isLowercase()));
+        // The joint vocabulary lets all datasets share the loaded model
+        String[] vocabularyDataFilePaths = config.getDatasetFiles();
+        try {
+            for (Dataset dataset : config.getDatasets().values()) {
+                Pipeline.runPipeline(dataset.getFile(), model, config.getQuantization(),
+                        dataset.getSubsets(), config.getMeasureMethods(), vocabularyDataFilePaths);
+
+                PartialEvaluationResults.append(resultsFile, dataset.getName(), embeddingsName,
+                        Evaluator.getLastEvaluationResults());
+                for (Map.Entry<String, Map<String, EvaluationResult>> subset : Evaluator
+                        .getLastSubsetEvaluationResults().entrySet()) {
+                    String subsetName = new File(subset.getKey()).getName().split("\\.")[0];
+                    PartialEvaluationResults.append(resultsFile,
+                            dataset.getName() + "/" + subsetName, embeddingsName,
+                            subset.getValue());
+                }
+            }
+        }
+        finally {
+            Pipeline.destroyEngines();
+        }
+    }
+
+    /**
+     * Merges the results of all groups into one table, ordered by dataset, subset, embeddings
+     * model and measure method, and appends it to the results table file. The given summary is
+     * written to the evaluation results file.
+     */
+    private static void writeResultsTable(ExperimentConfig config, File outputDirectory,
+            String summary)
+        throws IOException
+    {
+        List<File> resultsFiles = new ArrayList<File>();
+        for (String embeddingsName : config.getEmbeddings().keySet()) {
+            resultsFiles.add(new File(outputDirectory, embeddingsName + ".tsv"));
+        }
+
+        ResultsTablePrinter rtp = new ResultsTablePrinter();
+        rtp.printResultsHead();
+        Map<String, Map<String, Map<String, EvaluationResult>>> results = PartialEvaluationResults
+                .read(resultsFiles.toArray(new File[0]));
+        for (Map.Entry<String, Map<String, Map<String, EvaluationResult>>> data : results
+                .entrySet()) {
+            for (Map.Entry<String, Map<String, EvaluationResult>> embeddings : data.getValue()
+                    .entrySet()) {
+                for (EvaluationResult result : embeddings.getValue().values()) {
+                    rtp.printResultsColumn(data.getKey(), embeddings.getKey(),
+                            result.getMeasureMethod(), result.getTotalAnsweredQuestions(),
+                            result.getCorrectAnsweredQuestions(),
+                            result.getTotalCommonsenseQuestions(),
+                            result.getCorrectCommonsenseQuestions(),
+                            result.getTotalTextQuestions(), result.getCorrectTextQuestions());
+                }
+            }
+        }
+        rtp.printResultsTableToFile();
+        GeneralPipelineUtils.printEvaluationResult(summary);
+    }
+}
@@ -0,0 +1,123 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.unidue.haring.similarity.experiments.customAnnotators.FastAnalyzer;
+import de.unidue.haring.similarity.experiments.types.EvaluationResult;
+import de.unidue.haring.similarity.experiments.utils.Evaluator;
+import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+
+/**
+ * Compares the evaluation results of the full NLP stages with those of the {@link FastAnalyzer}.
+ * <p>
+ * The pipeline is run once with each analysis chain on the test data. For the full test data and
+ * each question type subset the report lists the accuracy of every measure method with both
+ * chains and the difference, followed by the duration of both runs. The report is written to
+ * {@value #REPORT_FILE_NAME} in the results directory.
+ * <p>
+ * The durations only include the NLP stages if the annotated corpus of a chain is not cached yet,
+ * see {@code AnnotatedCorpusCache}.
+ */
+public class FastModeReport
+{
+    public static final String REPORT_FILE_NAME = "fast_mode_report";
+
+    private static final String DEFAULT_EMBEDDINGS =
+            "src/test/resources/embeddings/glove.6B.50d.txt";
+
+    private static final String ALL_DATA = "all";
+
+    private static final String LF = System.getProperty("line.separator");
+
+    /**
+     * @param args
+     *            optionally the text-format embeddings model and {@code false} if the model is
+     *            not caseless
+     * @throws Exception
+     *             if a pipeline run fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String wordEmbeddingsData = args.length > 0 ? args[0] : DEFAULT_EMBEDDINGS;
+        boolean lowercase = args.length > 1 ? Boolean.parseBoolean(args[1]) : true;
+
+        Map<String, Map<String, EvaluationResult>> full;
+        Map<String, Map<String, EvaluationResult>> fast;
+        long fullMillis;
+        long fastMillis;
+        try {
+            long start = System.currentTimeMillis();
+            Pipeline.setFastMode(false);
+            full = run(wordEmbeddingsData, lowercase);
+            fullMillis = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            Pipeline.setFastMode(true);
+            fast = run(wordEmbeddingsData, lowercase);
+            fastMillis = System.currentTimeMillis() - start;
+        }
+        finally {
+            Pipeline.setFastMode(Boolean.getBoolean("pipeline.fast"));
+            Pipeline.destroyEngines();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Fast mode report for data: " + Pipeline.TEST_DATA + ". Used embeddings: "
+                + wordEmbeddingsData);
+        sb.append(LF);
+        for (Map.Entry<String, Map<String, EvaluationResult>> entry : full.entrySet()) {
+            appendAccuracyComparison(sb, entry.getKey(), entry.getValue(),
+                    fast.get(entry.getKey()));
+        }
+        sb.append(LF);
+        sb.append(String.format("Duration: full %.1f s, fast %.1f s", fullMillis / 1000.0,
+                fastMillis / 1000.0));
+        sb.append(LF);
+
+        String report = sb.toString();
+        System.out.println(report);
+        GeneralPipelineUtils.writeToFileWithFileName(report,
+                GeneralPipelineUtils.getEvaluationResultsFilePath(), REPORT_FILE_NAME);
+    }
+
+    /**
+     * Runs the pipeline on the test data and its subsets.
+     *
+     * @return the results by dataset name and measure method name
+     */
+    private static Map<String, Map<String, EvaluationResult>> run(String wordEmbeddingsData,
+            boolean lowercase)
+        throws Exception
+    {
+        Pipeline.runPipeline(Pipeline.TEST_DATA, wordEmbeddingsData, lowercase, "none",
+                Pipeline.SUBSET_DATA);
+        Map<String, Map<String, EvaluationResult>> results =
+                new LinkedHashMap<String, Map<String, EvaluationResult>>();
+        results.put(ALL_DATA, Evaluator.getLastEvaluationResults());
+        results.putAll(Evaluator.getLastSubsetEvaluationResults());
+        return results;
+    }
+
+    private static void appendAccuracyComparison(StringBuilder sb, String dataName,
+            Map<String, EvaluationResult> full, Map<String, EvaluationResult> fast)
+    {
+        sb.append(LF);
+        sb.append(String.format("%40s%12s%12s%10s", dataName, "Full", "Fast", "Delta"));
+        sb.append(LF);
+        for (Map.Entry<String, EvaluationResult> entry : full.entrySet()) {
+            float fullAccuracy = entry.getValue().getAccuracy();
+            EvaluationResult fastResult = fast != null ? fast.get(entry.getKey()) : null;
+            if (fastResult == null) {
+                sb.append(String.format("%40s%11.2f%%%12s%10s", entry.getKey(), fullAccuracy,
+                        "-", "-"));
+            }
+            else {
+                sb.append(String.format("%40s%11.2f%%%11.2f%%%+9.2f%%", entry.getKey(),
+                        fullAccuracy, fastResult.getAccuracy(),
+                        fastResult.getAccuracy() - fullAccuracy));
+            }
+            sb.append(LF);
+        }
+    }
+}
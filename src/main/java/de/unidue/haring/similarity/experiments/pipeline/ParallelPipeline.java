@@ -0,0 +1,360 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCreationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.unidue.haring.similarity.experiments.utils.StageTimings;
+
+/**
+ * Runs a pipeline with several worker threads, similar to
+ * {@link org.apache.uima.fit.pipeline.SimplePipeline}.
+ * <p>
+ * The pipeline is split into a processing part and a consumer part. Each worker thread runs its
+ * own instance of the processing part, analysis engines are not shared between threads. The
+ * consumer part runs on a single thread and receives the CASes in the order of the reader, so its
+ * results are the same as for a sequential run. CASes are taken from a pool of two CASes per
+ * worker, which bounds the memory used for CASes in flight.
+ * <p>
+ * CASes whose affinity view has the same text as the preceding CAS are processed by the same
+ * worker, so the questions of an instance stay together and a {@code SharedInstanceAnnotator} of
+ * the worker analyzes the instance only once.
+ * <p>
+ * The time the reader takes for each CAS is recorded as the {@value #READER_STAGE} stage of the
+ * {@link StageTimings}.
+ */
+public class ParallelPipeline
+{
+    public static final String READER_STAGE = "reader";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPipeline.class);
+
+    private static final int CASES_PER_WORKER = 2;
+
+    // Marks the end of the input of a worker
+    private static final Item END = new Item(-1, null);
+
+    private final CollectionReader reader;
+    private final List<AnalysisEngine> workers;
+    private final AnalysisEngine consumer;
+    private final String affinityView;
+
+    private final List<BlockingQueue<Item>> workerQueues;
+    private final BlockingQueue<CAS> freeCases;
+
+    // Processed CASes by sequence number, guarded by itself
+    private final Map<Long, CAS> processed = new HashMap<Long, CAS>();
+    private long total = -1;
+    private Throwable failure;
+
+    /**
+     * Runs the pipeline.
+     *
+     * @param reader
+     *            the collection reader, called from the calling thread only and closed at the end
+     * @param processing
+     *            the analysis engines run by the workers
+     * @param consumer
+     *            the analysis engines run on the CASes in reader order, e.g. the Evaluator
+     * @param threads
+     *            the number of worker threads
+     * @param affinityView
+     *            the view deciding which CASes are processed by the same worker, may be null
+     * @throws UIMAException
+     *             if an analysis engine cannot be created or fails
+     * @throws IOException
+     *             if the reader fails
+     */
+    public static void runPipeline(CollectionReader reader, AnalysisEngineDescription processing,
+            AnalysisEngineDescription consumer, int threads, String affinityView)
+        throws UIMAException, IOException
+    {
+        try (AnalysisSession session = new AnalysisSession(1)) {
+            runPipeline(session, reader, processing, consumer, threads, affinityView);
+        }
+    }
+
+    /**
+     * Runs the pipeline with the worker engines of a session, which are kept for later runs. The
+     * consumer is created for this run only, as it usually holds the results of the run.
+     *
+     * @param session
+     *            provides the engines of the workers
+     * @param reader
+     *            the collection reader, called from the calling thread only and closed at the end
+     * @param processing
+     *            the analysis engines run by the workers
+     * @param consumer
+     *            the analysis engines run on the CASes in reader order, e.g. the Evaluator
+     * @param threads
+     *            the number of worker threads
+     * @param affinityView
+     *            the view deciding which CASes are processed by the same worker, may be null
+     * @throws UIMAException
+     *             if an analysis engine cannot be created or fails
+     * @throws IOException
+     *             if the reader fails
+     */
+    public static void runPipeline(AnalysisSession session, CollectionReader reader,
+            AnalysisEngineDescription processing, AnalysisEngineDescription consumer, int threads,
+            String affinityView)
+        throws UIMAException, IOException
+    {
+        AnalysisEngine consumerEngine = null;
+        try {
+            List<AnalysisEngine> workers = session.getEngines(processing, Math.max(1, threads));
+            consumerEngine = createEngine(consumer);
+            new ParallelPipeline(reader, workers, consumerEngine, affinityView).run();
+        }
+        finally {
+            if (consumerEngine != null) {
+                consumerEngine.destroy();
+            }
+            reader.close();
+        }
+    }
+
+    private ParallelPipeline(CollectionReader reader, List<AnalysisEngine> workers,
+            AnalysisEngine consumer, String affinityView)
+        throws UIMAException
+    {
+        this.reader = reader;
+        this.workers = workers;
+        this.consumer = consumer;
+        this.affinityView = affinityView;
+
+        workerQueues = new ArrayList<BlockingQueue<Item>>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            workerQueues.add(new LinkedBlockingQueue<Item>());
+        }
+
+        List<MetaDataObject> metaData = new ArrayList<MetaDataObject>();
+        metaData.add(reader.getProcessingResourceMetaData());
+        metaData.add(workers.get(0).getAnalysisEngineMetaData());
+        metaData.add(consumer.getAnalysisEngineMetaData());
+        int poolSize = workers.size() * CASES_PER_WORKER;
+        freeCases = new ArrayBlockingQueue<CAS>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            freeCases.add(CasCreationUtils.createCas(metaData));
+        }
+    }
+
+    private void run() throws UIMAException, IOException
+    {
+        long startTime = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>(workers.size() + 1);
+        for (int i = 0; i < workers.size(); i++) {
+            AnalysisEngine worker = workers.get(i);
+            BlockingQueue<Item> queue = workerQueues.get(i);
+            threads.add(new Thread(() -> work(worker, queue), "pipeline-worker-" + i));
+        }
+        threads.add(new Thread(this::consume, "pipeline-consumer"));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        long count = 0;
+        try {
+            int worker = 0;
+            String lastKey = null;
+            while (getFailure() == null && reader.hasNext()) {
+                CAS cas = takeFreeCas();
+                if (cas == null) {
+                    break;
+                }
+                long start = System.nanoTime();
+                reader.getNext(cas);
+                StageTimings.record(READER_STAGE, System.nanoTime() - start);
+
+                String key = getAffinityKey(cas);
+                if (count > 0 && (key == null || !key.equals(lastKey))) {
+                    worker = (worker + 1) % workers.size();
+                }
+                lastKey = key;
+                workerQueues.get(worker).put(new Item(count++, cas));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+        catch (UIMAException | IOException | RuntimeException e) {
+            fail(e);
+        }
+        finally {
+            for (BlockingQueue<Item> queue : workerQueues) {
+                queue.add(END);
+            }
+            synchronized (processed) {
+                total = count;
+                processed.notifyAll();
+            }
+            for (Thread thread : threads) {
+                joinUninterruptibly(thread);
+            }
+        }
+
+        Throwable cause = getFailure();
+        if (cause instanceof UIMAException) {
+            throw (UIMAException) cause;
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause != null) {
+            throw new IllegalStateException("Pipeline failed", cause);
+        }
+
+        for (AnalysisEngine worker : workers) {
+            worker.collectionProcessComplete();
+        }
+        consumer.collectionProcessComplete();
+        LOG.info(String.format("Processed %d CASes with %d workers in %.1f s", count,
+                workers.size(), (System.nanoTime() - startTime) / 1e9));
+    }
+
+    private CAS takeFreeCas() throws InterruptedException
+    {
+        while (getFailure() == null) {
+            CAS cas = freeCases.poll(100, TimeUnit.MILLISECONDS);
+            if (cas != null) {
+                return cas;
+            }
+        }
+        return null;
+    }
+
+    private String getAffinityKey(CAS cas)
+    {
+        if (affinityView == null) {
+            return null;
+        }
+        try {
+            return cas.getView(affinityView).getDocumentText();
+        }
+        catch (CASRuntimeException e) {
+            // The reader did not create the view
+            return null;
+        }
+    }
+
+    private void work(AnalysisEngine worker, BlockingQueue<Item> queue)
+    {
+        try {
+            while (true) {
+                Item item = queue.take();
+                if (item == END) {
+                    return;
+                }
+                if (getFailure() != null) {
+                    continue;
+                }
+                worker.process(item.cas);
+                synchronized (processed) {
+                    processed.put(item.sequence, item.cas);
+                    processed.notifyAll();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+        catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void consume()
+    {
+        try {
+            for (long next = 0;; next++) {
+                CAS cas;
+                synchronized (processed) {
+                    while (failure == null && !processed.containsKey(next)
+                            && (total < 0 || next < total)) {
+                        processed.wait();
+                    }
+                    if (failure != null || (total >= 0 && next >= total)) {
+                        return;
+                    }
+                    cas = processed.remove(next);
+                }
+                consumer.process(cas);
+                cas.reset();
+                freeCases.add(cas);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+        catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Throwable e)
+    {
+        synchronized (processed) {
+            if (failure == null) {
+                failure = e;
+            }
+            processed.notifyAll();
+        }
+    }
+
+    private Throwable getFailure()
+    {
+        synchronized (processed) {
+            return failure;
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread)
+    {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Item
+    {
+        private final long sequence;
+        private final CAS cas;
+
+        private Item(long sequence, CAS cas)
+        {
+            this.sequence = sequence;
+            this.cas = cas;
+        }
+    }
+}
@@ -3,32 +3,116 @@ package de.unidue.haring.similarity.experiments.pipeline;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.fit.factory.AggregateBuilder;
-import org.apache.uima.fit.pipeline.SimplePipeline;
+import org.apache.uima.resource.ResourceInitializationException;
 
 import de.tudarmstadt.ukp.dkpro.core.languagetool.LanguageToolLemmatizer;
 import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpPosTagger;
 import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordSegmenter;
 import de.tudarmstadt.ukp.dkpro.core.stopwordremover.StopWordRemover;
 import de.unidue.haring.similarity.experiments.customAnnotators.CustomMalletEmbeddingsAnnotator;
+import de.unidue.haring.similarity.experiments.customAnnotators.FastAnalyzer;
+import de.unidue.haring.similarity.experiments.customAnnotators.MemoizedLemmatizer;
+import de.unidue.haring.similarity.experiments.customAnnotators.MemoizedPosTagger;
+import de.unidue.haring.similarity.experiments.customAnnotators.MultiViewAnnotator;
+import de.unidue.haring.similarity.experiments.customAnnotators.SharedInstanceAnnotator;
+import de.unidue.haring.similarity.experiments.customAnnotators.StageTimer;
+import de.unidue.haring.similarity.experiments.utils.AnnotatedCorpusCache;
+import de.unidue.haring.similarity.experiments.utils.AnnotatedCorpusWriter;
 import de.unidue.haring.similarity.experiments.utils.CustomXmlReader;
 import de.unidue.haring.similarity.experiments.utils.Evaluator;
 import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+import de.unidue.haring.similarity.experiments.utils.StageTimings;
 
 public class Pipeline
 {
     static Map<String, Boolean> embeddingsMap;
 
+    // True evaluates the subsets as filters over one run on the full test data, otherwise the
+    // pipeline runs on each subset file
+    private static final boolean SUBSETS_AS_FILTERS = true;
+
+    // True runs the NLP stages once over the joined question and answer texts, see
+    // MultiViewAnnotator, otherwise each stage runs on each of the three views
+    private static final boolean BATCH_VIEWS = true;
+
+    // True puts the POS tagger and the lemmatizer behind caches shared across documents and runs,
+    // see MemoizedPosTagger and MemoizedLemmatizer
+    private static final boolean MEMOIZE_NLP = true;
+
+    // True records the latency of each stage and measure on each CAS and writes them to a report
+    // next to the evaluation results, see StageTimings
+    private static final boolean TIME_STAGES = true;
+
+    // The names of the timed NLP stages, in the order of the analysis chain
+    private static final String[] NLP_STAGE_NAMES = { "segmenter", "stopwords", "pos",
+            "lemmatizer" };
+
+    // True replaces the NLP stages by the approximate FastAnalyzer, see FastModeReport for its
+    // effect on the accuracy
+    private static boolean fastMode = Boolean.getBoolean("pipeline.fast");
+
+    // True scores the cosine measures of all problems at once after the last CAS, see
+    // BatchScoringReport for the throughput of both paths
+    private static boolean batchScoring = Boolean.getBoolean("pipeline.batchScoring");
+
+    // The part of the dataset read by the following runs, see ShardedEvaluation
+    private static int shardIndex = 0;
+    private static int shardCount = 1;
+
+    // The number of threads running the NLP stages, see ParallelPipeline
+    private static final int THREADS = Integer.getInteger("pipeline.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    // The number of threads applying the deferrable measures, and the number of problems they are
+    // applied to together, see Evaluator#PARAM_MEASURE_THREADS
+    private static final int MEASURE_THREADS = Integer.getInteger("pipeline.measureThreads", 1);
+    private static final int MEASURE_BATCH_SIZE = Integer.getInteger("pipeline.measureBatchSize",
+            1);
+
+    // Keeps the engines of the NLP stages and of the last embeddings stage between runs
+    private static final AnalysisSession SESSION = new AnalysisSession(2);
+
+    static final String TEST_DATA = "src/test/resources/data/test-data.xml";
+    static final String[] SUBSET_DATA = {
+            "src/test/resources/data/testdata_subset_conceptual.xml",
+            "src/test/resources/data/testdata_subset_yes_no.xml",
+            "src/test/resources/data/testdata_subset_without_yes_no.xml",
+            "src/test/resources/data/testdata_subset_how.xml",
+            "src/test/resources/data/testdata_subset_what_which.xml",
+            "src/test/resources/data/testdata_subset_when_how.xml",
+            "src/test/resources/data/testdata_subset_when.xml",
+            "src/test/resources/data/testdata_subset_where.xml",
+            "src/test/resources/data/testdata_subset_who_whose.xml",
+            "src/test/resources/data/testdata_subset_why.xml" };
+
     public static void main(String[] args) throws Exception
+    {
+        try {
+            runAll();
+        }
+        finally {
+            destroyEngines();
+        }
+    }
+
+    private static void runAll() throws Exception
     {
         GeneralPipelineUtils.deleteEvaluationResultsFileIfExists();
         prepareEmbeddingsMap();
 
+        if (SUBSETS_AS_FILTERS) {
+            runPipeline(TEST_DATA, embeddingsMap, "none", SUBSET_DATA);
+            return;
+        }
+
         // Run pipeline for test data all
         runPipelineWithAllEmbeddings("src/test/resources/data/test-data.xml");
         // Run pipeline for conceptual data
@@ -55,17 +139,119 @@ public class Pipeline
 
     private static void runPipelineWithAllEmbeddings(String testDataFilePath) throws Exception
     {
-        for (Map.Entry<String, Boolean> entry : embeddingsMap.entrySet()) {
-            runPipeline(testDataFilePath, entry.getKey(), entry.getValue().booleanValue());
-        }
+        runPipeline(testDataFilePath, embeddingsMap, "none", new String[0]);
+    }
+
+    /**
+     * Runs the pipeline on a dataset with one embeddings model.
+     * 
+     * @param testDataFilePath
+     *            the dataset
+     * @param wordEmbeddingsData
+     *            the text-format embeddings model
+     * @param paramLowerCase
+     *            whether the model is caseless
+     * @param quantization
+     *            the quantization applied to the model after loading, see
+     *            {@link CustomMalletEmbeddingsAnnotator#PARAM_QUANTIZATION}
+     * @throws Exception
+     *             if the pipeline fails
+     */
+    static void runPipeline(String testDataFilePath, String wordEmbeddingsData,
+            boolean paramLowerCase, String quantization)
+        throws Exception
+    {
+        runPipeline(testDataFilePath, wordEmbeddingsData, paramLowerCase, quantization,
+                new String[0]);
+    }
+
+    /**
+     * Runs the pipeline on a dataset with one embeddings model and evaluates the results on the
+     * full dataset and on each of the given subsets.
+     * 
+     * @param testDataFilePath
+     *            the dataset
+     * @param wordEmbeddingsData
+     *            the text-format embeddings model
+     * @param paramLowerCase
+     *            whether the model is caseless
+     * @param quantization
+     *            the quantization applied to the model after loading, see
+     *            {@link CustomMalletEmbeddingsAnnotator#PARAM_QUANTIZATION}
+     * @param subsetFilePaths
+     *            subset files of the dataset, see {@link Evaluator#PARAM_SUBSET_FILES}
+     * @throws Exception
+     *             if the pipeline fails
+     */
+    static void runPipeline(String testDataFilePath, String wordEmbeddingsData,
+            boolean paramLowerCase, String quantization, String[] subsetFilePaths)
+        throws Exception
+    {
+        runPipeline(testDataFilePath,
+                Collections.singletonMap(wordEmbeddingsData, Boolean.valueOf(paramLowerCase)),
+                quantization, subsetFilePaths);
+    }
+
+    /**
+     * Runs the pipeline on a dataset and scores every measure with each of the given embeddings
+     * models. The NLP stages run once; the tokens are annotated with the vectors of all models,
+     * see {@link CustomMalletEmbeddingsAnnotator#PARAM_MODEL_ID}, and the Evaluator reports the
+     * results of each model.
+     * 
+     * @param testDataFilePath
+     *            the dataset
+     * @param embeddings
+     *            the text-format embeddings models and whether each model is caseless
+     * @param quantization
+     *            the quantization applied to the models after loading, see
+     *            {@link CustomMalletEmbeddingsAnnotator#PARAM_QUANTIZATION}
+     * @param subsetFilePaths
+     *            subset files of the dataset, see {@link Evaluator#PARAM_SUBSET_FILES}
+     * @throws Exception
+     *             if the pipeline fails
+     */
+    static void runPipeline(String testDataFilePath, Map<String, Boolean> embeddings,
+            String quantization, String[] subsetFilePaths)
+        throws Exception
+    {
+        runPipeline(testDataFilePath, embeddings, quantization, subsetFilePaths, null, null);
     }
 
-    private static void runPipeline(String testDataFilePath, String wordEmbeddingsData,
-            boolean paramLowerCase)
+    /**
+     * Runs the pipeline on a dataset and scores the given measures with each of the given
+     * embeddings models.
+     * 
+     * @param testDataFilePath
+     *            the dataset
+     * @param embeddings
+     *            the text-format embeddings models and whether each model is caseless
+     * @param quantization
+     *            the quantization applied to the models after loading, see
+     *            {@link CustomMalletEmbeddingsAnnotator#PARAM_QUANTIZATION}
+     * @param subsetFilePaths
+     *            subset files of the dataset, see {@link Evaluator#PARAM_SUBSET_FILES}
+     * @param measureMethods
+     *            the measure methods to evaluate, all if null, see
+     *            {@link Evaluator#PARAM_MEASURE_METHODS}
+     * @param vocabularyDataFilePaths
+     *            the datasets whose vocabulary restricts the loaded embeddings, only the dataset
+     *            itself if null. Runs with the same datasets share the loaded models, see
+     *            {@link CustomMalletEmbeddingsAnnotator#PARAM_VOCABULARY_DATASET}
+     * @throws Exception
+     *             if the pipeline fails
+     */
+    static void runPipeline(String testDataFilePath, Map<String, Boolean> embeddings,
+            String quantization, String[] subsetFilePaths, String[] measureMethods,
+            String[] vocabularyDataFilePaths)
         throws Exception
     {
-        CollectionReader xmlReader = createReader(CustomXmlReader.class, "TestDataInputFile",
-                testDataFilePath);
+        if (vocabularyDataFilePaths == null) {
+            vocabularyDataFilePaths = new String[] { testDataFilePath };
+        }
+        String[] wordEmbeddingsData = embeddings.keySet().toArray(new String[0]);
+        // A single model keeps the plain WordEmbedding annotations
+        boolean multipleModels = wordEmbeddingsData.length > 1;
+
         GeneralPipelineUtils.setUsedWordsFileName("test_words.txt");
 
         AnalysisEngineDescription stanfordSegmenter = createEngineDescription(
@@ -73,7 +259,6 @@ public class Pipeline
                 StanfordSegmenter.PARAM_BOUNDARY_TOKEN_REGEX, "#",
                 StanfordSegmenter.PARAM_TOKEN_REGEXES_TO_DISCARD, "#");
         AggregateBuilder builder = new AggregateBuilder();
-        builder.add(stanfordSegmenter, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.INSTANCE_VIEW);
         builder.add(stanfordSegmenter, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.QUESTION_VIEW);
         builder.add(stanfordSegmenter, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_1);
         builder.add(stanfordSegmenter, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_2);
@@ -81,8 +266,10 @@ public class Pipeline
 
         AnalysisEngineDescription posTagger = createEngineDescription(OpenNlpPosTagger.class,
                 OpenNlpPosTagger.PARAM_LANGUAGE, "en");
+        if (MEMOIZE_NLP) {
+            posTagger = MemoizedPosTagger.createDescription(posTagger);
+        }
         builder = new AggregateBuilder();
-        builder.add(posTagger, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.INSTANCE_VIEW);
         builder.add(posTagger, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.QUESTION_VIEW);
         builder.add(posTagger, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_1);
         builder.add(posTagger, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_2);
@@ -91,7 +278,6 @@ public class Pipeline
         AnalysisEngineDescription stopWordRemover = createEngineDescription(StopWordRemover.class,
                 StopWordRemover.PARAM_MODEL_LOCATION, "src/test/resources/stopwords_en.txt");
         builder = new AggregateBuilder();
-        builder.add(stopWordRemover, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.INSTANCE_VIEW);
         builder.add(stopWordRemover, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.QUESTION_VIEW);
         builder.add(stopWordRemover, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_1);
         builder.add(stopWordRemover, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_2);
@@ -99,39 +285,233 @@ public class Pipeline
 
         AnalysisEngineDescription lemmatizer = createEngineDescription(
                 LanguageToolLemmatizer.class);
+        if (MEMOIZE_NLP) {
+            lemmatizer = MemoizedLemmatizer.createDescription(lemmatizer);
+        }
         builder = new AggregateBuilder();
-        builder.add(lemmatizer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.INSTANCE_VIEW);
         builder.add(lemmatizer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.QUESTION_VIEW);
         builder.add(lemmatizer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_1);
         builder.add(lemmatizer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_2);
         AnalysisEngineDescription aggr_lem = builder.createAggregateDescription();
 
-        AnalysisEngineDescription malletEmbeddingsAnnotator = createEngineDescription(
-                CustomMalletEmbeddingsAnnotator.class,
-                CustomMalletEmbeddingsAnnotator.PARAM_MODEL_LOCATION, wordEmbeddingsData,
-                CustomMalletEmbeddingsAnnotator.PARAM_MODEL_IS_BINARY, false,
-                CustomMalletEmbeddingsAnnotator.PARAM_ANNOTATE_UNKNOWN_TOKENS, true,
-                CustomMalletEmbeddingsAnnotator.PARAM_LOWERCASE, paramLowerCase,
-                CustomMalletEmbeddingsAnnotator.PARAM_ONLY_LOAD_USED_TOKENS, true);
         builder = new AggregateBuilder();
-        builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
-                CustomXmlReader.INSTANCE_VIEW);
-        builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
-                CustomXmlReader.QUESTION_VIEW);
-        builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
-                CustomXmlReader.ANSWER_VIEW_1);
-        builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
-                CustomXmlReader.ANSWER_VIEW_2);
+        for (String model : wordEmbeddingsData) {
+            AnalysisEngineDescription malletEmbeddingsAnnotator = createEngineDescription(
+                    CustomMalletEmbeddingsAnnotator.class,
+                    CustomMalletEmbeddingsAnnotator.PARAM_MODEL_LOCATION, model,
+                    CustomMalletEmbeddingsAnnotator.PARAM_MODEL_IS_BINARY, false,
+                    CustomMalletEmbeddingsAnnotator.PARAM_ANNOTATE_UNKNOWN_TOKENS, true,
+                    CustomMalletEmbeddingsAnnotator.PARAM_LOWERCASE,
+                    embeddings.get(model).booleanValue(),
+                    CustomMalletEmbeddingsAnnotator.PARAM_ONLY_LOAD_USED_TOKENS, true,
+                    CustomMalletEmbeddingsAnnotator.PARAM_VOCABULARY_DATASET,
+                    vocabularyDataFilePaths,
+                    CustomMalletEmbeddingsAnnotator.PARAM_QUANTIZATION, quantization,
+                    CustomMalletEmbeddingsAnnotator.PARAM_MODEL_ID,
+                    multipleModels ? model : null);
+            builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
+                    CustomXmlReader.INSTANCE_VIEW);
+            builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
+                    CustomXmlReader.QUESTION_VIEW);
+            builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
+                    CustomXmlReader.ANSWER_VIEW_1);
+            builder.add(malletEmbeddingsAnnotator, CustomXmlReader.INITIAL_VIEW,
+                    CustomXmlReader.ANSWER_VIEW_2);
+        }
         AnalysisEngineDescription aggr_mal = builder.createAggregateDescription();
 
+        AnalysisEngineDescription[] nlpStages = { stanfordSegmenter, stopWordRemover, posTagger,
+                lemmatizer };
+        AnalysisEngineDescription[] viewStages = { aggr_seg, aggr_stpwords, aggr_pos, aggr_lem };
+        AnalysisEngineDescription aggr_instance = createInstanceStage(nlpStages, null);
+        AnalysisEngineDescription aggr_views = createViewsStage(nlpStages, viewStages, null);
+
+        if (fastMode) {
+            AnalysisEngineDescription fastAnalyzer = createEngineDescription(FastAnalyzer.class,
+                    FastAnalyzer.PARAM_STOPWORDS_LOCATION, "src/test/resources/stopwords_en.txt");
+            builder = new AggregateBuilder();
+            builder.add(fastAnalyzer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.INSTANCE_VIEW);
+            aggr_instance = builder.createAggregateDescription();
+            builder = new AggregateBuilder();
+            builder.add(fastAnalyzer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.QUESTION_VIEW);
+            builder.add(fastAnalyzer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_1);
+            builder.add(fastAnalyzer, CustomXmlReader.INITIAL_VIEW, CustomXmlReader.ANSWER_VIEW_2);
+            aggr_views = builder.createAggregateDescription();
+        }
+
         AnalysisEngineDescription evaluator = createEngineDescription(Evaluator.class,
                 Evaluator.PARAM_TEST_DATA_FILE_PATH, testDataFilePath,
-                Evaluator.PARAM_USED_WORD_EMBEDDINGS, wordEmbeddingsData);
+                Evaluator.PARAM_USED_WORD_EMBEDDINGS, wordEmbeddingsData,
+                Evaluator.PARAM_EMBEDDINGS_MODEL_IDS, multipleModels ? wordEmbeddingsData : null,
+                Evaluator.PARAM_SUBSET_FILES, subsetFilePaths,
+                Evaluator.PARAM_MEASURE_METHODS, measureMethods,
+                Evaluator.PARAM_BATCH_SCORING, batchScoring,
+                Evaluator.PARAM_MEASURE_THREADS, MEASURE_THREADS,
+                Evaluator.PARAM_MEASURE_BATCH_SIZE, MEASURE_BATCH_SIZE);
 
         System.out.println("Running Pipeline on data: " + testDataFilePath + ". Used embeddings: "
-                + wordEmbeddingsData);
-        SimplePipeline.runPipeline(xmlReader, aggr_seg, aggr_stpwords, aggr_pos, aggr_lem, aggr_mal,
-                evaluator);
+                + String.join(", ", wordEmbeddingsData));
+
+        // The NLP stages do not depend on the embeddings, so their output is cached per dataset
+        // and configuration and replayed by the reader in later runs
+        File annotatedCorpus = AnnotatedCorpusCache.getCacheFile(new File(testDataFilePath),
+                shardCount > 1 ? "shard" + shardIndex + "of" + shardCount : null, aggr_instance,
+                aggr_views);
+
+        // The timers are added after the cache key is computed, so they do not change it
+        if (TIME_STAGES) {
+            if (!fastMode) {
+                aggr_instance = createInstanceStage(nlpStages, "instance/");
+                aggr_views = createViewsStage(nlpStages, viewStages, "views/");
+            }
+            aggr_instance = StageTimer.createDescription("instance", aggr_instance);
+            aggr_views = StageTimer.createDescription("views", aggr_views);
+            aggr_mal = StageTimer.createDescription("embeddings", aggr_mal);
+            evaluator = StageTimer.createDescription("evaluator", evaluator);
+        }
+        StageTimings.reset();
+        long start = System.nanoTime();
+        if (annotatedCorpus.exists()) {
+            System.out.println("Replaying annotated corpus: " + annotatedCorpus);
+            CollectionReader xmlReader = createReader(CustomXmlReader.class,
+                    CustomXmlReader.PARAM_TEST_DATA_INPUT_FILE, testDataFilePath,
+                    CustomXmlReader.PARAM_SHARD_COUNT, shardCount,
+                    CustomXmlReader.PARAM_SHARD_INDEX, shardIndex,
+                    CustomXmlReader.PARAM_ANNOTATED_CORPUS, annotatedCorpus);
+            ParallelPipeline.runPipeline(SESSION, xmlReader, aggr_mal, evaluator, THREADS,
+                    CustomXmlReader.INSTANCE_VIEW);
+        }
+        else {
+            CollectionReader xmlReader = createReader(CustomXmlReader.class,
+                    CustomXmlReader.PARAM_TEST_DATA_INPUT_FILE, testDataFilePath,
+                    CustomXmlReader.PARAM_SHARD_COUNT, shardCount,
+                    CustomXmlReader.PARAM_SHARD_INDEX, shardIndex);
+            AnalysisEngineDescription corpusWriter = createEngineDescription(
+                    AnnotatedCorpusWriter.class, AnnotatedCorpusWriter.PARAM_CACHE_FILE,
+                    annotatedCorpus);
+            if (TIME_STAGES) {
+                corpusWriter = StageTimer.createDescription("corpus writer", corpusWriter);
+            }
+            // The cache is written in reader order, so the embeddings annotator follows it on the
+            // consumer thread
+            ParallelPipeline.runPipeline(SESSION, xmlReader,
+                    createEngineDescription(aggr_instance, aggr_views),
+                    createEngineDescription(corpusWriter, aggr_mal, evaluator), THREADS,
+                    CustomXmlReader.INSTANCE_VIEW);
+        }
+        if (TIME_STAGES) {
+            StageTimings.writeReport(testDataFilePath, wordEmbeddingsData,
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Creates the NLP stage of the instance view. The instance text is shared by all questions on
+     * an instance, so it is analyzed only once per instance, see {@link SharedInstanceAnnotator}.
+     * 
+     * @param nlpStages
+     *            the NLP stages, in the order of {@link #NLP_STAGE_NAMES}
+     * @param timingPrefix
+     *            if not null, each NLP stage is timed under this prefix and its name
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the description cannot be created
+     */
+    private static AnalysisEngineDescription createInstanceStage(
+            AnalysisEngineDescription[] nlpStages, String timingPrefix)
+        throws ResourceInitializationException
+    {
+        AggregateBuilder builder = new AggregateBuilder();
+        builder.add(SharedInstanceAnnotator.createDescription(createChain(nlpStages, timingPrefix)),
+                CustomXmlReader.INITIAL_VIEW, CustomXmlReader.INSTANCE_VIEW);
+        return builder.createAggregateDescription();
+    }
+
+    /**
+     * Creates the NLP stage of the question and answer views.
+     * 
+     * @param nlpStages
+     *            the NLP stages, in the order of {@link #NLP_STAGE_NAMES}
+     * @param viewStages
+     *            the NLP stages mapped onto each of the views, used unless {@link #BATCH_VIEWS}
+     * @param timingPrefix
+     *            if not null, each NLP stage is timed under this prefix and its name
+     * @return the description
+     * @throws ResourceInitializationException
+     *             if the description cannot be created
+     */
+    private static AnalysisEngineDescription createViewsStage(
+            AnalysisEngineDescription[] nlpStages, AnalysisEngineDescription[] viewStages,
+            String timingPrefix)
+        throws ResourceInitializationException
+    {
+        if (BATCH_VIEWS) {
+            return MultiViewAnnotator.createDescription(createChain(nlpStages, timingPrefix),
+                    CustomXmlReader.QUESTION_VIEW, CustomXmlReader.ANSWER_VIEW_1,
+                    CustomXmlReader.ANSWER_VIEW_2);
+        }
+        return createChain(viewStages, timingPrefix);
+    }
+
+    private static AnalysisEngineDescription createChain(AnalysisEngineDescription[] stages,
+            String timingPrefix)
+        throws ResourceInitializationException
+    {
+        if (timingPrefix == null) {
+            return createEngineDescription(stages);
+        }
+        AnalysisEngineDescription[] timedStages = new AnalysisEngineDescription[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            timedStages[i] = StageTimer.createDescription(timingPrefix + NLP_STAGE_NAMES[i],
+                    stages[i]);
+        }
+        return createEngineDescription(timedStages);
+    }
+
+    /**
+     * Destroys the analysis engines kept between runs.
+     */
+    static void destroyEngines()
+    {
+        SESSION.close();
+    }
+
+    /**
+     * Selects the NLP stages of the following runs.
+     * 
+     * @param fast
+     *            true for the approximate {@link FastAnalyzer}, false for the full chain
+     */
+    static void setFastMode(boolean fast)
+    {
+        fastMode = fast;
+    }
+
+    /**
+     * Selects how the cosine measures of the following runs are scored.
+     * 
+     * @param batch
+     *            true to score all problems at once, see {@link Evaluator#PARAM_BATCH_SCORING},
+     *            false to score each problem when it is processed
+     */
+    static void setBatchScoring(boolean batch)
+    {
+        batchScoring = batch;
+    }
+
+    /**
+     * Restricts the following runs to a shard of the dataset, see
+     * {@link CustomXmlReader#PARAM_SHARD_COUNT}.
+     * 
+     * @param index
+     *            the shard, from 0 to count - 1
+     * @param count
+     *            the number of shards, 1 to read the whole dataset
+     */
+    static void setShard(int index, int count)
+    {
+        shardIndex = index;
+        shardCount = count;
     }
 
     private static void prepareEmbeddingsMap()
@@ -0,0 +1,186 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.unidue.haring.similarity.experiments.customAnnotators.CustomTextFormatVectorizer;
+import de.unidue.haring.similarity.experiments.customAnnotators.QuantizedVectorizer;
+import de.unidue.haring.similarity.experiments.customAnnotators.QuantizedVectorizer.Encoding;
+import de.unidue.haring.similarity.experiments.types.EvaluationResult;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblemFactory;
+import de.unidue.haring.similarity.experiments.utils.Evaluator;
+import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+
+/**
+ * Compares the evaluation results of a float32 embeddings model with its fp16 and int8 quantized
+ * versions.
+ * <p>
+ * The pipeline is run once per encoding. For each measure method the report lists the accuracy,
+ * the difference to float32 and the share of problems for which the same answer is predicted as
+ * with float32. Additionally the memory of the vectors and the reconstruction error of the
+ * quantized rows are reported. The report is written to {@value #REPORT_FILE_NAME} in the results
+ * directory.
+ * <p>
+ * Note that the RandomSimilarityMeasure and the SimpleJWeb1TMeasure do not depend on the
+ * embeddings; differences of the random measure are noise.
+ */
+public class QuantizationReport
+{
+    public static final String REPORT_FILE_NAME = "quantization_report";
+
+    private static final String DEFAULT_TEST_DATA = "src/test/resources/data/test-data.xml";
+    private static final String DEFAULT_EMBEDDINGS =
+            "src/test/resources/embeddings/glove.6B.50d.txt";
+
+    private static final String[] QUANTIZATIONS = { "none", "fp16", "int8" };
+
+    private static final String LF = System.getProperty("line.separator");
+
+    /**
+     * @param args
+     *            optionally the dataset, the text-format embeddings model and {@code false} if
+     *            the model is not caseless
+     * @throws Exception
+     *             if a pipeline run fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String testDataFilePath = args.length > 0 ? args[0] : DEFAULT_TEST_DATA;
+        String wordEmbeddingsData = args.length > 1 ? args[1] : DEFAULT_EMBEDDINGS;
+        boolean lowercase = args.length > 2 ? Boolean.parseBoolean(args[2]) : true;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Quantization report for data: " + testDataFilePath + ". Used embeddings: "
+                + wordEmbeddingsData);
+        sb.append(LF);
+        appendVectorStatistics(sb, new File(wordEmbeddingsData));
+
+        Map<String, Map<String, EvaluationResult>> results =
+                new LinkedHashMap<String, Map<String, EvaluationResult>>(QUANTIZATIONS.length * 2);
+        Map<String, Map<String, int[]>> predictions = new LinkedHashMap<String, Map<String, int[]>>(
+                QUANTIZATIONS.length * 2);
+        try {
+            for (String quantization : QUANTIZATIONS) {
+                Pipeline.runPipeline(testDataFilePath, wordEmbeddingsData, lowercase, quantization);
+                results.put(quantization, Evaluator.getLastEvaluationResults());
+                predictions.put(quantization,
+                        getPredictions(Evaluator.getLastEvaluationResults()));
+            }
+        }
+        finally {
+            Pipeline.destroyEngines();
+        }
+        appendAccuracyComparison(sb, results, predictions);
+
+        String report = sb.toString();
+        System.out.println(report);
+        GeneralPipelineUtils.writeToFileWithFileName(report,
+                GeneralPipelineUtils.getEvaluationResultsFilePath(), REPORT_FILE_NAME);
+    }
+
+    /**
+     * Quantizes the full model and compares each row with the float32 original.
+     */
+    private static void appendVectorStatistics(StringBuilder sb, File embeddingsFile)
+        throws Exception
+    {
+        CustomTextFormatVectorizer original = (CustomTextFormatVectorizer)
+                CustomTextFormatVectorizer.load(embeddingsFile);
+        int size = original.size();
+        int dimensions = original.dimensions();
+        float[] matrix = original.matrix();
+
+        sb.append(LF);
+        sb.append(String.format("%10s%16s%20s%20s%20s", "Encoding", "Vectors (MB)",
+                "Max abs. error", "Mean cosine", "Min cosine"));
+        sb.append(LF);
+        sb.append(String.format("%10s%16.1f%20s%20s%20s", "float32",
+                (double) matrix.length * Float.BYTES / (1 << 20), "-", "-", "-"));
+        sb.append(LF);
+
+        float[] row = new float[dimensions];
+        float[] dequantized = new float[dimensions];
+        for (Encoding encoding : Encoding.values()) {
+            QuantizedVectorizer quantized = QuantizedVectorizer.quantize(original, encoding);
+            double maxError = 0;
+            double cosineSum = 0;
+            double minCosine = 1;
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(matrix, original.offset(i), row, 0, dimensions);
+                quantized.row(i, dequantized, 0);
+                for (int d = 0; d < dimensions; d++) {
+                    maxError = Math.max(maxError, Math.abs(row[d] - dequantized[d]));
+                }
+                double cosine = quantized.cosine(i, row);
+                cosineSum += cosine;
+                minCosine = Math.min(minCosine, cosine);
+            }
+            sb.append(String.format("%10s%16.1f%20.6f%20.6f%20.6f", encoding.name().toLowerCase(),
+                    (double) matrix.length * encoding.getBytesPerValue() / (1 << 20), maxError,
+                    cosineSum / size, minCosine));
+            sb.append(LF);
+        }
+    }
+
+    private static void appendAccuracyComparison(StringBuilder sb,
+            Map<String, Map<String, EvaluationResult>> results,
+            Map<String, Map<String, int[]>> predictions)
+    {
+        Map<String, EvaluationResult> baseline = results.get("none");
+        Map<String, int[]> baselinePredictions = predictions.get("none");
+
+        sb.append(LF);
+        sb.append(String.format("%40s%12s", "Method", "float32"));
+        for (int i = 1; i < QUANTIZATIONS.length; i++) {
+            sb.append(String.format("%12s%10s%12s", QUANTIZATIONS[i], "Delta", "Agreement"));
+        }
+        sb.append(LF);
+
+        for (Map.Entry<String, EvaluationResult> entry : baseline.entrySet()) {
+            String measureMethod = entry.getKey();
+            float baselineAccuracy = entry.getValue().getAccuracy();
+            sb.append(String.format("%40s%11.2f%%", measureMethod, baselineAccuracy));
+            for (int i = 1; i < QUANTIZATIONS.length; i++) {
+                EvaluationResult result = results.get(QUANTIZATIONS[i]).get(measureMethod);
+                float agreement = getAgreement(baselinePredictions.get(measureMethod),
+                        predictions.get(QUANTIZATIONS[i]).get(measureMethod));
+                sb.append(String.format("%11.2f%%%+9.2f%%%11.2f%%", result.getAccuracy(),
+                        result.getAccuracy() - baselineAccuracy, agreement));
+            }
+            sb.append(LF);
+        }
+    }
+
+    /**
+     * Gets the predicted answer of every measure for every problem of the last run.
+     */
+    private static Map<String, int[]> getPredictions(Map<String, EvaluationResult> results)
+    {
+        List<QuestionAnswerProblem> problems = new ArrayList<QuestionAnswerProblem>(
+                QuestionAnswerProblemFactory.getQuestionAnswerProblems().values());
+        Map<String, int[]> predictions = new LinkedHashMap<String, int[]>();
+        for (String measureMethod : results.keySet()) {
+            int[] predicted = new int[problems.size()];
+            for (int i = 0; i < predicted.length; i++) {
+                predicted[i] = Evaluator.getPredictedAnswer(measureMethod, problems.get(i));
+            }
+            predictions.put(measureMethod, predicted);
+        }
+        return predictions;
+    }
+
+    private static float getAgreement(int[] baseline, int[] other)
+    {
+        int agreeing = 0;
+        for (int i = 0; i < baseline.length; i++) {
+            if (baseline[i] == other[i]) {
+                agreeing++;
+            }
+        }
+        return ((float) agreeing / (float) baseline.length) * 100;
+    }
+}
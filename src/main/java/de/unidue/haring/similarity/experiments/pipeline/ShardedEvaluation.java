@@ -0,0 +1,169 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.unidue.haring.similarity.experiments.types.EvaluationResult;
+import de.unidue.haring.similarity.experiments.utils.CustomXmlReader;
+import de.unidue.haring.similarity.experiments.utils.Evaluator;
+import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+import de.unidue.haring.similarity.experiments.utils.PartialEvaluationResults;
+
+/**
+ * Evaluates a dataset in several worker JVMs, each on one shard of the instances.
+ * <p>
+ * The dataset is split by instance id, see {@link CustomXmlReader#PARAM_SHARD_COUNT}, so the
+ * questions of an instance stay in one shard. Each worker runs the pipeline with its own
+ * Evaluator on its shard and writes the counts of the full dataset and of each subset to a
+ * {@link PartialEvaluationResults} file. When all workers are done, the coordinator adds up the
+ * counts and writes the results to the evaluation results file in the same format as a run in a
+ * single JVM. The workers write their own evaluation results and logs to
+ * {@value #OUTPUT_DIRECTORY_NAME} in the results directory.
+ * <p>
+ * Every worker loads the embeddings model, so the heap of the current JVM is used for each of
+ * them; the processors are shared among the workers.
+ */
+public class ShardedEvaluation
+{
+    public static final String OUTPUT_DIRECTORY_NAME = "shards";
+
+    private static final String WORKER_ARGUMENT = "--shard";
+
+    private static final String DEFAULT_EMBEDDINGS =
+            "src/test/resources/embeddings/glove.6B.50d.txt";
+
+    /**
+     * @param args
+     *            the number of shards, optionally followed by the dataset, the text-format
+     *            embeddings model, {@code false} if the model is not caseless and the subset
+     *            files of the dataset. By default the test data and its subsets are evaluated.
+     * @throws Exception
+     *             if a worker fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length >= 7 && WORKER_ARGUMENT.equals(args[0])) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), args[3], args[4],
+                    Boolean.parseBoolean(args[5]), new File(args[6]),
+                    Arrays.copyOfRange(args, 7, args.length));
+            return;
+        }
+        if (args.length == 0) {
+            throw new IllegalArgumentException(
+                    "Usage: ShardedEvaluation shards [dataset [embeddings [lowercase [subset...]]]]");
+        }
+        int shards = Integer.parseInt(args[0]);
+        String testDataFilePath = args.length > 1 ? args[1] : Pipeline.TEST_DATA;
+        String wordEmbeddingsData = args.length > 2 ? args[2] : DEFAULT_EMBEDDINGS;
+        boolean lowercase = args.length > 3 ? Boolean.parseBoolean(args[3]) : true;
+        String[] subsetFilePaths = args.length > 4 ? Arrays.copyOfRange(args, 4, args.length)
+                : args.length > 1 ? new String[0] : Pipeline.SUBSET_DATA;
+        runShards(shards, testDataFilePath, wordEmbeddingsData, lowercase, subsetFilePaths);
+    }
+
+    private static void runShards(int shards, String testDataFilePath,
+            String wordEmbeddingsData, boolean lowercase, String[] subsetFilePaths)
+        throws Exception
+    {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive.");
+        }
+        File outputDirectory = new File(GeneralPipelineUtils.getEvaluationResultsFilePath(),
+                OUTPUT_DIRECTORY_NAME);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + outputDirectory);
+        }
+        GeneralPipelineUtils.deleteEvaluationResultsFileIfExists();
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / shards);
+        File[] resultsFiles = new File[shards];
+        List<Future<Integer>> exitCodes = new ArrayList<Future<Integer>>(shards);
+        ExecutorService executor = Executors.newFixedThreadPool(shards);
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < shards; i++) {
+                String name = "shard-" + i;
+                resultsFiles[i] = new File(outputDirectory, name + ".tsv");
+                Files.deleteIfExists(resultsFiles[i].toPath());
+                Files.deleteIfExists(new File(outputDirectory, name + ".txt").toPath());
+
+                Map<String, String> properties = new LinkedHashMap<String, String>();
+                properties.put("pipeline.threads", String.valueOf(threads));
+                properties.put(GeneralPipelineUtils.EVALUATION_RESULTS_FILE_PROPERTY,
+                        OUTPUT_DIRECTORY_NAME + "/" + name + ".txt");
+                List<String> workerArgs = new ArrayList<String>();
+                Collections.addAll(workerArgs, WORKER_ARGUMENT, String.valueOf(i),
+                        String.valueOf(shards), testDataFilePath, wordEmbeddingsData,
+                        String.valueOf(lowercase), resultsFiles[i].getPath());
+                Collections.addAll(workerArgs, subsetFilePaths);
+                ChildJvm worker = new ChildJvm(0, properties, ShardedEvaluation.class,
+                        workerArgs.toArray(new String[0]));
+                File logFile = new File(outputDirectory, name + ".log");
+                exitCodes.add(executor.submit(() -> worker.run(logFile)));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        List<Integer> failed = new ArrayList<Integer>();
+        for (int i = 0; i < shards; i++) {
+            if (exitCodes.get(i).get() != 0) {
+                failed.add(i);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException(
+                    "Failed shards: " + failed + ", see the logs in " + outputDirectory);
+        }
+
+        Map<String, Map<String, Map<String, EvaluationResult>>> results = PartialEvaluationResults
+                .read(resultsFiles);
+        for (Map.Entry<String, Map<String, Map<String, EvaluationResult>>> data : results
+                .entrySet()) {
+            for (Map.Entry<String, Map<String, EvaluationResult>> embeddings : data.getValue()
+                    .entrySet()) {
+                Evaluator.printEvaluationResults(data.getKey(), embeddings.getKey(),
+                        embeddings.getValue());
+            }
+        }
+        System.out.println(String.format("Evaluated %d shards in %.1f s", shards,
+                (System.currentTimeMillis() - start) / 1000.0));
+    }
+
+    /**
+     * Runs the pipeline on one shard and writes the counts of the full dataset and of each subset,
+     * labeled like in the evaluation results file.
+     */
+    private static void runWorker(int shard, int shards, String testDataFilePath,
+            String wordEmbeddingsData, boolean lowercase, File resultsFile,
+            String[] subsetFilePaths)
+        throws Exception
+    {
+        Pipeline.setShard(shard, shards);
+        try {
+            Pipeline.runPipeline(testDataFilePath, wordEmbeddingsData, lowercase, "none",
+                    subsetFilePaths);
+        }
+        finally {
+            Pipeline.destroyEngines();
+        }
+        PartialEvaluationResults.append(resultsFile, testDataFilePath, wordEmbeddingsData,
+                Evaluator.getLastEvaluationResults());
+        for (Map.Entry<String, Map<String, EvaluationResult>> subset : Evaluator
+                .getLastSubsetEvaluationResults().entrySet()) {
+            PartialEvaluationResults.append(resultsFile, subset.getKey(), wordEmbeddingsData,
+                    subset.getValue());
+        }
+    }
+}
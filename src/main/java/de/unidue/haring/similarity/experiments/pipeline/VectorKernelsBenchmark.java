@@ -0,0 +1,174 @@
+package de.unidue.haring.similarity.experiments.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.unidue.haring.similarity.experiments.measures.JavaVectorKernels;
+import de.unidue.haring.similarity.experiments.measures.Nd4jVectorKernels;
+import de.unidue.haring.similarity.experiments.measures.VectorKernels;
+import de.unidue.haring.similarity.experiments.utils.GeneralPipelineUtils;
+
+/**
+ * Compares the {@link VectorKernels} implementations on random embeddings of 50, 100, 200 and 300
+ * dimensions.
+ * <p>
+ * For each size the report lists the time per call of averaging the embeddings of a story, of a
+ * dot product, a norm and a cosine similarity of two vectors and of a cosine similarity of two
+ * rows of a matrix. Each operation is warmed up before it is measured, and the results are added
+ * up, so the JIT compiler cannot drop the calls. Kernels which cannot be used in this JVM, e.g.
+ * ND4J without a backend, are reported as unavailable. The report is written to
+ * {@value #REPORT_FILE_NAME} in the results directory.
+ */
+public class VectorKernelsBenchmark
+{
+    public static final String REPORT_FILE_NAME = "vector_kernels_benchmark";
+
+    private static final int[] DIMENSIONS = { 50, 100, 200, 300 };
+
+    // Tokens with embeddings of a typical story, and rows of the matrix
+    private static final int STORY_TOKENS = 120;
+    private static final int ROWS = 4096;
+
+    // Calls between two reads of the clock
+    private static final int BATCH = 256;
+
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long MEASUREMENT_NANOS = 1_000_000_000L;
+
+    private static final String[] OPERATIONS = { "mean", "dot", "norm", "cosine", "row cosine" };
+
+    private static final String LF = System.getProperty("line.separator");
+
+    // Receives the results of all calls
+    private static double sink;
+
+    /**
+     * @param args
+     *            optionally the kernels to compare, by default all
+     */
+    public static void main(String[] args)
+    {
+        String[] names = args.length > 0 ? args
+                : new String[] { JavaVectorKernels.NAME, Nd4jVectorKernels.NAME };
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Vector kernels benchmark, ns per call");
+        sb.append(LF);
+        sb.append(String.format("%-8s%-12s", "Dims", "Kernels"));
+        for (String operation : OPERATIONS) {
+            sb.append(String.format("%14s", operation));
+        }
+        sb.append(LF);
+
+        for (int dimensions : DIMENSIONS) {
+            Random random = new Random(dimensions);
+            List<float[]> story = new ArrayList<float[]>(STORY_TOKENS);
+            for (int i = 0; i < STORY_TOKENS; i++) {
+                story.add(randomVector(random, dimensions));
+            }
+            float[] matrix = randomVector(random, ROWS * dimensions);
+
+            for (String name : names) {
+                sb.append(String.format("%-8d%-12s", dimensions, name));
+                try {
+                    VectorKernels kernels = VectorKernels.get(name);
+                    for (String operation : OPERATIONS) {
+                        sb.append(String.format("%14.1f",
+                                measure(kernels, operation, story, matrix, dimensions)));
+                    }
+                }
+                catch (RuntimeException | LinkageError e) {
+                    sb.append("  unavailable: " + e);
+                }
+                sb.append(LF);
+            }
+        }
+
+        String report = sb.toString();
+        System.out.println(report);
+        System.out.println("(checksum " + sink + ")");
+        GeneralPipelineUtils.writeToFileWithFileName(report,
+                GeneralPipelineUtils.getEvaluationResultsFilePath(), REPORT_FILE_NAME);
+    }
+
+    private static float[] randomVector(Random random, int length)
+    {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * Runs an operation for the warmup time and then for the measurement time.
+     *
+     * @return the mean time per call in nanoseconds
+     */
+    private static double measure(VectorKernels kernels, String operation, List<float[]> story,
+            float[] matrix, int dimensions)
+    {
+        run(kernels, operation, story, matrix, dimensions, WARMUP_NANOS);
+        long start = System.nanoTime();
+        long calls = run(kernels, operation, story, matrix, dimensions, MEASUREMENT_NANOS);
+        return (double) (System.nanoTime() - start) / calls;
+    }
+
+    /**
+     * Calls an operation in batches of {@value #BATCH} until the given time has passed. Each
+     * operation has its own loop, so the loops only differ in the kernel call.
+     *
+     * @return the number of calls
+     */
+    private static long run(VectorKernels kernels, String operation, List<float[]> story,
+            float[] matrix, int dimensions, long nanos)
+    {
+        float[] a = story.get(0);
+        float[] b = story.get(1);
+        int rows = matrix.length / dimensions;
+        long calls = 0;
+        double result = 0;
+        long end = System.nanoTime() + nanos;
+        switch (operation) {
+        case "mean":
+            for (; System.nanoTime() < end; calls += BATCH) {
+                for (int i = 0; i < BATCH; i++) {
+                    result += kernels.mean(story)[i % dimensions];
+                }
+            }
+            break;
+        case "dot":
+            for (; System.nanoTime() < end; calls += BATCH) {
+                for (int i = 0; i < BATCH; i++) {
+                    result += kernels.dot(a, b);
+                }
+            }
+            break;
+        case "norm":
+            for (; System.nanoTime() < end; calls += BATCH) {
+                for (int i = 0; i < BATCH; i++) {
+                    result += kernels.norm(a);
+                }
+            }
+            break;
+        case "cosine":
+            for (; System.nanoTime() < end; calls += BATCH) {
+                for (int i = 0; i < BATCH; i++) {
+                    result += kernels.cosine(a, b);
+                }
+            }
+            break;
+        default:
+            for (; System.nanoTime() < end; calls += BATCH) {
+                for (int i = 0; i < BATCH; i++) {
+                    int row = i % (rows - 1);
+                    result += kernels.cosine(matrix, row * dimensions, matrix,
+                            (row + 1) * dimensions, dimensions);
+                }
+            }
+        }
+        sink += result;
+        return calls;
+    }
+}
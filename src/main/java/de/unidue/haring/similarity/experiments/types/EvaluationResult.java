@@ -0,0 +1,142 @@
+package de.unidue.haring.similarity.experiments.types;
+
+/**
+ * Counts of answered and correctly answered questions of one measure method, in total and split
+ * by question type.
+ */
+public class EvaluationResult
+{
+    // the used measure method
+    private String measureMethod;
+
+    private int totalAnsweredQuestions;
+    private int correctAnsweredQuestions;
+    private int totalCommonsenseQuestions;
+    private int correctCommonsenseQuestions;
+    private int totalTextQuestions;
+    private int correctTextQuestions;
+
+    public EvaluationResult(String measureMethod)
+    {
+        this.measureMethod = measureMethod;
+    }
+
+    /**
+     * Creates a result from counts, e.g. partial counts written by another process.
+     */
+    public EvaluationResult(String measureMethod, int totalAnsweredQuestions,
+            int correctAnsweredQuestions, int totalCommonsenseQuestions,
+            int correctCommonsenseQuestions, int totalTextQuestions, int correctTextQuestions)
+    {
+        this.measureMethod = measureMethod;
+        this.totalAnsweredQuestions = totalAnsweredQuestions;
+        this.correctAnsweredQuestions = correctAnsweredQuestions;
+        this.totalCommonsenseQuestions = totalCommonsenseQuestions;
+        this.correctCommonsenseQuestions = correctCommonsenseQuestions;
+        this.totalTextQuestions = totalTextQuestions;
+        this.correctTextQuestions = correctTextQuestions;
+    }
+
+    /**
+     * Counts an answered question.
+     *
+     * @param questionType
+     *            the type of the question, "commonsense" or "text"
+     * @param isCorrect
+     *            whether the prediction was correct
+     */
+    public void addAnsweredQuestion(String questionType, boolean isCorrect)
+    {
+        totalAnsweredQuestions++;
+        if (questionType.equals("commonsense")) {
+            totalCommonsenseQuestions++;
+        }
+        else {
+            totalTextQuestions++;
+        }
+
+        if (isCorrect && questionType.equals("commonsense")) {
+            correctAnsweredQuestions++;
+            correctCommonsenseQuestions++;
+        }
+        else if (isCorrect && questionType.equals("text")) {
+            correctAnsweredQuestions++;
+            correctTextQuestions++;
+        }
+    }
+
+    /**
+     * Adds the counts of another result of the same measure method.
+     *
+     * @param other
+     *            the other result
+     */
+    public void add(EvaluationResult other)
+    {
+        totalAnsweredQuestions += other.totalAnsweredQuestions;
+        correctAnsweredQuestions += other.correctAnsweredQuestions;
+        totalCommonsenseQuestions += other.totalCommonsenseQuestions;
+        correctCommonsenseQuestions += other.correctCommonsenseQuestions;
+        totalTextQuestions += other.totalTextQuestions;
+        correctTextQuestions += other.correctTextQuestions;
+    }
+
+    public String getMeasureMethod()
+    {
+        return measureMethod;
+    }
+
+    public int getTotalAnsweredQuestions()
+    {
+        return totalAnsweredQuestions;
+    }
+
+    public int getCorrectAnsweredQuestions()
+    {
+        return correctAnsweredQuestions;
+    }
+
+    public int getTotalCommonsenseQuestions()
+    {
+        return totalCommonsenseQuestions;
+    }
+
+    public int getCorrectCommonsenseQuestions()
+    {
+        return correctCommonsenseQuestions;
+    }
+
+    public int getTotalTextQuestions()
+    {
+        return totalTextQuestions;
+    }
+
+    public int getCorrectTextQuestions()
+    {
+        return correctTextQuestions;
+    }
+
+    /**
+     * @return the accuracy in percent
+     */
+    public float getAccuracy()
+    {
+        return ((float) correctAnsweredQuestions / (float) totalAnsweredQuestions) * 100;
+    }
+
+    /**
+     * @return the accuracy on commonsense questions in percent
+     */
+    public float getCommonsenseAccuracy()
+    {
+        return ((float) correctCommonsenseQuestions / (float) totalCommonsenseQuestions) * 100;
+    }
+
+    /**
+     * @return the accuracy on text questions in percent
+     */
+    public float getTextAccuracy()
+    {
+        return ((float) correctTextQuestions / (float) totalTextQuestions) * 100;
+    }
+}
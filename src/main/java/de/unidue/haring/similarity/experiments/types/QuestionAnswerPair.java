@@ -1,8 +1,8 @@
 package de.unidue.haring.similarity.experiments.types;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
@@ -26,12 +26,18 @@ public class QuestionAnswerPair
     private List<float[]> questionLemmasEmbeddingAnnotationsList;
     private List<float[]> answerLemmasEmbeddingAnnotationsList;
 
+    // The normalized averages of the embeddings above, null if there are none
+    private float[] instanceCentroid;
+    private float[] questionCentroid;
+    private float[] answerCentroid;
+
+    // Concurrent, as measures applied on several threads set their values
     private Map<String, SemanticRelatedness> semanticRelatednessList;
 
     public QuestionAnswerPair(String questionText, String answerText, String instanceText,
             int questionId, int answerId, int goldAnswerId, boolean isCorrectAnswer)
     {
-        semanticRelatednessList = new HashMap<String, SemanticRelatedness>();
+        semanticRelatednessList = new ConcurrentHashMap<String, SemanticRelatedness>();
         this.questionText = questionText;
         this.answerText = answerText;
         question = new Question(instanceText, questionText, questionId, goldAnswerId);
@@ -121,6 +127,36 @@ public class QuestionAnswerPair
         this.instanceLemmasEmbeddingAnnotationsList = instanceLemmasEmbeddingAnnotationsList;
     }
 
+    public float[] getInstanceCentroid()
+    {
+        return instanceCentroid;
+    }
+
+    public void setInstanceCentroid(float[] instanceCentroid)
+    {
+        this.instanceCentroid = instanceCentroid;
+    }
+
+    public float[] getQuestionCentroid()
+    {
+        return questionCentroid;
+    }
+
+    public void setQuestionCentroid(float[] questionCentroid)
+    {
+        this.questionCentroid = questionCentroid;
+    }
+
+    public float[] getAnswerCentroid()
+    {
+        return answerCentroid;
+    }
+
+    public void setAnswerCentroid(float[] answerCentroid)
+    {
+        this.answerCentroid = answerCentroid;
+    }
+
     public Map<String, SemanticRelatedness> getRelatednessMap()
     {
         return semanticRelatednessList;
@@ -1,9 +1,13 @@
 package de.unidue.haring.similarity.experiments.types;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class QuestionAnswerProblem
 {
     private String instanceText;
     private String questionText;
+    private int instanceId;
     private int questionId;
     private int questionAnswerProblemId;
 
@@ -16,6 +20,10 @@ public class QuestionAnswerProblem
     private QuestionAnswerPair pair1;
     private QuestionAnswerPair pair2;
 
+    // The features computed for the measures, by feature key. Synchronized, as measures applied
+    // on other threads read them.
+    private Map<String, Object> featureValues;
+
     public QuestionAnswerProblem()
     {
 
@@ -40,6 +48,16 @@ public class QuestionAnswerProblem
         this.instanceText = instanceText;
     }
 
+    public int getInstanceId()
+    {
+        return instanceId;
+    }
+
+    public void setInstanceId(int instanceId)
+    {
+        this.instanceId = instanceId;
+    }
+
     public int getQuestionId()
     {
         return questionId;
@@ -129,4 +147,28 @@ public class QuestionAnswerProblem
     {
         this.questionType = questionType;
     }
+
+    /**
+     * Whether a feature has been computed for this problem, possibly as null.
+     * 
+     * @param featureKey
+     *            the key of the feature
+     */
+    public synchronized boolean hasFeatureValue(String featureKey)
+    {
+        return featureValues != null && featureValues.containsKey(featureKey);
+    }
+
+    public synchronized Object getFeatureValue(String featureKey)
+    {
+        return featureValues != null ? featureValues.get(featureKey) : null;
+    }
+
+    public synchronized void setFeatureValue(String featureKey, Object value)
+    {
+        if (featureValues == null) {
+            featureValues = new HashMap<String, Object>();
+        }
+        featureValues.put(featureKey, value);
+    }
 }
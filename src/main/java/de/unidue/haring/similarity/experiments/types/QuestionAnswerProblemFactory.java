@@ -1,16 +1,17 @@
 package de.unidue.haring.similarity.experiments.types;
 
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 
 public class QuestionAnswerProblemFactory
 {
-    private static Map<Integer, QuestionAnswerProblem> qList;
+    private static volatile Map<Integer, QuestionAnswerProblem> qList;
 
     public QuestionAnswerProblemFactory()
     {
-        qList = new TreeMap<Integer, QuestionAnswerProblem>();
+        // Sorted like a TreeMap, but readable while the reader adds problems
+        qList = new ConcurrentSkipListMap<Integer, QuestionAnswerProblem>();
     }
 
     /**
@@ -0,0 +1,146 @@
+
+
+/* First created by JCasGen Tue Oct 13 10:42:05 CEST 2026 */
+package de.unidue.haring.similarity.experiments.uima_types;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.JCasRegistry;
+import org.apache.uima.jcas.cas.TOP_Type;
+
+import org.apache.uima.jcas.cas.FloatArray;
+import org.apache.uima.jcas.tcas.Annotation;
+
+
+/** A word embedding of a token from one of several embeddings models annotated in the same pass.
+ * Updated by JCasGen Tue Oct 13 10:42:07 CEST 2026
+ * XML source: src/main/resources/desc/type/ModelWordEmbedding.xml
+ * @generated */
+public class ModelWordEmbedding extends Annotation {
+  /** @generated
+   * @ordered
+   */
+  @SuppressWarnings ("hiding")
+  public final static int typeIndexID = JCasRegistry.register(ModelWordEmbedding.class);
+  /** @generated
+   * @ordered
+   */
+  @SuppressWarnings ("hiding")
+  public final static int type = typeIndexID;
+  /** @generated
+   * @return index of the type
+   */
+  @Override
+  public              int getTypeIndexID() {return typeIndexID;}
+
+  /** Never called.  Disable default constructor
+   * @generated */
+  protected ModelWordEmbedding() {/* intentionally empty block */}
+
+  /** Internal - constructor used by generator
+   * @generated
+   * @param addr low level Feature Structure reference
+   * @param type the type of this Feature Structure
+   */
+  public ModelWordEmbedding(int addr, TOP_Type type) {
+    super(addr, type);
+    readObject();
+  }
+
+  /** @generated
+   * @param jcas JCas to which this Feature Structure belongs
+   */
+  public ModelWordEmbedding(JCas jcas) {
+    super(jcas);
+    readObject();
+  }
+
+  /** @generated
+   * @param jcas JCas to which this Feature Structure belongs
+   * @param begin offset to the begin spot in the SofA
+   * @param end offset to the end spot in the SofA
+  */
+  public ModelWordEmbedding(JCas jcas, int begin, int end) {
+    super(jcas);
+    setBegin(begin);
+    setEnd(end);
+    readObject();
+  }
+
+  /**
+   * <!-- begin-user-doc -->
+   * Write your own initialization here
+   * <!-- end-user-doc -->
+   *
+   * @generated modifiable
+   */
+  private void readObject() {/*default - does nothing empty block */}
+
+
+
+  //*--------------*
+  //* Feature: modelId
+
+  /** getter for modelId - gets Identifies the embeddings model the vector is taken from.
+   * @generated
+   * @return value of the feature
+   */
+  public String getModelId() {
+    if (ModelWordEmbedding_Type.featOkTst && ((ModelWordEmbedding_Type)jcasType).casFeat_modelId == null)
+      jcasType.jcas.throwFeatMissing("modelId", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    return jcasType.ll_cas.ll_getStringValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_modelId);}
+
+  /** setter for modelId - sets Identifies the embeddings model the vector is taken from.
+   * @generated
+   * @param v value to set into the feature
+   */
+  public void setModelId(String v) {
+    if (ModelWordEmbedding_Type.featOkTst && ((ModelWordEmbedding_Type)jcasType).casFeat_modelId == null)
+      jcasType.jcas.throwFeatMissing("modelId", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    jcasType.ll_cas.ll_setStringValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_modelId, v);}
+
+
+  //*--------------*
+  //* Feature: wordEmbedding
+
+  /** getter for wordEmbedding - gets
+   * @generated
+   * @return value of the feature
+   */
+  public FloatArray getWordEmbedding() {
+    if (ModelWordEmbedding_Type.featOkTst && ((ModelWordEmbedding_Type)jcasType).casFeat_wordEmbedding == null)
+      jcasType.jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    return (FloatArray)(jcasType.ll_cas.ll_getFSForRef(jcasType.ll_cas.ll_getRefValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_wordEmbedding)));}
+
+  /** setter for wordEmbedding - sets
+   * @generated
+   * @param v value to set into the feature
+   */
+  public void setWordEmbedding(FloatArray v) {
+    if (ModelWordEmbedding_Type.featOkTst && ((ModelWordEmbedding_Type)jcasType).casFeat_wordEmbedding == null)
+      jcasType.jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    jcasType.ll_cas.ll_setRefValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_wordEmbedding, jcasType.ll_cas.ll_getFSRef(v));}
+
+  /** indexed getter for wordEmbedding - gets an indexed value -
+   * @generated
+   * @param i index in the array to get
+   * @return value of the element at index i
+   */
+  public float getWordEmbedding(int i) {
+    if (ModelWordEmbedding_Type.featOkTst && ((ModelWordEmbedding_Type)jcasType).casFeat_wordEmbedding == null)
+      jcasType.jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    jcasType.jcas.checkArrayBounds(jcasType.ll_cas.ll_getRefValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_wordEmbedding), i);
+    return jcasType.ll_cas.ll_getFloatArrayValue(jcasType.ll_cas.ll_getRefValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_wordEmbedding), i);}
+
+  /** indexed setter for wordEmbedding - sets an indexed value -
+   * @generated
+   * @param i index in the array to set
+   * @param v value to set into the array
+   */
+  public void setWordEmbedding(int i, float v) {
+    if (ModelWordEmbedding_Type.featOkTst && ((ModelWordEmbedding_Type)jcasType).casFeat_wordEmbedding == null)
+      jcasType.jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    jcasType.jcas.checkArrayBounds(jcasType.ll_cas.ll_getRefValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_wordEmbedding), i);
+    jcasType.ll_cas.ll_setFloatArrayValue(jcasType.ll_cas.ll_getRefValue(addr, ((ModelWordEmbedding_Type)jcasType).casFeatCode_wordEmbedding), i, v);}
+  }
+
+
@@ -0,0 +1,124 @@
+
+/* First created by JCasGen Tue Oct 13 10:42:05 CEST 2026 */
+package de.unidue.haring.similarity.experiments.uima_types;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.JCasRegistry;
+import org.apache.uima.cas.impl.TypeImpl;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.FeatureImpl;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.jcas.tcas.Annotation_Type;
+
+/** A word embedding of a token from one of several embeddings models annotated in the same pass.
+ * Updated by JCasGen Tue Oct 13 10:42:07 CEST 2026
+ * @generated */
+public class ModelWordEmbedding_Type extends Annotation_Type {
+  /** @generated */
+  @SuppressWarnings ("hiding")
+  public final static int typeIndexID = ModelWordEmbedding.typeIndexID;
+  /** @generated
+     @modifiable */
+  @SuppressWarnings ("hiding")
+  public final static boolean featOkTst = JCasRegistry.getFeatOkTst("de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+
+  /** @generated */
+  final Feature casFeat_modelId;
+  /** @generated */
+  final int     casFeatCode_modelId;
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @return the feature value
+   */
+  public String getModelId(int addr) {
+        if (featOkTst && casFeat_modelId == null)
+      jcas.throwFeatMissing("modelId", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    return ll_cas.ll_getStringValue(addr, casFeatCode_modelId);
+  }
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @param v value to set
+   */
+  public void setModelId(int addr, String v) {
+        if (featOkTst && casFeat_modelId == null)
+      jcas.throwFeatMissing("modelId", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    ll_cas.ll_setStringValue(addr, casFeatCode_modelId, v);}
+
+
+
+  /** @generated */
+  final Feature casFeat_wordEmbedding;
+  /** @generated */
+  final int     casFeatCode_wordEmbedding;
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @return the feature value
+   */
+  public int getWordEmbedding(int addr) {
+        if (featOkTst && casFeat_wordEmbedding == null)
+      jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    return ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding);
+  }
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @param v value to set
+   */
+  public void setWordEmbedding(int addr, int v) {
+        if (featOkTst && casFeat_wordEmbedding == null)
+      jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    ll_cas.ll_setRefValue(addr, casFeatCode_wordEmbedding, v);}
+
+   /** @generated
+   * @param addr low level Feature Structure reference
+   * @param i index of item in the array
+   * @return value at index i in the array
+   */
+  public float getWordEmbedding(int addr, int i) {
+        if (featOkTst && casFeat_wordEmbedding == null)
+      jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    if (lowLevelTypeChecks)
+      return ll_cas.ll_getFloatArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding), i, true);
+    jcas.checkArrayBounds(ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding), i);
+  return ll_cas.ll_getFloatArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding), i);
+  }
+
+  /** @generated
+   * @param addr low level Feature Structure reference
+   * @param i index of item in the array
+   * @param v value to set
+   */
+  public void setWordEmbedding(int addr, int i, float v) {
+        if (featOkTst && casFeat_wordEmbedding == null)
+      jcas.throwFeatMissing("wordEmbedding", "de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding");
+    if (lowLevelTypeChecks)
+      ll_cas.ll_setFloatArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding), i, v, true);
+    jcas.checkArrayBounds(ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding), i);
+    ll_cas.ll_setFloatArrayValue(ll_cas.ll_getRefValue(addr, casFeatCode_wordEmbedding), i, v);
+  }
+
+
+
+
+  /** initialize variables to correspond with Cas Type and Features
+	 * @generated
+	 * @param jcas JCas
+	 * @param casType Type
+	 */
+  public ModelWordEmbedding_Type(JCas jcas, Type casType) {
+    super(jcas, casType);
+    casImpl.getFSClassRegistry().addGeneratorForType((TypeImpl)this.casType, getFSGenerator());
+
+
+    casFeat_modelId = jcas.getRequiredFeatureDE(casType, "modelId", "uima.cas.String", featOkTst);
+    casFeatCode_modelId  = (null == casFeat_modelId) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_modelId).getCode();
+
+
+    casFeat_wordEmbedding = jcas.getRequiredFeatureDE(casType, "wordEmbedding", "uima.cas.FloatArray", featOkTst);
+    casFeatCode_wordEmbedding  = (null == casFeat_wordEmbedding) ? JCas.INVALID_FEATURE_CODE : ((FeatureImpl)casFeat_wordEmbedding).getCode();
+
+  }
+}
+
+
+
+
@@ -0,0 +1,306 @@
+package de.unidue.haring.similarity.experiments.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.CasIOUtils;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.TypeSystemUtil;
+import org.apache.uima.util.XMLInputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * A file of annotated CASes, written after the NLP stages of a pipeline run and replayed by
+ * {@link CustomXmlReader} in later runs.
+ * <p>
+ * The file name is derived from the SHA-256 hash of the dataset file and of the descriptions of
+ * the analysis engines which produced the annotations, so any change to the dataset or to the
+ * configuration of the NLP stages leads to a new cache file. The file holds the type system of
+ * the writing pipeline followed by the CASes in reader order, each in the compressed binary
+ * format. Files are written to a temporary file first and only moved into place after the whole
+ * collection has been processed.
+ * <p>
+ * Cache files are stored in {@value #DEFAULT_CACHE_DIRECTORY}, unless the system property
+ * {@value #CACHE_DIRECTORY_PROPERTY} names another directory.
+ */
+public class AnnotatedCorpusCache
+{
+    public static final String CACHE_DIRECTORY_PROPERTY = "annotated.corpus.cache.dir";
+    public static final String DEFAULT_CACHE_DIRECTORY = "target/annotated_corpus_cache";
+
+    private static final int MAGIC = 0x41434341;
+    private static final int VERSION = 1;
+
+    private static final String CACHE_EXTENSION = ".cas";
+
+    /**
+     * Gets the cache file for a dataset processed by the given analysis engines. The file does not
+     * exist unless a complete run has written it.
+     *
+     * @param datasetFile
+     *            the dataset XML file
+     * @param stages
+     *            the analysis engines which run before the cache is written
+     * @return the cache file
+     * @throws IOException
+     *             if the dataset cannot be read or a description cannot be serialized
+     */
+    public static File getCacheFile(File datasetFile, AnalysisEngineDescription... stages)
+        throws IOException
+    {
+        return getCacheFile(datasetFile, null, stages);
+    }
+
+    /**
+     * Gets the cache file for a part of a dataset processed by the given analysis engines.
+     *
+     * @param datasetFile
+     *            the dataset XML file
+     * @param part
+     *            names the part of the dataset the reader emits, e.g. a shard, or null for the
+     *            whole dataset
+     * @param stages
+     *            the analysis engines which run before the cache is written
+     * @return the cache file
+     * @throws IOException
+     *             if the dataset cannot be read or a description cannot be serialized
+     */
+    public static File getCacheFile(File datasetFile, String part,
+            AnalysisEngineDescription... stages)
+        throws IOException
+    {
+        MessageDigest digest = newDigest();
+        digest.update(String.valueOf(VERSION).getBytes(StandardCharsets.US_ASCII));
+        digest.update(Files.readAllBytes(datasetFile.toPath()));
+        for (AnalysisEngineDescription stage : stages) {
+            StringWriter xml = new StringWriter();
+            try {
+                stage.toXML(xml);
+            }
+            catch (SAXException e) {
+                throw new IOException(e);
+            }
+            digest.update(xml.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        String datasetName = datasetFile.getName().replaceFirst("\\.[^.]*$", "");
+        if (part != null) {
+            datasetName += "-" + part;
+        }
+        String key = toHex(digest.digest()).substring(0, 16);
+        return new File(System.getProperty(CACHE_DIRECTORY_PROPERTY, DEFAULT_CACHE_DIRECTORY),
+                datasetName + "-" + key + CACHE_EXTENSION);
+    }
+
+    /**
+     * Writes CASes to a temporary file, which replaces the cache file on {@link #commit()}.
+     */
+    public static class Writer
+        implements Closeable
+    {
+        private final File cacheFile;
+        private final File tempFile;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+        private boolean hasHeader = false;
+        private int count = 0;
+
+        public Writer(File cacheFile) throws IOException
+        {
+            this.cacheFile = cacheFile;
+            File parent = cacheFile.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", parent);
+            out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+        }
+
+        /**
+         * Appends a CAS, the header is written with the type system of the first CAS.
+         */
+        public void write(CAS cas) throws IOException
+        {
+            if (!hasHeader) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                StringWriter xml = new StringWriter();
+                try {
+                    TypeSystemUtil.typeSystem2TypeSystemDescription(cas.getTypeSystem())
+                            .toXML(xml);
+                }
+                catch (SAXException e) {
+                    throw new IOException(e);
+                }
+                writeBytes(xml.toString().getBytes(StandardCharsets.UTF_8));
+                hasHeader = true;
+            }
+            buffer.reset();
+            CasIOUtils.save(cas, buffer, SerialFormat.COMPRESSED_FILTERED);
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+            count++;
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException
+        {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * Ends the file and moves it into place.
+         *
+         * @return the number of written CASes
+         */
+        public int commit() throws IOException
+        {
+            // A negative length marks the end of the CASes
+            out.writeInt(-1);
+            out.writeInt(count);
+            out.close();
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        }
+
+        /**
+         * Discards the file unless it has been committed.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Replays the CASes of a cache file in the order they were written.
+     */
+    public static class Reader
+        implements Closeable
+    {
+        private final File cacheFile;
+        private final DataInputStream in;
+        private final TypeSystem typeSystem;
+        private byte[] buffer = new byte[1 << 16];
+        private int count = 0;
+
+        public Reader(File cacheFile) throws IOException
+        {
+            this.cacheFile = cacheFile;
+            in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(cacheFile), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException(cacheFile + " is not an annotated corpus cache file.");
+                }
+                typeSystem = readTypeSystem(readBytes());
+            }
+            catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        private byte[] readBytes() throws IOException
+        {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private TypeSystem readTypeSystem(byte[] xml) throws IOException
+        {
+            try (InputStream xmlIn = new ByteArrayInputStream(xml)) {
+                TypeSystemDescription description = UIMAFramework.getXMLParser()
+                        .parseTypeSystemDescription(new XMLInputSource(xmlIn, null));
+                return CasCreationUtils.createCas(description, null, null).getTypeSystem();
+            }
+            catch (InvalidXMLException | ResourceInitializationException e) {
+                throw new IOException("Cannot read the type system of " + cacheFile, e);
+            }
+        }
+
+        /**
+         * Loads the next CAS.
+         *
+         * @param cas
+         *            the CAS to fill, its type system may differ from the one of the writer
+         * @throws IOException
+         *             if the file ends early or cannot be read
+         */
+        public void next(CAS cas) throws IOException
+        {
+            int length;
+            try {
+                length = in.readInt();
+            }
+            catch (EOFException e) {
+                throw new IOException(cacheFile + " is truncated.", e);
+            }
+            if (length < 0) {
+                throw new IOException(cacheFile + " holds only " + count + " CASes.");
+            }
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            CasIOUtils.load(new ByteArrayInputStream(buffer, 0, length), cas, typeSystem);
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package de.unidue.haring.similarity.experiments.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.component.CasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores every processed CAS in an {@link AnnotatedCorpusCache} file. The file is only created
+ * once the whole collection has been processed.
+ */
+public class AnnotatedCorpusWriter
+    extends CasAnnotator_ImplBase
+{
+    /**
+     * The cache file, see {@link AnnotatedCorpusCache#getCacheFile}.
+     */
+    public static final String PARAM_CACHE_FILE = "cacheFile";
+    @ConfigurationParameter(name = PARAM_CACHE_FILE, mandatory = true)
+    private File cacheFile;
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnnotatedCorpusWriter.class);
+
+    private AnnotatedCorpusCache.Writer writer;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException
+    {
+        super.initialize(context);
+        try {
+            writer = new AnnotatedCorpusCache.Writer(cacheFile);
+        }
+        catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+    }
+
+    @Override
+    public void process(CAS aCAS) throws AnalysisEngineProcessException
+    {
+        try {
+            writer.write(aCAS);
+        }
+        catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        try {
+            int count = writer.commit();
+            LOG.info("Cached " + count + " annotated CASes in " + cacheFile);
+        }
+        catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (writer != null) {
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                LOG.warn("Cannot delete the temporary file of " + cacheFile, e);
+            }
+            writer = null;
+        }
+        super.destroy();
+    }
+}
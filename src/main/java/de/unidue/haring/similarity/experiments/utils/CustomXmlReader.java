@@ -1,13 +1,16 @@
 package de.unidue.haring.similarity.experiments.utils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.cas.CAS;
@@ -19,9 +22,7 @@ import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Progress;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import org.apache.uima.util.ProgressImpl;
 
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerPair;
@@ -29,6 +30,12 @@ import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblemFactory;
 import de.unidue.haring.similarity.experiments.uima_types.QuestionAnswerProblemType;
 
+/**
+ * Reads the problems of an MCScript dataset, one CAS per question. The file is parsed with StAX
+ * while the CASes are requested, so processing starts right away and the reader holds only the
+ * next problem. The read problems are registered with the {@link QuestionAnswerProblemFactory}
+ * for the evaluation.
+ */
 public class CustomXmlReader
     extends CasCollectionReader_ImplBase
 {
@@ -38,12 +45,44 @@ public class CustomXmlReader
     public static final String PARAM_TEST_DATA_INPUT_FILE = "TestDataInputFile";
     @ConfigurationParameter(name = PARAM_TEST_DATA_INPUT_FILE, mandatory = true)
     private File testDataInputFile;
-    
+
+    /**
+     * An {@link AnnotatedCorpusCache} file of the dataset. If set, the CASes are replayed from the
+     * cache instead of being created from the dataset texts.
+     */
+    public static final String PARAM_ANNOTATED_CORPUS = "AnnotatedCorpus";
+    @ConfigurationParameter(name = PARAM_ANNOTATED_CORPUS, mandatory = false)
+    private File annotatedCorpus;
+    private AnnotatedCorpusCache.Reader annotatedCorpusReader;
+
+    /**
+     * The number of shards the dataset is split into by instance id (default: 1). Only the
+     * questions of the instances of shard {@link #PARAM_SHARD_INDEX} are read.
+     */
+    public static final String PARAM_SHARD_COUNT = "ShardCount";
+    @ConfigurationParameter(name = PARAM_SHARD_COUNT, mandatory = true, defaultValue = "1")
+    private int shardCount;
+
+    /**
+     * The shard to read, from 0 to {@link #PARAM_SHARD_COUNT} - 1 (default: 0). An instance
+     * belongs to the shard given by its id modulo the shard count.
+     */
+    public static final String PARAM_SHARD_INDEX = "ShardIndex";
+    @ConfigurationParameter(name = PARAM_SHARD_INDEX, mandatory = true, defaultValue = "0")
+    private int shardIndex;
+
+    // The unit of the progress of large datasets
+    private static final String KILOBYTES = "kilobytes";
+
     // The language used for processing
     private static final String LANGUAGE = "en";
 
-    // List storing all QuestionAnswerProblems
-    private List<QuestionAnswerProblem> qList;
+    // The dataset is parsed while the CASes are requested, holding only the next problem
+    private CountingInputStream input;
+    private long totalBytes;
+    private XMLStreamReader xmlReader;
+    private ProblemParser parser;
+    private QuestionAnswerProblem nextProblem;
     private int currentQuestionAnswerProblem = 0;
 
     private QuestionAnswerProblemFactory questionAnswerProblemFactory;
@@ -63,39 +102,79 @@ public class CustomXmlReader
     private String answerText2;
 
     /**
-     * Initializes the reader
+     * Initializes the reader. The problems are parsed lazily while the CASes are requested.
      */
     @Override
     public void initialize(UimaContext context) throws ResourceInitializationException
     {
         super.initialize(context);
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new ResourceInitializationException(new IllegalArgumentException(
+                    "Invalid shard " + shardIndex + " of " + shardCount));
+        }
 
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // The DTD referenced by MCScript files is not needed
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
         try {
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-
-            QuestionHandler qHandler = new QuestionHandler();
-            saxParser.parse(testDataInputFile, qHandler);
-
-            questionAnswerProblemFactory = new QuestionAnswerProblemFactory();
-            qList = qHandler.getQuestionAnswerProblemList();
+            totalBytes = testDataInputFile.length();
+            input = new CountingInputStream(
+                    new BufferedInputStream(new FileInputStream(testDataInputFile)));
+            xmlReader = factory.createXMLStreamReader(input);
+            parser = new ProblemParser(xmlReader, shardCount, shardIndex);
         }
-        catch (SAXException | IOException | ParserConfigurationException e) {
-            e.printStackTrace();
+        catch (IOException | XMLStreamException e) {
+            throw new ResourceInitializationException(e);
+        }
+        questionAnswerProblemFactory = new QuestionAnswerProblemFactory();
+        nextProblem = null;
+        currentQuestionAnswerProblem = 0;
+
+        if (annotatedCorpus != null) {
+            try {
+                annotatedCorpusReader = new AnnotatedCorpusCache.Reader(annotatedCorpus);
+            }
+            catch (IOException e) {
+                throw new ResourceInitializationException(e);
+            }
         }
     }
 
+    /**
+     * Reports the bytes of the dataset parsed so far, in kilobytes for files of 2 GB or more, and
+     * the number of problems read. The parser reads ahead up to a buffer, so the bytes are
+     * approximate. The total number of problems is not known before the end of the file.
+     */
     public Progress[] getProgress()
     {
-        return null;
+        long bytes = input != null ? input.getCount() : totalBytes;
+        Progress bytesProgress;
+        if (totalBytes <= Integer.MAX_VALUE) {
+            bytesProgress = new ProgressImpl((int) bytes, (int) totalBytes, Progress.BYTES, true);
+        }
+        else {
+            bytesProgress = new ProgressImpl((int) (bytes / 1024), (int) (totalBytes / 1024),
+                    KILOBYTES, true);
+        }
+        return new Progress[] { bytesProgress,
+                new ProgressImpl(currentQuestionAnswerProblem, -1, Progress.ENTITIES) };
     }
 
     public boolean hasNext() throws IOException, CollectionException
     {
-        if (currentQuestionAnswerProblem < qList.size()) {
-            return true;
+        if (nextProblem == null && parser != null) {
+            try {
+                nextProblem = parser.next();
+            }
+            catch (XMLStreamException e) {
+                throw new CollectionException(e);
+            }
+            if (nextProblem == null) {
+                closeInput();
+            }
         }
-        return false;
+        return nextProblem != null;
     }
 
     @Override
@@ -103,7 +182,11 @@ public class CustomXmlReader
     {
         try {
             // Gets the current QuestionAnswerProblem
-            QuestionAnswerProblem q = qList.get(currentQuestionAnswerProblem);
+            if (!hasNext()) {
+                throw new CollectionException(new IllegalStateException("No more problems"));
+            }
+            QuestionAnswerProblem q = nextProblem;
+            nextProblem = null;
             // Sets document text
             instanceText = q.getInstanceText();
             questionText = q.getQuestionText();
@@ -113,6 +196,13 @@ public class CustomXmlReader
             // Creates a new QuestionAnswerProblem in the factory
             questionAnswerProblemFactory.addQuestionAnswerProblem(currentQuestionAnswerProblem, q);
 
+            // Replays the annotated views and the gold QuestionAnswerProblem
+            if (annotatedCorpusReader != null) {
+                annotatedCorpusReader.next(aCAS);
+                currentQuestionAnswerProblem++;
+                return;
+            }
+
             // Create views for pipeline processing
             JCas jcas = aCAS.getJCas();
             JCas instanceView = jcas.createView(INSTANCE_VIEW);
@@ -150,6 +240,34 @@ public class CustomXmlReader
         }
     }
 
+    @Override
+    public void close() throws IOException
+    {
+        closeInput();
+        if (annotatedCorpusReader != null) {
+            annotatedCorpusReader.close();
+            annotatedCorpusReader = null;
+        }
+        super.close();
+    }
+
+    private void closeInput() throws IOException
+    {
+        if (xmlReader != null) {
+            try {
+                xmlReader.close();
+            }
+            catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+            xmlReader = null;
+        }
+        parser = null;
+        if (input != null) {
+            input.close();
+        }
+    }
+
     /**
      * Preprocessing for input text. Removes punctuation and multiple appearances of blanks from the
      * document text. In addition, the text is set to lowercase letters.
@@ -158,7 +276,7 @@ public class CustomXmlReader
      *            the document text
      * @return the preprocessed document text.
      */
-    private String preprocessInput(String input)
+    static String preprocessInput(String input)
     {
         // Removes punctuation
         input = input.replaceAll(PUNCTUATION_PATTERN, " ");
@@ -169,99 +287,149 @@ public class CustomXmlReader
         return input.trim();
     }
 
-    private class QuestionHandler
-        extends DefaultHandler
+    /**
+     * Parses the problems of an MCScript file one question at a time.
+     */
+    private static class ProblemParser
     {
-        // List to hold QuestionAnswerProblem objects
-        private List<QuestionAnswerProblem> qList = null;
-        private QuestionAnswerProblem questionAnswerProblem = null;
-        private QuestionAnswerPair questionAnswerPair1 = null;
-        private QuestionAnswerPair questionAnswerPair2 = null;
-
-        // Accumulator for getting the instance text
-        private StringBuffer accumulator = new StringBuffer(1024);
+        private final XMLStreamReader reader;
+        private final int shardCount;
+        private final int shardIndex;
+
         // Text relating to the current question
-        String instanceText;
-        // Current texts
-        String questionText;
+        private String instanceText;
+        // Current instance ID
+        private int instanceId;
 
-        // Current question ID, relative to current instance
-        int questionId;
-        int idCorrectAnswer;
-        String questionType;
+        private ProblemParser(XMLStreamReader reader, int shardCount, int shardIndex)
+        {
+            this.reader = reader;
+            this.shardCount = shardCount;
+            this.shardIndex = shardIndex;
+        }
 
-        @Override
-        public void startElement(String uri, String localName, String qName, Attributes attributes)
-            throws SAXException
+        /**
+         * Reads up to the end of the next question of the shard.
+         * 
+         * @return the problem of the question, or null at the end of the file
+         */
+        private QuestionAnswerProblem next() throws XMLStreamException
         {
-            // Initialize questionAnswerProblem list, if not yet
-            if (qList == null) {
-                qList = new ArrayList<QuestionAnswerProblem>();
-            }
-            if (qName.equalsIgnoreCase("text")) {
-                accumulator.setLength(0);
-                instanceText = "";
-            }
-            if (qName.equalsIgnoreCase("question")) {
-                // extract attributes from document
-                questionText = attributes.getValue("text");
-                questionId = Integer.valueOf(attributes.getValue("id"));
-                questionType = attributes.getValue("type");
-                // initialize new QuestionAnswerProblem
-                questionAnswerProblem = new QuestionAnswerProblem();
-                questionAnswerProblem.setInstanceText(instanceText);
-                questionAnswerProblem.setQuestionText(questionText);
-                questionAnswerProblem.setQuestionId(questionId);
-                questionAnswerProblem.setQuestionType(questionType);
+            QuestionAnswerProblem questionAnswerProblem;
+            do {
+                questionAnswerProblem = nextQuestion();
             }
-            if (qName.equalsIgnoreCase("answer")) {
-                // handle answer 1
-                if (Integer.valueOf(attributes.getValue("id")) == 0) {
-                    String answerText1 = attributes.getValue("text");
-                    
-                    questionAnswerProblem.setAnswerText1(answerText1);
-                    // sets id of correct answer. If attribute is true => answer1 is correct (id=0)
-                    idCorrectAnswer = Boolean.valueOf(attributes.getValue("correct")) ? 0 : 1;
-                    questionAnswerProblem.setIDCorrectAnswer(idCorrectAnswer);
-
-                    questionAnswerPair1 = new QuestionAnswerPair(questionText, answerText1,
-                            instanceText, questionId, 0, idCorrectAnswer,
-                            Boolean.valueOf(attributes.getValue("correct")));
-                    questionAnswerProblem.setPair1(questionAnswerPair1);
+            while (questionAnswerProblem != null && Math
+                    .floorMod(questionAnswerProblem.getInstanceId(), shardCount) != shardIndex);
+            return questionAnswerProblem;
+        }
+
+        private QuestionAnswerProblem nextQuestion() throws XMLStreamException
+        {
+            QuestionAnswerProblem questionAnswerProblem = null;
+            String questionText = null;
+            int questionId = 0;
+            int idCorrectAnswer = 0;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT
+                        && reader.getLocalName().equalsIgnoreCase("question")) {
+                    return questionAnswerProblem;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
                 }
-                // handle answer 2
-                else if (Integer.valueOf(attributes.getValue("id")) == 1) {
-                    String answerText2 = attributes.getValue("text");
-                    
-                    questionAnswerProblem.setAnswerText2(answerText2);
-                    questionAnswerPair2 = new QuestionAnswerPair(questionText, answerText2,
-                            instanceText, questionId, 1, idCorrectAnswer,
-                            Boolean.valueOf(attributes.getValue("correct")));
-                    questionAnswerProblem.setPair2(questionAnswerPair2);
+                String name = reader.getLocalName();
+                if (name.equalsIgnoreCase("instance")) {
+                    instanceId = Integer.valueOf(reader.getAttributeValue(null, "id"));
+                }
+                else if (name.equalsIgnoreCase("text")) {
+                    instanceText = reader.getElementText().trim();
+                }
+                else if (name.equalsIgnoreCase("question")) {
+                    // extract attributes from document
+                    questionText = reader.getAttributeValue(null, "text");
+                    questionId = Integer.valueOf(reader.getAttributeValue(null, "id"));
+                    // initialize new QuestionAnswerProblem
+                    questionAnswerProblem = new QuestionAnswerProblem();
+                    questionAnswerProblem.setInstanceText(instanceText);
+                    questionAnswerProblem.setInstanceId(instanceId);
+                    questionAnswerProblem.setQuestionText(questionText);
+                    questionAnswerProblem.setQuestionId(questionId);
+                    questionAnswerProblem.setQuestionType(reader.getAttributeValue(null, "type"));
+                }
+                else if (name.equalsIgnoreCase("answer")) {
+                    String answerText = reader.getAttributeValue(null, "text");
+                    boolean correct = Boolean.valueOf(reader.getAttributeValue(null, "correct"));
+                    // handle answer 1
+                    if (Integer.valueOf(reader.getAttributeValue(null, "id")) == 0) {
+                        questionAnswerProblem.setAnswerText1(answerText);
+                        // sets id of correct answer. If attribute is true => answer1 is correct
+                        // (id=0)
+                        idCorrectAnswer = correct ? 0 : 1;
+                        questionAnswerProblem.setIDCorrectAnswer(idCorrectAnswer);
+                        questionAnswerProblem.setPair1(new QuestionAnswerPair(questionText,
+                                answerText, instanceText, questionId, 0, idCorrectAnswer,
+                                correct));
+                    }
+                    // handle answer 2
+                    else if (Integer.valueOf(reader.getAttributeValue(null, "id")) == 1) {
+                        questionAnswerProblem.setAnswerText2(answerText);
+                        questionAnswerProblem.setPair2(new QuestionAnswerPair(questionText,
+                                answerText, instanceText, questionId, 1, idCorrectAnswer,
+                                correct));
+                    }
                 }
             }
+            return null;
         }
+    }
 
-        @Override
-        public void characters(char[] buffer, int start, int length) throws SAXException
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static class CountingInputStream
+        extends FilterInputStream
+    {
+        private volatile long count;
+
+        private CountingInputStream(InputStream in)
         {
-            accumulator.append(buffer, start, length);
+            super(in);
         }
 
         @Override
-        public void endElement(String uri, String localName, String qName) throws SAXException
+        public int read() throws IOException
         {
-            if (qName.equalsIgnoreCase("text")) {
-                instanceText = accumulator.toString().trim();
+            int b = super.read();
+            if (b >= 0) {
+                count++;
             }
-            if (qName.equalsIgnoreCase("question")) {
-                qList.add(questionAnswerProblem);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
             }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
 
-        public List<QuestionAnswerProblem> getQuestionAnswerProblemList()
+        private long getCount()
         {
-            return qList;
+            return count;
         }
     }
 }
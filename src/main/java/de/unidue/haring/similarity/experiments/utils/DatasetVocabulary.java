@@ -0,0 +1,210 @@
+package de.unidue.haring.similarity.experiments.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.unidue.haring.similarity.experiments.customAnnotators.VocabularyFilter;
+
+/**
+ * Collects the vocabulary of an MCScript dataset with a streaming pass over its XML file.
+ * <p>
+ * Instance, question and answer texts are preprocessed like in {@link CustomXmlReader} and split
+ * at blanks. In addition to each token, the parts the segmenter splits off (clitics such as
+ * {@code 's} or {@code n't}) are added. Every word is added in the same case variants as
+ * {@link GeneralPipelineUtils#addWordToUsedWordSet(String)} does. The resulting set is a superset
+ * of the tokens the embeddings annotator looks up for the dataset, so it can be used to restrict
+ * the loaded embeddings without running the pipeline first.
+ */
+public class DatasetVocabulary
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DatasetVocabulary.class);
+
+    // Filters by dataset path, valid as long as size and modification time do not change
+    private static final Map<String, CachedFilter> FILTERS = new HashMap<String, CachedFilter>();
+
+    /**
+     * Gets the vocabulary filter of a dataset, collecting the vocabulary on the first request.
+     *
+     * @param datasetFile
+     *            the dataset XML file
+     * @return the filter, identified by the dataset path and a fingerprint of the vocabulary
+     * @throws IOException
+     *             if the dataset cannot be read
+     */
+    public static synchronized VocabularyFilter getFilter(File datasetFile) throws IOException
+    {
+        String path = datasetFile.getAbsolutePath();
+        CachedFilter cached = FILTERS.get(path);
+        if (cached != null && cached.length == datasetFile.length()
+                && cached.lastModified == datasetFile.lastModified()) {
+            return cached.filter;
+        }
+
+        long length = datasetFile.length();
+        long lastModified = datasetFile.lastModified();
+        Set<String> words = collect(datasetFile);
+        VocabularyFilter filter = new VocabularyFilter(
+                datasetFile.getPath() + "#" + fingerprint(words), words);
+        FILTERS.put(path, new CachedFilter(filter, length, lastModified));
+        return filter;
+    }
+
+    /**
+     * Gets the vocabulary filter of several datasets, holding the words of all of them.
+     *
+     * @param datasetFiles
+     *            the dataset XML files
+     * @return the filter, identified by the identifiers of the filters of the datasets
+     * @throws IOException
+     *             if a dataset cannot be read
+     */
+    public static synchronized VocabularyFilter getFilter(File... datasetFiles) throws IOException
+    {
+        if (datasetFiles.length == 1) {
+            return getFilter(datasetFiles[0]);
+        }
+        Set<String> words = new HashSet<String>();
+        StringBuilder id = new StringBuilder();
+        for (File datasetFile : datasetFiles) {
+            VocabularyFilter filter = getFilter(datasetFile);
+            words.addAll(filter.getTokens());
+            if (id.length() > 0) {
+                id.append('+');
+            }
+            id.append(filter.getId());
+        }
+        return new VocabularyFilter(id.toString(), words);
+    }
+
+    /**
+     * Collects the vocabulary of a dataset.
+     *
+     * @param datasetFile
+     *            the dataset XML file
+     * @return all words including their case variants
+     * @throws IOException
+     *             if the dataset cannot be read or parsed
+     */
+    public static Set<String> collect(File datasetFile) throws IOException
+    {
+        long startTime = System.nanoTime();
+        Set<String> words = new HashSet<String>();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // The DTD referenced by MCScript files is not needed
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(datasetFile))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if (name.equalsIgnoreCase("text")) {
+                        addText(words, reader.getElementText());
+                    }
+                    else if (name.equalsIgnoreCase("question")
+                            || name.equalsIgnoreCase("answer")) {
+                        addText(words, reader.getAttributeValue(null, "text"));
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Cannot parse dataset " + datasetFile, e);
+        }
+
+        LOG.info(String.format("Collected %d words from %s in %.0f ms", words.size(), datasetFile,
+                (System.nanoTime() - startTime) / 1e6));
+        return words;
+    }
+
+    private static void addText(Set<String> words, String text)
+    {
+        if (text == null) {
+            return;
+        }
+        for (String token : CustomXmlReader.preprocessInput(text).split(" ")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            addWord(words, token);
+
+            // The segmenter splits clitics, e.g. "they're" into "they" and "'re" and "don't"
+            // into "do" and "n't"
+            int apostrophe = token.indexOf('\'');
+            if (apostrophe >= 0) {
+                String head = token.substring(0, apostrophe);
+                String tail = token.substring(apostrophe);
+                if (head.endsWith("n") && tail.equalsIgnoreCase("'t")) {
+                    addWord(words, head.substring(0, head.length() - 1));
+                    addWord(words, head.substring(head.length() - 1) + tail);
+                }
+                addWord(words, head);
+                addWord(words, tail);
+                addWord(words, token.replace("'", ""));
+            }
+        }
+    }
+
+    /**
+     * Adds a word in the same notations as {@link GeneralPipelineUtils#addWordToUsedWordSet}.
+     */
+    private static void addWord(Set<String> words, String word)
+    {
+        if (word.isEmpty()) {
+            return;
+        }
+        words.add(word);
+        words.add(word.toLowerCase());
+        words.add(word.substring(0, 1).toUpperCase() + word.substring(1));
+    }
+
+    /**
+     * An order-independent fingerprint of a set of words. It is part of the id of a filter, so
+     * caches keyed by the id are not shared between different vocabularies.
+     */
+    public static String fingerprint(Set<String> words)
+    {
+        long sum = 0;
+        for (String word : words) {
+            long h = word.hashCode() * 0x9e3779b97f4a7c15L;
+            sum += h ^ (h >>> 29);
+        }
+        return words.size() + "-" + Long.toHexString(sum);
+    }
+
+    private static class CachedFilter
+    {
+        private final VocabularyFilter filter;
+        private final long length;
+        private final long lastModified;
+
+        private CachedFilter(VocabularyFilter filter, long length, long lastModified)
+        {
+            this.filter = filter;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
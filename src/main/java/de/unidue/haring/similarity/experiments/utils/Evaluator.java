@@ -1,9 +1,20 @@
 package de.unidue.haring.similarity.experiments.utils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -14,11 +25,20 @@ import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.resource.ResourceInitializationException;
 
+import de.tudarmstadt.ukp.dkpro.core.mallet.type.WordEmbedding;
+import de.unidue.haring.similarity.experiments.customAnnotators.CustomMalletEmbeddingsAnnotator;
+import de.unidue.haring.similarity.experiments.measures.BatchCosineScorer;
+import de.unidue.haring.similarity.experiments.measures.CentroidCache;
+import de.unidue.haring.similarity.experiments.measures.EmbeddingsSimilarityMeasure;
+import de.unidue.haring.similarity.experiments.measures.FeatureScheduler;
 import de.unidue.haring.similarity.experiments.measures.SimilarityMeasure;
+import de.unidue.haring.similarity.experiments.pipeline.ParallelPipeline;
 import de.unidue.haring.similarity.experiments.measures.SimilarityMeasureFactory;
+import de.unidue.haring.similarity.experiments.types.EvaluationResult;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
 import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblemFactory;
 import de.unidue.haring.similarity.experiments.types.SemanticRelatedness;
+import de.unidue.haring.similarity.experiments.uima_types.ModelWordEmbedding;
 import de.unidue.haring.similarity.experiments.uima_types.QuestionAnswerProblemType;
 
 public class Evaluator
@@ -28,13 +48,93 @@ public class Evaluator
     @ConfigurationParameter(name = PARAM_TEST_DATA_FILE_PATH, mandatory = true)
     private String testDataFilePath;
 
+    /**
+     * The embeddings models the results are reported for. Several models can be scored in the same
+     * run if {@link #PARAM_EMBEDDINGS_MODEL_IDS} is set.
+     */
     public static final String PARAM_USED_WORD_EMBEDDINGS = "UsedWordEmbeddings";
     @ConfigurationParameter(name = PARAM_USED_WORD_EMBEDDINGS, mandatory = true)
-    private String usedWordEmbeddings;
+    private String[] usedWordEmbeddings;
+
+    /**
+     * The ids of the {@link ModelWordEmbedding} annotations of each used embeddings model, see
+     * {@link CustomMalletEmbeddingsAnnotator#PARAM_MODEL_ID}. If not set, a single model is used
+     * and its embeddings are read from the {@link WordEmbedding} annotations.
+     */
+    public static final String PARAM_EMBEDDINGS_MODEL_IDS = "EmbeddingsModelIds";
+    @ConfigurationParameter(name = PARAM_EMBEDDINGS_MODEL_IDS, mandatory = false)
+    private String[] embeddingsModelIds;
+
+    /**
+     * Subset files of the test data, see {@link QuestionSubset#fromFile(String)}. After the results
+     * on the full test data, the results on the problems of each subset are written.
+     */
+    public static final String PARAM_SUBSET_FILES = "SubsetFiles";
+    @ConfigurationParameter(name = PARAM_SUBSET_FILES, mandatory = false)
+    private String[] subsetFiles;
+    private List<QuestionSubset> subsets;
+
+    /**
+     * Names of the measure methods to evaluate, see {@link SimilarityMeasureFactory}. If not set,
+     * all measure methods are evaluated.
+     */
+    public static final String PARAM_MEASURE_METHODS = "MeasureMethods";
+    @ConfigurationParameter(name = PARAM_MEASURE_METHODS, mandatory = false)
+    private String[] measureMethods;
+
+    /**
+     * Whether the measures comparing centroids by their cosine similarity are scored for all
+     * problems at once when the collection is complete, see {@link BatchCosineScorer}, instead of
+     * on each problem.
+     */
+    public static final String PARAM_BATCH_SCORING = "BatchScoring";
+    @ConfigurationParameter(name = PARAM_BATCH_SCORING, mandatory = true, defaultValue = "false")
+    private boolean batchScoring;
+    // The scorer of each embeddings model if batchScoring is set
+    private List<BatchCosineScorer> batchCosineScorers;
+
+    /**
+     * The number of threads applying the measures which can be deferred, see
+     * {@link SimilarityMeasure#isDeferrable()}, together with their deferrable features, such as
+     * the Web1T frequencies. With more than one thread, these measures are applied concurrently,
+     * each one on its own thread, while the other measures are applied on the calling thread. 1
+     * applies all measures one after another on the calling thread, unless
+     * {@link #PARAM_MEASURE_BATCH_SIZE} is above 1.
+     */
+    public static final String PARAM_MEASURE_THREADS = "MeasureThreads";
+    @ConfigurationParameter(name = PARAM_MEASURE_THREADS, mandatory = true, defaultValue = "1")
+    private int measureThreads;
+
+    /**
+     * The number of problems the deferrable measures are applied to together. With more than one
+     * problem, the deferrable features and measures of a batch are computed on the measure threads
+     * while the next problems are processed, so slow features such as the Web1T lookups do not hold
+     * up the pipeline; they are then applied without the CAS. 1 applies them to each problem
+     * before it is complete.
+     */
+    public static final String PARAM_MEASURE_BATCH_SIZE = "MeasureBatchSize";
+    @ConfigurationParameter(name = PARAM_MEASURE_BATCH_SIZE, mandatory = true, defaultValue = "1")
+    private int measureBatchSize;
+
+    // Computes the deferred features and applies the deferred measures if measures are deferred
+    private ExecutorService measureExecutor;
+    // The deferrable measures of all embeddings models if measures are deferred, and the problems
+    // they are pending for
+    private List<SimilarityMeasure> deferredSimilarityMeasures;
+    private List<QuestionAnswerProblem> pendingProblems;
+    // The tasks applying the deferred measures to the last batch
+    private List<Future<?>> measureTasks;
 
-    private List<SimilarityMeasure> similarityMeasureMethods;
+    // The measure methods of each embeddings model. Measures which do not use the embeddings are
+    // shared by all models.
+    private List<List<SimilarityMeasure>> similarityMeasureMethods;
+    // The measure methods of each embeddings model applied to each problem, and the scheduler of
+    // their features
+    private List<List<SimilarityMeasure>> appliedSimilarityMeasureMethods;
+    private List<FeatureScheduler> featureSchedulers;
     private SimilarityMeasureFactory similarityMeasureFactory;
-    private SimilarityMeasure defaultSimilarityMeasure;
+    // Reads the embedding annotations of each embeddings model
+    private List<SimilarityMeasure> defaultSimilarityMeasures;
 
     private static final String LF = System.getProperty("line.separator");
 
@@ -48,33 +148,187 @@ public class Evaluator
 
     private static final boolean LEMMATA_TO_FILE = false;
     private static final boolean PRINT_TABLES = false;
+
+    // Prefixes the relatedness name of a measure to name its stage in the StageTimings
+    public static final String MEASURE_STAGE_PREFIX = "measure/";
+
+    // The stage of the StageTimings scoring the collected problems if batchScoring is set
+    public static final String BATCH_SCORING_STAGE = "batch scoring";
+
     private ResultsTablePrinter rtp;
 
+    // Results of the last completed run, by used embeddings and measure method name
+    private static volatile Map<String, Map<String, EvaluationResult>> lastEvaluationResults =
+            Collections.emptyMap();
+    // Results of the subsets of the last completed run, by used embeddings, subset name and
+    // measure method name
+    private static volatile Map<String, Map<String, Map<String, EvaluationResult>>>
+            lastSubsetEvaluationResults = Collections.emptyMap();
+
     @Override
     public void initialize(UimaContext context) throws ResourceInitializationException
     {
         super.initialize(context);
 
+        if (embeddingsModelIds != null
+                && embeddingsModelIds.length != usedWordEmbeddings.length) {
+            throw new ResourceInitializationException(new IllegalArgumentException(
+                    "PARAM_EMBEDDINGS_MODEL_IDS must hold one id for each used embeddings model."));
+        }
+
         similarityMeasureFactory = new SimilarityMeasureFactory();
-        similarityMeasureMethods = new ArrayList<SimilarityMeasure>();
-        defaultSimilarityMeasure = new SimilarityMeasure();
+        similarityMeasureMethods = new ArrayList<List<SimilarityMeasure>>();
+        defaultSimilarityMeasures = new ArrayList<SimilarityMeasure>();
+        batchCosineScorers = new ArrayList<BatchCosineScorer>();
+        appliedSimilarityMeasureMethods = new ArrayList<List<SimilarityMeasure>>();
+        featureSchedulers = new ArrayList<FeatureScheduler>();
+        deferredSimilarityMeasures = new ArrayList<SimilarityMeasure>();
+        pendingProblems = new ArrayList<QuestionAnswerProblem>();
+        measureTasks = new ArrayList<Future<?>>();
+        CentroidCache centroidCache = new CentroidCache();
+        SimilarityMeasure.clearTokenStatistics();
+        boolean deferMeasures = measureThreads > 1 || measureBatchSize > 1;
 
         // Initializes similarity measure methods which shell be used
-        similarityMeasureMethods = similarityMeasureFactory.initializeSimilarityMeasureMethods(
-                RANDOM, INSTANCE_TO_ANSWER, QUESTION_TO_ANSWER, LAST_NOUN, SIMPLE_JWEB1T,
-                HIGH_DIFFERENCE_JWEB1T, CONCEPTUAL_JWEB1T);
+        if (measureMethods == null || measureMethods.length == 0) {
+            measureMethods = new String[] { RANDOM, INSTANCE_TO_ANSWER, QUESTION_TO_ANSWER,
+                    LAST_NOUN, SIMPLE_JWEB1T, HIGH_DIFFERENCE_JWEB1T, CONCEPTUAL_JWEB1T };
+        }
+        List<SimilarityMeasure> firstModelMethods = similarityMeasureFactory
+                .initializeSimilarityMeasureMethods(measureMethods);
+        if (firstModelMethods.size() != measureMethods.length) {
+            throw new ResourceInitializationException(new IllegalArgumentException(
+                    "Unknown measure method in " + Arrays.toString(measureMethods)));
+        }
+        for (int i = 0; i < usedWordEmbeddings.length; i++) {
+            String modelId = getEmbeddingsModelId(i);
+            List<SimilarityMeasure> methods = new ArrayList<SimilarityMeasure>();
+            for (SimilarityMeasure similarityMeasure : firstModelMethods) {
+                if (i > 0 && similarityMeasure.usesEmbeddings()) {
+                    similarityMeasure = similarityMeasureFactory
+                            .initializeSimilarityMeasureMethods(
+                                    similarityMeasure.getMeasureMethodName())
+                            .get(0);
+                }
+                if (similarityMeasure.usesEmbeddings()) {
+                    similarityMeasure.setEmbeddingsModelId(modelId);
+                }
+                else if (i == 0) {
+                    similarityMeasure.setFeaturesModelId(modelId);
+                }
+                methods.add(similarityMeasure);
+            }
+            similarityMeasureMethods.add(methods);
+
+            // Measures which do not use the embeddings are only applied with the first model, and
+            // the ones scored in batches are only collected
+            List<SimilarityMeasure> appliedMethods = new ArrayList<SimilarityMeasure>();
+            for (SimilarityMeasure similarityMeasure : methods) {
+                if ((i == 0 || similarityMeasure.usesEmbeddings()) && !(batchScoring
+                        && similarityMeasure instanceof EmbeddingsSimilarityMeasure
+                        && ((EmbeddingsSimilarityMeasure) similarityMeasure)
+                                .getBatchSegment() != null)) {
+                    appliedMethods.add(similarityMeasure);
+                    if (deferMeasures && similarityMeasure.isDeferrable()) {
+                        deferredSimilarityMeasures.add(similarityMeasure);
+                    }
+                }
+            }
+            appliedSimilarityMeasureMethods.add(appliedMethods);
+            try {
+                featureSchedulers.add(
+                        new FeatureScheduler(appliedMethods, deferredSimilarityMeasures));
+            }
+            catch (IllegalArgumentException e) {
+                throw new ResourceInitializationException(e);
+            }
+
+            SimilarityMeasure defaultSimilarityMeasure = new SimilarityMeasure();
+            defaultSimilarityMeasure.setEmbeddingsModelId(modelId);
+            defaultSimilarityMeasure.setCentroidCache(centroidCache);
+            defaultSimilarityMeasures.add(defaultSimilarityMeasure);
+            if (batchScoring) {
+                batchCosineScorers.add(new BatchCosineScorer());
+            }
+        }
+
+        if (deferMeasures) {
+            AtomicInteger threadCount = new AtomicInteger();
+            measureExecutor = Executors.newFixedThreadPool(measureThreads, runnable -> {
+                Thread thread = new Thread(runnable,
+                        "evaluator-measure-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        subsets = new ArrayList<QuestionSubset>();
+        if (subsetFiles != null) {
+            for (String subsetFile : subsetFiles) {
+                try {
+                    subsets.add(QuestionSubset.fromFile(subsetFile));
+                }
+                catch (IOException e) {
+                    throw new ResourceInitializationException(e);
+                }
+            }
+        }
     }
 
+    /**
+     * Measures the similarities of the current QuestionAnswerProblem and records the latency of
+     * each measure under {@value #MEASURE_STAGE_PREFIX} and its relatedness name, see
+     * {@link StageTimings}. The features the measures read are computed first, each once, see
+     * {@link FeatureScheduler}, except the deferred ones. If {@link #PARAM_BATCH_SCORING} is set,
+     * the measures a {@link BatchCosineScorer} accepts are only collected. The deferrable measures
+     * are applied as set by {@link #PARAM_MEASURE_THREADS} and {@link #PARAM_MEASURE_BATCH_SIZE}.
+     * Synchronized, so the Evaluator can be the consumer of a {@link ParallelPipeline}, which
+     * calls it in reader order.
+     */
     @Override
-    public void process(CAS aCAS) throws AnalysisEngineProcessException
+    public synchronized void process(CAS aCAS) throws AnalysisEngineProcessException
     {
         try {
             // Gets current QuestionAnswerProblem instance
             QuestionAnswerProblem questionAnswerProblem = getCurrentQuestionAnswerProblem(aCAS);
-            defaultSimilarityMeasure.prepareQuestionAnswerPairs(aCAS, questionAnswerProblem);
+            defaultSimilarityMeasures.get(0).prepareQuestionAnswerPairs(aCAS,
+                    questionAnswerProblem);
+
+            for (int i = 0; i < similarityMeasureMethods.size(); i++) {
+                if (i > 0) {
+                    defaultSimilarityMeasures.get(i).prepareEmbeddingsAnnotations(aCAS,
+                            questionAnswerProblem);
+                }
+                if (batchScoring) {
+                    for (SimilarityMeasure similarityMeasure : similarityMeasureMethods.get(i)) {
+                        if ((i == 0 || similarityMeasure.usesEmbeddings())
+                                && similarityMeasure instanceof EmbeddingsSimilarityMeasure) {
+                            batchCosineScorers.get(i).add(
+                                    (EmbeddingsSimilarityMeasure) similarityMeasure,
+                                    questionAnswerProblem);
+                        }
+                    }
+                }
+                featureSchedulers.get(i).computeFeatures(questionAnswerProblem,
+                        getEmbeddingsModelId(i));
+                for (SimilarityMeasure similarityMeasure : appliedSimilarityMeasureMethods
+                        .get(i)) {
+                    if (!deferredSimilarityMeasures.contains(similarityMeasure)) {
+                        applySimilarityMeasure(similarityMeasure, aCAS,
+                                Collections.singletonList(questionAnswerProblem));
+                    }
+                }
+            }
 
-            for (SimilarityMeasure similarityMeasure : similarityMeasureMethods) {
-                similarityMeasure.measureSimilarity(aCAS, questionAnswerProblem);
+            pendingProblems.add(questionAnswerProblem);
+            if (pendingProblems.size() >= measureBatchSize) {
+                if (measureBatchSize == 1) {
+                    applyDeferredMeasures(aCAS);
+                    awaitMeasureTasks();
+                }
+                else {
+                    applyDeferredMeasures(null);
+                }
             }
         }
         catch (CASException e) {
@@ -82,12 +336,143 @@ public class Evaluator
         }
     }
 
+    /**
+     * Computes the deferred features of the pending problems and then applies the deferred
+     * measures to them, on the measure threads if there are any. The measures of the previous
+     * batch are completed first, so a measure is never applied on two threads at the same time.
+     * 
+     * @param aCAS
+     *            the CAS of the pending problem if it is the only one, otherwise null
+     * @throws AnalysisEngineProcessException
+     *             if a measure of the previous batch failed
+     */
+    private void applyDeferredMeasures(CAS aCAS) throws AnalysisEngineProcessException
+    {
+        awaitMeasureTasks();
+        List<QuestionAnswerProblem> problems = new ArrayList<QuestionAnswerProblem>(
+                pendingProblems);
+        pendingProblems.clear();
+        if (measureExecutor == null) {
+            computeDeferredFeatures(problems);
+            for (SimilarityMeasure similarityMeasure : deferredSimilarityMeasures) {
+                applySimilarityMeasure(similarityMeasure, aCAS, problems);
+            }
+            return;
+        }
+        CompletableFuture<Void> features = CompletableFuture
+                .runAsync(() -> computeDeferredFeatures(problems), measureExecutor);
+        measureTasks.add(features);
+        for (SimilarityMeasure similarityMeasure : deferredSimilarityMeasures) {
+            measureTasks.add(features.thenRunAsync(
+                    () -> applySimilarityMeasure(similarityMeasure, aCAS, problems),
+                    measureExecutor));
+        }
+    }
+
+    /**
+     * Computes the deferred features of problems for each embeddings model.
+     */
+    private void computeDeferredFeatures(List<QuestionAnswerProblem> questionAnswerProblems)
+    {
+        for (QuestionAnswerProblem questionAnswerProblem : questionAnswerProblems) {
+            for (int i = 0; i < featureSchedulers.size(); i++) {
+                featureSchedulers.get(i).computeDeferredFeatures(questionAnswerProblem,
+                        getEmbeddingsModelId(i));
+            }
+        }
+    }
+
+    /**
+     * Waits until the deferred measures of the last batch have been applied.
+     * 
+     * @throws AnalysisEngineProcessException
+     *             if a measure failed or the thread was interrupted
+     */
+    private void awaitMeasureTasks() throws AnalysisEngineProcessException
+    {
+        try {
+            for (Future<?> measureTask : measureTasks) {
+                measureTask.get();
+            }
+        }
+        catch (ExecutionException e) {
+            throw new AnalysisEngineProcessException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisEngineProcessException(e);
+        }
+        finally {
+            measureTasks.clear();
+        }
+    }
+
+    /**
+     * Applies a measure to problems and records its latency on each.
+     */
+    private static void applySimilarityMeasure(SimilarityMeasure similarityMeasure, CAS aCAS,
+            List<QuestionAnswerProblem> questionAnswerProblems)
+    {
+        for (QuestionAnswerProblem questionAnswerProblem : questionAnswerProblems) {
+            long start = System.nanoTime();
+            similarityMeasure.measureSimilarity(aCAS, questionAnswerProblem);
+            StageTimings.record(MEASURE_STAGE_PREFIX + similarityMeasure.getRelatednessName(),
+                    System.nanoTime() - start);
+        }
+    }
+
     @Override
-    public void collectionProcessComplete() throws AnalysisEngineProcessException
+    public synchronized void collectionProcessComplete() throws AnalysisEngineProcessException
     {
         super.collectionProcessComplete();
-        String results = getEvaluationResults(false);
-        GeneralPipelineUtils.printEvaluationResult(results);
+        if (!pendingProblems.isEmpty()) {
+            applyDeferredMeasures(null);
+        }
+        awaitMeasureTasks();
+        if (batchScoring) {
+            long start = System.nanoTime();
+            for (BatchCosineScorer batchCosineScorer : batchCosineScorers) {
+                batchCosineScorer.score();
+            }
+            StageTimings.record(BATCH_SCORING_STAGE, System.nanoTime() - start);
+        }
+        if (PRINT_TABLES) {
+            rtp = new ResultsTablePrinter();
+            rtp.printResultsHead();
+            rtp.printMissingAnnotationsHead();
+        }
+
+        Map<String, Map<String, EvaluationResult>> modelEvaluationResults =
+                new LinkedHashMap<String, Map<String, EvaluationResult>>(
+                        usedWordEmbeddings.length * 2);
+        Map<String, Map<String, Map<String, EvaluationResult>>> modelSubsetEvaluationResults =
+                new LinkedHashMap<String, Map<String, Map<String, EvaluationResult>>>(
+                        usedWordEmbeddings.length * 2);
+        for (int i = 0; i < usedWordEmbeddings.length; i++) {
+            Map<String, EvaluationResult> evaluationResults =
+                    new LinkedHashMap<String, EvaluationResult>(
+                            similarityMeasureMethods.get(i).size() * 2);
+            String results = getEvaluationResults(testDataFilePath, i, null, false,
+                    evaluationResults);
+            GeneralPipelineUtils.printEvaluationResult(results);
+            modelEvaluationResults.put(usedWordEmbeddings[i], evaluationResults);
+
+            // Subsets are evaluated as filters over the problems of the full run
+            Map<String, Map<String, EvaluationResult>> subsetEvaluationResults =
+                    new LinkedHashMap<String, Map<String, EvaluationResult>>(subsets.size() * 2);
+            for (QuestionSubset subset : subsets) {
+                Map<String, EvaluationResult> subsetResults =
+                        new LinkedHashMap<String, EvaluationResult>(
+                                similarityMeasureMethods.get(i).size() * 2);
+                results = getEvaluationResults(subset.getName(), i, subset, false,
+                        subsetResults);
+                GeneralPipelineUtils.printEvaluationResult(results);
+                subsetEvaluationResults.put(subset.getName(), subsetResults);
+            }
+            modelSubsetEvaluationResults.put(usedWordEmbeddings[i], subsetEvaluationResults);
+        }
+        lastEvaluationResults = modelEvaluationResults;
+        lastSubsetEvaluationResults = modelSubsetEvaluationResults;
 
         if (LEMMATA_TO_FILE) {
             GeneralPipelineUtils.writeUsedWordsToFile();
@@ -98,60 +483,76 @@ public class Evaluator
         }
     }
 
-    private String getEvaluationResults(boolean printDetailedProblems)
+    @Override
+    public void destroy()
+    {
+        if (measureExecutor != null) {
+            measureExecutor.shutdown();
+        }
+        super.destroy();
+    }
+
+    /**
+     * Gets the id of the annotations of an embeddings model.
+     * 
+     * @param model
+     *            the index of the embeddings model in {@link #PARAM_USED_WORD_EMBEDDINGS}
+     * @return the id, or null if a single model is used
+     */
+    private String getEmbeddingsModelId(int model)
     {
-        String usedData = testDataFilePath.split("/")[4].split("\\.")[0];
-        String usedEmbeddings = usedWordEmbeddings.split("/")[4];
+        return embeddingsModelIds != null ? embeddingsModelIds[model] : null;
+    }
+
+    /**
+     * Evaluates the measure methods on the problems of the last run.
+     * 
+     * @param dataFilePath
+     *            the data the results are reported for
+     * @param model
+     *            the index of the embeddings model in {@link #PARAM_USED_WORD_EMBEDDINGS}
+     * @param subset
+     *            if not null, only the problems of this subset are evaluated
+     * @param printDetailedProblems
+     *            whether each problem is listed
+     * @param evaluationResults
+     *            receives the results by measure method name
+     * @return the results in the format of the evaluation results file
+     */
+    private String getEvaluationResults(String dataFilePath, int model, QuestionSubset subset,
+            boolean printDetailedProblems, Map<String, EvaluationResult> evaluationResults)
+    {
+        String usedData = new File(dataFilePath).getName().split("\\.")[0];
+        String usedEmbeddings = new File(usedWordEmbeddings[model]).getName();
 
         GeneralPipelineUtils.printEvaluationResult("Pipeline was running on data: "
-                + testDataFilePath + ". Used embeddings: " + usedWordEmbeddings);
+                + dataFilePath + ". Used embeddings: " + usedWordEmbeddings[model]);
 
         Map<Integer, QuestionAnswerProblem> questionAnswerProblems = QuestionAnswerProblemFactory
                 .getQuestionAnswerProblems();
         StringBuilder sb = new StringBuilder();
 
-        if (PRINT_TABLES) {
-            rtp = new ResultsTablePrinter();
-            rtp.printResultsHead();
-            rtp.printMissingAnnotationsHead();
-        }
-
-        for (SimilarityMeasure similarityMeasure : similarityMeasureMethods) {
-            int totalAnsweredQuestions = 0;
-            int totalCommonsenseQuestions = 0;
-            int correctCommonsenseQuestions = 0;
-            int totalTextQuestions = 0;
-            int correctTextQuestions = 0;
-            int correctAnsweredQuestions = 0;
+        for (SimilarityMeasure similarityMeasure : similarityMeasureMethods.get(model)) {
             boolean isCorrect;
             String similarityMeasureMethodName = similarityMeasure.getMeasureMethodName();
+            String relatednessName = similarityMeasure.getRelatednessName();
             String questionType;
+            EvaluationResult result = new EvaluationResult(similarityMeasureMethodName);
 
             sb.append(LF);
             sb.append("Measure Method: " + similarityMeasureMethodName);
             sb.append(LF);
 
             for (Entry<Integer, QuestionAnswerProblem> entry : questionAnswerProblems.entrySet()) {
-                totalAnsweredQuestions++;
                 QuestionAnswerProblem questionAnswerProblem = entry.getValue();
-                questionType = questionAnswerProblem.getQuestionType();
-                if (questionType.equals("commonsense")) {
-                    totalCommonsenseQuestions++;
-                }
-                else {
-                    totalTextQuestions++;
+                if (subset != null && !subset.contains(questionAnswerProblem)) {
+                    continue;
                 }
+                questionType = questionAnswerProblem.getQuestionType();
 
                 // Checks if the answer prediction is correct
                 isCorrect = isCorrectAnswer(similarityMeasure, questionAnswerProblem);
-                if (isCorrect && questionType.equals("commonsense")) {
-                    correctAnsweredQuestions++;
-                    correctCommonsenseQuestions++;
-                }
-                else if (isCorrect && questionType.equals("text")) {
-                    correctAnsweredQuestions++;
-                    correctTextQuestions++;
-                }
+                result.addAnsweredQuestion(questionType, isCorrect);
                 if (printDetailedProblems) {
                     if (questionAnswerProblem.getQuestionId() == 0) {
                         sb.append(LF);
@@ -172,49 +573,28 @@ public class Evaluator
                     sb.append(LF);
                     sb.append("Prediction value for answer 1: " + String.format("%.4f.",
                             Double.valueOf(questionAnswerProblem.getPair1()
-                                    .getRelatedness(similarityMeasureMethodName)
+                                    .getRelatedness(relatednessName)
                                     .getSemanticRelatednessValue())));
                     sb.append(LF);
                     sb.append("Prediction value for answer 2: " + String.format("%.4f.",
                             Double.valueOf(questionAnswerProblem.getPair2()
-                                    .getRelatedness(similarityMeasureMethodName)
+                                    .getRelatedness(relatednessName)
                                     .getSemanticRelatednessValue())));
                     sb.append(LF);
                     sb.append("Accurate Prediction: " + isCorrect);
                     sb.append(LF);
                 }
             }
-            sb.append(LF);
-            sb.append("Total answered Questions: " + totalAnsweredQuestions);
-            sb.append(LF);
-            sb.append("Correct answered Questions: " + correctAnsweredQuestions);
-            sb.append(LF);
-            sb.append("Score / Accuracy: " + String.format("%.2f%%.", Float.valueOf(
-                    ((float) correctAnsweredQuestions / (float) totalAnsweredQuestions) * 100)));
-            sb.append(LF);
-            sb.append(LF);
-            sb.append("Total commonsense Questions answered: " + totalCommonsenseQuestions);
-            sb.append(LF);
-            sb.append("Correct commonsense Questions answered: " + correctCommonsenseQuestions);
-            sb.append(LF);
-            sb.append("Commonsense Score / Accuracy: " + String.format("%.2f%%.", Float.valueOf(
-                    ((float) correctCommonsenseQuestions / (float) totalCommonsenseQuestions)
-                            * 100)));
-            sb.append(LF);
-            sb.append(LF);
-            sb.append("Total text Questions answered: " + totalTextQuestions);
-            sb.append(LF);
-            sb.append("Correct text Questions answered: " + correctTextQuestions);
-            sb.append(LF);
-            sb.append("Text Score / Accuracy: " + String.format("%.2f%%.", Float
-                    .valueOf(((float) correctTextQuestions / (float) totalTextQuestions) * 100)));
-            sb.append(LF);
+            evaluationResults.put(similarityMeasureMethodName, result);
+            appendEvaluationResult(sb, result);
 
             if (PRINT_TABLES) {
                 rtp.printResultsColumn(usedData, usedEmbeddings,
-                        similarityMeasure.getMeasureMethodName(), totalAnsweredQuestions,
-                        correctAnsweredQuestions, totalCommonsenseQuestions,
-                        correctCommonsenseQuestions, totalTextQuestions, correctTextQuestions);
+                        similarityMeasure.getMeasureMethodName(),
+                        result.getTotalAnsweredQuestions(), result.getCorrectAnsweredQuestions(),
+                        result.getTotalCommonsenseQuestions(),
+                        result.getCorrectCommonsenseQuestions(), result.getTotalTextQuestions(),
+                        result.getCorrectTextQuestions());
                 rtp.printMissingAnnotationsColumn(usedData, usedEmbeddings,
                         similarityMeasure.getMeasureMethodName(),
                         similarityMeasure.getMissingEmbeddingsAnnotation(),
@@ -225,13 +605,154 @@ public class Evaluator
         return sb.toString();
     }
 
+    /**
+     * Writes results to the evaluation results file in the format of a run, e.g. results merged
+     * from partial runs.
+     *
+     * @param dataFilePath
+     *            the data the results are reported for
+     * @param usedWordEmbeddings
+     *            the embeddings model
+     * @param evaluationResults
+     *            the results by measure method name
+     */
+    public static void printEvaluationResults(String dataFilePath, String usedWordEmbeddings,
+            Map<String, EvaluationResult> evaluationResults)
+    {
+        GeneralPipelineUtils.printEvaluationResult("Pipeline was running on data: "
+                + dataFilePath + ". Used embeddings: " + usedWordEmbeddings);
+        StringBuilder sb = new StringBuilder();
+        for (EvaluationResult result : evaluationResults.values()) {
+            sb.append(LF);
+            sb.append("Measure Method: " + result.getMeasureMethod());
+            sb.append(LF);
+            appendEvaluationResult(sb, result);
+        }
+        GeneralPipelineUtils.printEvaluationResult(sb.toString());
+    }
+
+    /**
+     * Appends the summary of a measure method in the format of the evaluation results file.
+     *
+     * @param sb
+     *            the builder to append to
+     * @param result
+     *            the counts of the measure method
+     */
+    static void appendEvaluationResult(StringBuilder sb, EvaluationResult result)
+    {
+        sb.append(LF);
+        sb.append("Total answered Questions: " + result.getTotalAnsweredQuestions());
+        sb.append(LF);
+        sb.append("Correct answered Questions: " + result.getCorrectAnsweredQuestions());
+        sb.append(LF);
+        sb.append("Score / Accuracy: "
+                + String.format("%.2f%%.", Float.valueOf(result.getAccuracy())));
+        sb.append(LF);
+        sb.append(LF);
+        sb.append("Total commonsense Questions answered: " + result.getTotalCommonsenseQuestions());
+        sb.append(LF);
+        sb.append(
+                "Correct commonsense Questions answered: " + result.getCorrectCommonsenseQuestions());
+        sb.append(LF);
+        sb.append("Commonsense Score / Accuracy: "
+                + String.format("%.2f%%.", Float.valueOf(result.getCommonsenseAccuracy())));
+        sb.append(LF);
+        sb.append(LF);
+        sb.append("Total text Questions answered: " + result.getTotalTextQuestions());
+        sb.append(LF);
+        sb.append("Correct text Questions answered: " + result.getCorrectTextQuestions());
+        sb.append(LF);
+        sb.append("Text Score / Accuracy: "
+                + String.format("%.2f%%.", Float.valueOf(result.getTextAccuracy())));
+        sb.append(LF);
+    }
+
+    /**
+     * Gets the results of the first embeddings model of the last run that completed.
+     *
+     * @return the results by measure method name, in the order the measures were evaluated
+     */
+    public static Map<String, EvaluationResult> getLastEvaluationResults()
+    {
+        Map<String, Map<String, EvaluationResult>> results = lastEvaluationResults;
+        return results.isEmpty() ? Collections.<String, EvaluationResult> emptyMap()
+                : results.values().iterator().next();
+    }
+
+    /**
+     * Gets the results of an embeddings model of the last run that completed.
+     *
+     * @param usedWordEmbeddings
+     *            the embeddings model as given in {@link #PARAM_USED_WORD_EMBEDDINGS}
+     * @return the results by measure method name, empty if the model was not used
+     */
+    public static Map<String, EvaluationResult> getLastEvaluationResults(
+            String usedWordEmbeddings)
+    {
+        Map<String, EvaluationResult> results = lastEvaluationResults.get(usedWordEmbeddings);
+        return results != null ? results : Collections.<String, EvaluationResult> emptyMap();
+    }
+
+    /**
+     * Gets the subset results of the first embeddings model of the last run that completed.
+     *
+     * @return the results by subset name and measure method name, empty if no subsets were given
+     */
+    public static Map<String, Map<String, EvaluationResult>> getLastSubsetEvaluationResults()
+    {
+        Map<String, Map<String, Map<String, EvaluationResult>>> results =
+                lastSubsetEvaluationResults;
+        return results.isEmpty()
+                ? Collections.<String, Map<String, EvaluationResult>> emptyMap()
+                : results.values().iterator().next();
+    }
+
+    /**
+     * Gets the subset results of an embeddings model of the last run that completed.
+     *
+     * @param usedWordEmbeddings
+     *            the embeddings model as given in {@link #PARAM_USED_WORD_EMBEDDINGS}
+     * @return the results by subset name and measure method name, empty if the model was not used
+     *         or no subsets were given
+     */
+    public static Map<String, Map<String, EvaluationResult>> getLastSubsetEvaluationResults(
+            String usedWordEmbeddings)
+    {
+        Map<String, Map<String, EvaluationResult>> results = lastSubsetEvaluationResults
+                .get(usedWordEmbeddings);
+        return results != null ? results
+                : Collections.<String, Map<String, EvaluationResult>> emptyMap();
+    }
+
+    /**
+     * Gets the answer a measure method predicts for a problem.
+     *
+     * @param measureMethodName
+     *            the measure method, qualified by the embeddings model if several models were
+     *            scored, see {@link SimilarityMeasure#getRelatednessName(String, String)}
+     * @param questionAnswerProblem
+     *            a problem the measure has been applied to
+     * @return 0 for the first answer, 1 for the second answer or -1 if both answers are rated
+     *         equally
+     */
+    public static int getPredictedAnswer(String measureMethodName,
+            QuestionAnswerProblem questionAnswerProblem)
+    {
+        double value1 = questionAnswerProblem.getPair1().getRelatedness(measureMethodName)
+                .getSemanticRelatednessValue();
+        double value2 = questionAnswerProblem.getPair2().getRelatedness(measureMethodName)
+                .getSemanticRelatednessValue();
+        return value1 > value2 ? 0 : value1 < value2 ? 1 : -1;
+    }
+
     private boolean isCorrectAnswer(SimilarityMeasure similarityMeasure,
             QuestionAnswerProblem questionAnswerProblem)
     {
         SemanticRelatedness semanticRelatednessPair1 = questionAnswerProblem.getPair1()
-                .getRelatedness(similarityMeasure.getMeasureMethodName());
+                .getRelatedness(similarityMeasure.getRelatednessName());
         SemanticRelatedness semanticRelatednessPair2 = questionAnswerProblem.getPair2()
-                .getRelatedness(similarityMeasure.getMeasureMethodName());
+                .getRelatedness(similarityMeasure.getRelatednessName());
 
         if (semanticRelatednessPair1.getSemanticRelatednessValue() > semanticRelatednessPair2
                 .getSemanticRelatednessValue()
@@ -9,9 +9,10 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.file.Files;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 
@@ -22,12 +23,17 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 public class GeneralPipelineUtils
 {
     // Set storing all words which are proceeded in pipeline
-    private static Set<String> usedWords = new HashSet<String>();
+    private static Set<String> usedWords = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     public static final String USED_WORDS_FILE_PATH = "src/main/resources/used_words/";
     public static String USED_WORDS_FILE_NAME;
 
     private static final String EVALUATION_RESULTS_FILE_PATH = "src/main/resources/results/";
     public static final String EVALUATION_RESULTS_FILE_NAME = "evaluation_results.txt";
+    // Lets child processes write to their own file, relative to the results directory
+    public static final String EVALUATION_RESULTS_FILE_PROPERTY = "evaluation.results.file";
+    private static final String EVALUATION_RESULTS_FILE = EVALUATION_RESULTS_FILE_PATH
+            + System.getProperty(EVALUATION_RESULTS_FILE_PROPERTY, EVALUATION_RESULTS_FILE_NAME);
 
     /**
      * Writes an string to evaluation results file and System.out
@@ -39,7 +45,7 @@ public class GeneralPipelineUtils
         try (Writer writer = new BufferedWriter(
                 new OutputStreamWriter(
                         new FileOutputStream(
-                                EVALUATION_RESULTS_FILE_PATH + EVALUATION_RESULTS_FILE_NAME, true),
+                                EVALUATION_RESULTS_FILE, true),
                         "utf-8"))) {
             System.out.println(w);
             writer.write(w + "\n");
@@ -49,6 +55,26 @@ public class GeneralPipelineUtils
         }
     }
 
+    /**
+     * Gets the directory the evaluation results and reports are written to.
+     * 
+     * @return the directory path, ending with a slash
+     */
+    public static String getEvaluationResultsFilePath()
+    {
+        return EVALUATION_RESULTS_FILE_PATH;
+    }
+
+    /**
+     * Gets the evaluation results file of this process.
+     * 
+     * @return the file
+     */
+    public static File getEvaluationResultsFile()
+    {
+        return new File(EVALUATION_RESULTS_FILE);
+    }
+
     /**
      * Deletes the evaluation results file, if exists
      */
@@ -56,7 +82,7 @@ public class GeneralPipelineUtils
     {
         try {
             Files.deleteIfExists(
-                    new File(EVALUATION_RESULTS_FILE_PATH + EVALUATION_RESULTS_FILE_NAME).toPath());
+                    new File(EVALUATION_RESULTS_FILE).toPath());
         }
         catch (IOException e) {
             e.printStackTrace();
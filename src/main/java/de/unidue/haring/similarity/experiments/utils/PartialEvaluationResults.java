@@ -0,0 +1,116 @@
+package de.unidue.haring.similarity.experiments.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.unidue.haring.similarity.experiments.types.EvaluationResult;
+
+/**
+ * Reads and writes the counts of evaluation results as tab-separated lines, so runs in separate
+ * processes can be merged. A line holds the data, the embeddings model, the measure method and the
+ * six counts of an {@link EvaluationResult}.
+ */
+public class PartialEvaluationResults
+{
+    private static final int FIELDS = 9;
+
+    /**
+     * Appends results to a file.
+     *
+     * @param file
+     *            the file, created if it does not exist
+     * @param data
+     *            the data the results are reported for
+     * @param embeddings
+     *            the embeddings model
+     * @param results
+     *            the results by measure method name
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void append(File file, String data, String embeddings,
+            Map<String, EvaluationResult> results)
+        throws IOException
+    {
+        List<String> lines = new ArrayList<String>(results.size());
+        for (EvaluationResult result : results.values()) {
+            lines.add(String.join("\t", data, embeddings, result.getMeasureMethod(),
+                    String.valueOf(result.getTotalAnsweredQuestions()),
+                    String.valueOf(result.getCorrectAnsweredQuestions()),
+                    String.valueOf(result.getTotalCommonsenseQuestions()),
+                    String.valueOf(result.getCorrectCommonsenseQuestions()),
+                    String.valueOf(result.getTotalTextQuestions()),
+                    String.valueOf(result.getCorrectTextQuestions())));
+        }
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads the results of several files and adds up the counts of equal data, embeddings model
+     * and measure method.
+     *
+     * @param files
+     *            the files; missing files are skipped
+     * @return the results by data, embeddings model and measure method name, in the order they
+     *         first appear
+     * @throws IOException
+     *             if a file cannot be read or a line is malformed
+     */
+    public static Map<String, Map<String, Map<String, EvaluationResult>>> read(File... files)
+        throws IOException
+    {
+        Map<String, Map<String, Map<String, EvaluationResult>>> results =
+                new LinkedHashMap<String, Map<String, Map<String, EvaluationResult>>>();
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != FIELDS) {
+                    throw new IOException("Malformed line in " + file + ": " + line);
+                }
+                EvaluationResult result;
+                try {
+                    result = new EvaluationResult(fields[2], Integer.parseInt(fields[3]),
+                            Integer.parseInt(fields[4]), Integer.parseInt(fields[5]),
+                            Integer.parseInt(fields[6]), Integer.parseInt(fields[7]),
+                            Integer.parseInt(fields[8]));
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException("Malformed line in " + file + ": " + line, e);
+                }
+
+                Map<String, Map<String, EvaluationResult>> byEmbeddings = results.get(fields[0]);
+                if (byEmbeddings == null) {
+                    byEmbeddings = new LinkedHashMap<String, Map<String, EvaluationResult>>();
+                    results.put(fields[0], byEmbeddings);
+                }
+                Map<String, EvaluationResult> byMethod = byEmbeddings.get(fields[1]);
+                if (byMethod == null) {
+                    byMethod = new LinkedHashMap<String, EvaluationResult>();
+                    byEmbeddings.put(fields[1], byMethod);
+                }
+                EvaluationResult merged = byMethod.get(fields[2]);
+                if (merged == null) {
+                    byMethod.put(fields[2], result);
+                }
+                else {
+                    merged.add(result);
+                }
+            }
+        }
+        return results;
+    }
+}
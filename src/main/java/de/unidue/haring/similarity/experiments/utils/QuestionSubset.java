@@ -0,0 +1,121 @@
+package de.unidue.haring.similarity.experiments.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.unidue.haring.similarity.experiments.types.QuestionAnswerProblem;
+
+/**
+ * A subset of the questions of a dataset, evaluated as a filter over the results of a pipeline
+ * run on the full dataset.
+ */
+public class QuestionSubset
+{
+    private final String name;
+    private final Predicate<QuestionAnswerProblem> membership;
+
+    /**
+     * @param name
+     *            the name used in the evaluation results, e.g. the path of the subset file
+     * @param membership
+     *            decides which problems belong to the subset
+     */
+    public QuestionSubset(String name, Predicate<QuestionAnswerProblem> membership)
+    {
+        this.name = name;
+        this.membership = membership;
+    }
+
+    /**
+     * Creates a subset from a file generated by {@link SubsetGenerator}. A problem belongs to the
+     * subset if the file holds a question with the same instance and question id.
+     *
+     * @param subsetFilePath
+     *            the subset file, also used as the name of the subset
+     * @return the subset
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static QuestionSubset fromFile(String subsetFilePath) throws IOException
+    {
+        Set<Long> questions = new HashSet<Long>();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // The DTD referenced by MCScript files is not needed
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(subsetFilePath))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                int instanceId = -1;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String element = reader.getLocalName();
+                    if (element.equalsIgnoreCase("instance")) {
+                        instanceId = Integer.parseInt(reader.getAttributeValue(null, "id"));
+                    }
+                    else if (element.equalsIgnoreCase("question")) {
+                        questions.add(key(instanceId,
+                                Integer.parseInt(reader.getAttributeValue(null, "id"))));
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Cannot read subset file " + subsetFilePath, e);
+        }
+
+        return new QuestionSubset(subsetFilePath,
+                qp -> questions.contains(key(qp.getInstanceId(), qp.getQuestionId())));
+    }
+
+    /**
+     * Creates a subset with the rule of {@link SubsetGenerator#matches}.
+     *
+     * @param name
+     *            the name of the subset
+     * @param filter
+     *            true if the question has to start with a keyword, false if one of the answers
+     *            has to contain a keyword
+     * @param keywords
+     *            the keywords
+     * @return the subset of all problems matching a keyword
+     */
+    public static QuestionSubset matching(String name, boolean filter, String... keywords)
+    {
+        return new QuestionSubset(name, qp -> SubsetGenerator.matches(qp, filter, keywords));
+    }
+
+    private static long key(int instanceId, int questionId)
+    {
+        return ((long) instanceId << 32) | (questionId & 0xffffffffL);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Checks whether a problem belongs to the subset.
+     */
+    public boolean contains(QuestionAnswerProblem questionAnswerProblem)
+    {
+        return membership.test(questionAnswerProblem);
+    }
+}
@@ -0,0 +1,317 @@
+package de.unidue.haring.similarity.experiments.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the per-CAS latencies of the pipeline stages and the measure methods of a run.
+ * <p>
+ * The latencies of a stage are kept in a histogram with logarithmic buckets, 16 per power of
+ * two, so the percentiles are accurate to about 3% and the memory does not grow with the number of
+ * CASes. At the end of a run, {@link #writeReport(String, String[], long)} writes the total time,
+ * the CASes per second of busy time and the p50, p95 and p99 latency of each stage as JSON next to
+ * the evaluation results file; the file holds all runs of the process.
+ * <p>
+ * If the system property {@value #JFR_PROPERTY} is true, every latency is also emitted as a
+ * {@code StageLatency} event to a running Java Flight Recorder. The events are defined at run
+ * time, so no JFR API is needed to build the project.
+ */
+public class StageTimings
+{
+    public static final String JFR_PROPERTY = "pipeline.jfr";
+
+    public static final String REPORT_FILE_SUFFIX = "_stage_timings.json";
+
+    private static final Logger LOG = LoggerFactory.getLogger(StageTimings.class);
+
+    private static final Map<String, Histogram> STAGES = new ConcurrentHashMap<String, Histogram>();
+    // The stages in the order of their first latency
+    private static final ConcurrentLinkedQueue<String> ORDER = new ConcurrentLinkedQueue<String>();
+    // The reports of the completed runs of the process
+    private static final List<String> RUNS = new ArrayList<String>();
+
+    private static final JfrEvents JFR = Boolean.getBoolean(JFR_PROPERTY) ? JfrEvents.create()
+            : null;
+
+    /**
+     * Records the latency of a stage on one CAS.
+     *
+     * @param stage
+     *            the name of the stage
+     * @param nanos
+     *            the latency in nanoseconds
+     */
+    public static void record(String stage, long nanos)
+    {
+        Histogram histogram = STAGES.get(stage);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = STAGES.putIfAbsent(stage, created);
+            if (histogram == null) {
+                histogram = created;
+                ORDER.add(stage);
+            }
+        }
+        histogram.record(nanos);
+        if (JFR != null) {
+            JFR.emit(stage, nanos);
+        }
+    }
+
+    /**
+     * Gets the time spent in a stage since the last {@link #reset()}.
+     *
+     * @param stage
+     *            the name of the stage
+     * @return the sum of the recorded latencies in nanoseconds, 0 if none were recorded
+     */
+    public static long getTotalNanos(String stage)
+    {
+        Histogram histogram = STAGES.get(stage);
+        return histogram != null ? histogram.sum.get() : 0;
+    }
+
+    /**
+     * Discards the latencies of the last run.
+     */
+    public static synchronized void reset()
+    {
+        STAGES.clear();
+        ORDER.clear();
+    }
+
+    /**
+     * Adds the latencies recorded since the last {@link #reset()} to the report of the process and
+     * writes it.
+     *
+     * @param dataFilePath
+     *            the data of the run
+     * @param usedWordEmbeddings
+     *            the embeddings models of the run
+     * @param wallNanos
+     *            the duration of the run
+     * @return the report file
+     * @throws IOException
+     *             if the report cannot be written
+     */
+    public static synchronized File writeReport(String dataFilePath, String[] usedWordEmbeddings,
+            long wallNanos)
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("  {\n");
+        sb.append("    \"data\": ").append(quote(dataFilePath)).append(",\n");
+        sb.append("    \"embeddings\": [");
+        for (int i = 0; i < usedWordEmbeddings.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(quote(usedWordEmbeddings[i]));
+        }
+        sb.append("],\n");
+        sb.append(String.format(Locale.ROOT, "    \"wallSeconds\": %.3f,\n", wallNanos / 1e9));
+        sb.append("    \"stages\": [");
+        boolean first = true;
+        for (String stage : ORDER) {
+            Histogram histogram = STAGES.get(stage);
+            long count = histogram.count.get();
+            double totalSeconds = histogram.sum.get() / 1e9;
+            sb.append(first ? "\n" : ",\n");
+            sb.append(String.format(Locale.ROOT,
+                    "      { \"name\": %s, \"cases\": %d, \"totalSeconds\": %.3f, "
+                            + "\"casPerSecond\": %.1f, \"p50Ms\": %.3f, \"p95Ms\": %.3f, "
+                            + "\"p99Ms\": %.3f, \"maxMs\": %.3f }",
+                    quote(stage), count, totalSeconds,
+                    totalSeconds > 0 ? count / totalSeconds : 0.0,
+                    histogram.getPercentile(0.50) / 1e6, histogram.getPercentile(0.95) / 1e6,
+                    histogram.getPercentile(0.99) / 1e6, histogram.max.get() / 1e6));
+            first = false;
+        }
+        sb.append("\n    ]\n  }");
+        RUNS.add(sb.toString());
+
+        File evaluationResultsFile = GeneralPipelineUtils.getEvaluationResultsFile();
+        File reportFile = new File(evaluationResultsFile.getParentFile(),
+                evaluationResultsFile.getName().replaceFirst("\\.[^.]*$", "")
+                        + REPORT_FILE_SUFFIX);
+        Files.createDirectories(reportFile.getParentFile().toPath());
+        Files.write(reportFile.toPath(),
+                ("[\n" + String.join(",\n", RUNS) + "\n]\n").getBytes(StandardCharsets.UTF_8));
+        LOG.info("Stage timings written to " + reportFile);
+        return reportFile;
+    }
+
+    private static String quote(String text)
+    {
+        StringBuilder sb = new StringBuilder(text.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * A latency histogram with 16 linear sub-buckets per power of two.
+     */
+    private static class Histogram
+    {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long nanos)
+        {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(getBucket(nanos));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // retry
+            }
+        }
+
+        private static int getBucket(long value)
+        {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Gets the middle of the values of a bucket.
+         */
+        private static long getValue(int bucket)
+        {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = bucket % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BITS);
+            return (SUB_BUCKETS + sub) * width + width / 2;
+        }
+
+        private long getPercentile(double percentile)
+        {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(getValue(i), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+
+    /**
+     * Emits {@code StageLatency} events through the {@code jdk.jfr.EventFactory}, looked up by
+     * reflection since the JFR API is not part of every Java 8 runtime.
+     */
+    private static class JfrEvents
+    {
+        private final Object factory;
+        private final Method newEvent;
+        private final Method set;
+        private final Method commit;
+
+        private JfrEvents(Object factory, Method newEvent, Method set, Method commit)
+        {
+            this.factory = factory;
+            this.newEvent = newEvent;
+            this.set = set;
+            this.commit = commit;
+        }
+
+        private static JfrEvents create()
+        {
+            try {
+                Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+                Constructor<?> annotation = annotationElement.getConstructor(Class.class,
+                        Object.class);
+                Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class,
+                        List.class);
+
+                List<Object> eventAnnotations = Arrays.asList(
+                        annotation.newInstance(Class.forName("jdk.jfr.Name"),
+                                "de.unidue.haring.similarity.experiments.StageLatency"),
+                        annotation.newInstance(Class.forName("jdk.jfr.Label"), "Stage Latency"),
+                        annotation.newInstance(Class.forName("jdk.jfr.Category"),
+                                new String[] { "Answer Choice Pipeline" }));
+                List<Object> fields = Arrays.asList(
+                        field.newInstance(String.class, "stage",
+                                Collections.singletonList(annotation
+                                        .newInstance(Class.forName("jdk.jfr.Label"), "Stage"))),
+                        field.newInstance(long.class, "latency",
+                                Arrays.asList(
+                                        annotation.newInstance(Class.forName("jdk.jfr.Label"),
+                                                "Latency"),
+                                        annotation.newInstance(Class.forName("jdk.jfr.Timespan"),
+                                                "NANOSECONDS"))));
+
+                Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+                Object factory = factoryClass.getMethod("create", List.class, List.class)
+                        .invoke(null, eventAnnotations, fields);
+                Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                return new JfrEvents(factory, factoryClass.getMethod("newEvent"),
+                        eventClass.getMethod("set", int.class, Object.class),
+                        eventClass.getMethod("commit"));
+            }
+            catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.warn("JFR events are not available in this runtime: " + e);
+                return null;
+            }
+        }
+
+        private void emit(String stage, long nanos)
+        {
+            try {
+                Object event = newEvent.invoke(factory);
+                set.invoke(event, 0, stage);
+                set.invoke(event, 1, nanos);
+                commit.invoke(event);
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -53,11 +53,37 @@ public class SubsetGenerator
         }
     }
 
+    /**
+     * Checks whether a QuestionAnswerProblem matches one of the keywords.
+     * 
+     * @param qp
+     *            the QuestionAnswerProblem
+     * @param filter
+     *            true if the question has to start with a keyword, false if one of the answers
+     *            has to contain a keyword
+     * @param keywords
+     *            the keywords
+     * @return true if a keyword matches
+     */
+    public static boolean matches(QuestionAnswerProblem qp, boolean filter, String... keywords)
+    {
+        for (String keyword : keywords) {
+            if (filter) {
+                if (qp.getQuestionText().toLowerCase().startsWith(keyword)) {
+                    return true;
+                }
+            }
+            else if (qp.getAnswerText1().contains(keyword)
+                    || qp.getAnswerText2().toLowerCase().contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static void writeXmlFile(boolean filter, List<Instance> il, String... keywords)
     {
         try {
-            boolean match = false;
-
             DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
             DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
 
@@ -82,23 +108,7 @@ public class SubsetGenerator
                 Element questions = doc.createElement("questions");
                 for (QuestionAnswerProblem qp : i.getqList()) {
                     // handle question type
-                    match = false;
-
-                    if (filter) {
-                        for (String keyword : keywords) {
-                            if (qp.getQuestionText().toLowerCase().startsWith(keyword))
-                                match = true;
-                        }
-                    }
-                    else if (!filter) {
-                        for (String keyword : keywords) {
-                            if (qp.getAnswerText1().contains(keyword)
-                                    || qp.getAnswerText2().toLowerCase().contains(keyword)) {
-                                match = true;
-                            }
-                        }
-                    }
-                    if (match) {
+                    if (matches(qp, filter, keywords)) {
                         continue;
                     }
 